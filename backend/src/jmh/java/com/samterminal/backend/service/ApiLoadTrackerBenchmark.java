@@ -0,0 +1,98 @@
+package com.samterminal.backend.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64 个线程同时记录、读取同一组 API 的负载：环形秒桶实现与原先按调用存 Instant 的双端队列实现对比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(64)
+public class ApiLoadTrackerBenchmark {
+    private static final Long[] API_IDS = {1L, 2L, 3L, 4L};
+
+    private ApiLoadTracker ring;
+    private DequeLoadTracker deque;
+
+    @Setup
+    public void setup() {
+        ring = new ApiLoadTracker(Clock.systemUTC());
+        deque = new DequeLoadTracker();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        Long nextApi() {
+            return API_IDS[next++ & (API_IDS.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public void ringRecord(Cursor cursor) {
+        ring.recordCall(cursor.nextApi());
+    }
+
+    @Benchmark
+    public int ringRecordAndRead(Cursor cursor) {
+        Long apiId = cursor.nextApi();
+        ring.recordCall(apiId);
+        return ring.currentLoad(apiId);
+    }
+
+    @Benchmark
+    public void dequeRecord(Cursor cursor) {
+        deque.recordCall(cursor.nextApi());
+    }
+
+    @Benchmark
+    public int dequeRecordAndRead(Cursor cursor) {
+        Long apiId = cursor.nextApi();
+        deque.recordCall(apiId);
+        return deque.currentLoad(apiId);
+    }
+
+    /** The tracker as it was before the ring buffer: one Instant per call, pruned on every access. */
+    static final class DequeLoadTracker {
+        private static final Duration WINDOW = Duration.ofSeconds(30);
+        private final Map<Long, Deque<Instant>> calls = new ConcurrentHashMap<>();
+
+        void recordCall(Long apiId) {
+            Deque<Instant> calls = this.calls.computeIfAbsent(apiId, key -> new ConcurrentLinkedDeque<>());
+            Instant now = Instant.now();
+            calls.addLast(now);
+            prune(calls, now);
+        }
+
+        int currentLoad(Long apiId) {
+            Deque<Instant> calls = this.calls.computeIfAbsent(apiId, key -> new ConcurrentLinkedDeque<>());
+            prune(calls, Instant.now());
+            return calls.size();
+        }
+
+        private void prune(Deque<Instant> calls, Instant now) {
+            Instant cutoff = now.minus(WINDOW);
+            while (true) {
+                Instant head = calls.peekFirst();
+                if (head == null || !head.isBefore(cutoff)) {
+                    return;
+                }
+                calls.pollFirst();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.Memory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准共用的输入：按实际对话的形态拼出中文、英文与中英混合的提示词、模型回复和记忆。
+ */
+final class BenchmarkPayloads {
+    static final String CHINESE_PROMPT = repeat("""
+            你是星穹列车上的领航员，正在和开拓者一起调查空间站「黑塔」的异常能量读数。
+            当前地点：主控舱段；当前时间：第三天傍晚。请根据最近的记忆，用符合角色口吻的方式回应玩家，
+            并给出下一步的行动建议。玩家说：“我们先去收容舱段看看吧，那里的信号最强。”
+            """, 6);
+
+    static final String ENGLISH_PROMPT = repeat("""
+            You are the navigator aboard the Astral Express, investigating abnormal energy readings on
+            Herta Space Station together with the Trailblazer. Current location: Master Control Zone.
+            Respond in character using the most recent memories and suggest what to do next. The player
+            says: "Let's check the Storage Zone first, the signal is strongest there."
+            """, 6);
+
+    static final String MIXED_PROMPT = repeat("""
+            [System] role=navigator, location=主控舱段, intent=chat, emotion=normal
+            [Memory] 2024-03-01 开拓者在 Base Zone 找到了一张 Stellaron 相关的 data chip。
+            [User] 这个 signal 和上次的 anomaly 是同一个来源吗？Can we trace it back?
+            """, 8);
+
+    static final String REPLY_JSON = """
+            {"content":"信号确实来自收容舱段，不过那里的防护门需要权限卡。我们先去找艾丝妲要授权吧。",\
+            "emotion":"thinking","narration":"她调出了舱段地图，手指停在收容区的标记上。",\
+            "intent":"chat","target_id":null}""";
+
+    static final String REPLY_FENCED = "好的，下面是回复：\n```json\n" + REPLY_JSON + "\n```\n希望对你有帮助。";
+
+    static final String COMPLETION_BODY = """
+            {"id":"chatcmpl-bench","object":"chat.completion","created":1700000000,"model":"bench-model",\
+            "choices":[{"index":0,"message":{"role":"assistant","content":%s},"finish_reason":"stop"}],\
+            "usage":{"prompt_tokens":812,"completion_tokens":96,"total_tokens":908}}"""
+            .formatted(quote(REPLY_FENCED));
+
+    private static final String[] MEMORY_TOPICS = {
+            "收容舱段的防护门需要权限卡才能打开",
+            "Asta gave the Trailblazer a temporary access pass",
+            "黑塔的人偶在主控舱段里反复播放同一句话",
+            "The Stellaron signal spikes every night at 22:00",
+            "开拓者在基座舱段捡到一张损坏的数据芯片",
+            "Arlan guards the Storage Zone and distrusts strangers"
+    };
+
+    private BenchmarkPayloads() {}
+
+    static List<Memory> memories(int count) {
+        List<Memory> memories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String topic = MEMORY_TOPICS[i % MEMORY_TOPICS.length];
+            memories.add(Memory.builder()
+                    .id((long) i + 1)
+                    .title("记忆 #" + (i + 1) + " " + topic.substring(0, Math.min(8, topic.length())))
+                    .content(topic + "。第 " + (i / MEMORY_TOPICS.length + 1) + " 次回想时，细节又多了一些：" + topic)
+                    .date(LocalDate.of(2024, 3, 1).plusDays(i % 90))
+                    .tags("story,day" + (i % 7))
+                    .build());
+        }
+        return memories;
+    }
+
+    private static String repeat(String text, int times) {
+        return text.repeat(times);
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
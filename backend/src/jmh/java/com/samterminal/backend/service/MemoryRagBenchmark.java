@@ -0,0 +1,101 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记忆检索的本地部分：n-gram 向量化、点积（Vector API 与标量对照）、进程内索引与 BM25 融合查询，
+ * 以及检索后端不可用时单独使用的 BM25 关键字检索。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryRagBenchmark {
+    private static final Long USER_ID = 1L;
+
+    private MemoryRagService ragService;
+    private String memoryContent;
+    private final float[] embedding = new float[EmbeddingEngine.DIMENSION];
+    private final VectorMath simd = new SimdVectorMath();
+    private final VectorMath scalar = new ScalarVectorMath();
+    private float[] left;
+    private float[] right;
+
+    @Setup
+    public void setup() throws Exception {
+        ragService = newEmbeddedService();
+        memoryContent = BenchmarkPayloads.memories(1).getFirst().getContent();
+        left = EmbeddingEngine.embed(memoryContent);
+        right = EmbeddingEngine.embed(BenchmarkPayloads.MIXED_PROMPT);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Memories {
+        @Param({"50", "500"})
+        public int memoryCount;
+
+        private List<Memory> memories;
+        private MemoryRagService indexed;
+
+        @Setup
+        public void setup() throws Exception {
+            memories = BenchmarkPayloads.memories(memoryCount);
+            AppUser user = AppUser.builder().id(USER_ID).build();
+            memories.forEach(memory -> memory.setUser(user));
+            indexed = newEmbeddedService();
+            indexed.upsertMemories(memories);
+        }
+    }
+
+    @Benchmark
+    public float[] embeddingForMemory() {
+        return ragService.embeddingFor(memoryContent);
+    }
+
+    @Benchmark
+    public float[] embeddingForQuery() {
+        return ragService.embeddingFor(BenchmarkPayloads.MIXED_PROMPT);
+    }
+
+    @Benchmark
+    public float[] embedIntoReusedArray() {
+        EmbeddingEngine.embed(memoryContent, embedding);
+        return embedding;
+    }
+
+    @Benchmark
+    public float dotSimd() {
+        return simd.dot(left, 0, right, 0, EmbeddingEngine.DIMENSION);
+    }
+
+    @Benchmark
+    public float dotScalar() {
+        return scalar.dot(left, 0, right, 0, EmbeddingEngine.DIMENSION);
+    }
+
+    @Benchmark
+    public List<Memory> embeddedQuery(Memories memories) {
+        return memories.indexed.queryRelevantMemories(USER_ID, memories.memories, "Stellaron signal 22:00", 3);
+    }
+
+    @Benchmark
+    public List<Memory> lexicalMatch(Memories memories) {
+        return memories.indexed.lexicalMatch(USER_ID, memories.memories, "权限卡在哪里", 5);
+    }
+
+    private static MemoryRagService newEmbeddedService() throws Exception {
+        Path file = Files.createTempFile("memory-index", ".bin");
+        Files.delete(file);
+        return new MemoryRagService(new EmbeddedMemoryBackend(file, EmbeddingEngine.DIMENSION), new MemoryLexicalIndex(new AppProperties()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.EmailVerificationProperties;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证码链路上的限流与加解密。限流用 8 个线程、每线程各自的 key 加一个共享 key，接近真实的 IP/邮箱分布。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    private RateLimitService rateLimitService;
+    private EmailCryptoService cryptoService;
+    private String encrypted;
+
+    @Setup
+    public void setup() {
+        rateLimitService = new RateLimitService(Clock.systemUTC());
+        EmailVerificationProperties properties = new EmailVerificationProperties();
+        properties.getEncryption().setKeyBase64("dGVzdGtleXRlc3RrZXl0ZXN0a2V5dGVzdGtleQ==");
+        cryptoService = new EmailCryptoService(properties, "");
+        encrypted = cryptoService.encrypt("482913");
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private String ownKey;
+
+        @Setup
+        public void setup() {
+            ownKey = "send:ip:10.0.0." + Thread.currentThread().threadId() % 250;
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryConsumeOwnKey(Caller caller) {
+        return rateLimitService.tryConsume(caller.ownKey, Integer.MAX_VALUE, WINDOW);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryConsumeSharedKey() {
+        return rateLimitService.tryConsume("challenge:global", Integer.MAX_VALUE, WINDOW);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return cryptoService.encrypt("482913");
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return cryptoService.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String hashVerificationCode() {
+        return cryptoService.hashCode("482913");
+    }
+}
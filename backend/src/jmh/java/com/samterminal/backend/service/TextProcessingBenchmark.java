@@ -0,0 +1,62 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每轮对话都会走的纯文本处理：token 估算与模型回复解析。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextProcessingBenchmark {
+    private LlmService llmService;
+
+    @Setup
+    public void setup() {
+        llmService = new LlmService(new ObjectMapper(), new RestTemplate());
+    }
+
+    @State(Scope.Benchmark)
+    public static class Prompt {
+        @Param({"zh", "en", "mixed"})
+        public String language;
+
+        private String text;
+
+        @Setup
+        public void setup() {
+            text = switch (language) {
+                case "zh" -> BenchmarkPayloads.CHINESE_PROMPT;
+                case "en" -> BenchmarkPayloads.ENGLISH_PROMPT;
+                default -> BenchmarkPayloads.MIXED_PROMPT;
+            };
+        }
+    }
+
+    @Benchmark
+    public long estimateTokens(Prompt prompt) {
+        return TokenEstimator.estimateTokens(prompt.text);
+    }
+
+    @Benchmark
+    public String extractJsonFenced() {
+        return llmService.extractJson(BenchmarkPayloads.REPLY_FENCED);
+    }
+
+    @Benchmark
+    public String extractJsonPlain() {
+        return llmService.extractJson(BenchmarkPayloads.REPLY_JSON);
+    }
+
+    @Benchmark
+    public LlmService.LlmReply parseReply() throws Exception {
+        return llmService.parseReply(BenchmarkPayloads.COMPLETION_BODY);
+    }
+}
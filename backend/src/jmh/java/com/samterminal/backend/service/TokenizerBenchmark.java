@@ -0,0 +1,112 @@
+package com.samterminal.backend.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BPE 计数与按字/词估算的对比。classpath 上有 cl100k_base.tiktoken 时使用真实词表，否则按 cl100k 的形态
+ * 从提示词生成一份合成词表：单字节、最长 6 字节的片段、完整的 ASCII 单词与单个汉字各为一个 token，
+ * 其余内容需要从字节逐步合并。
+ * bpeUncached 每次交替计数两段不同文本且缓存只保留 1 条，始终走完整的切分与合并。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+    private static final int MAX_SYNTHETIC_TOKEN_BYTES = 6;
+
+    @Param({"zh", "en", "mixed"})
+    public String language;
+
+    private String text;
+    private String variant;
+    private BpeTokenCounter cached;
+    private BpeTokenCounter uncached;
+    private boolean flip;
+
+    @Setup
+    public void setup() throws Exception {
+        text = switch (language) {
+            case "zh" -> BenchmarkPayloads.CHINESE_PROMPT;
+            case "en" -> BenchmarkPayloads.ENGLISH_PROMPT;
+            default -> BenchmarkPayloads.MIXED_PROMPT;
+        };
+        variant = text + " ";
+        cached = counter(1024);
+        uncached = counter(1);
+    }
+
+    @Benchmark
+    public long heuristic() {
+        return TokenEstimator.estimateTokens(text);
+    }
+
+    @Benchmark
+    public long bpeUncached() {
+        flip = !flip;
+        return uncached.countTokens(flip ? text : variant);
+    }
+
+    @Benchmark
+    public long bpeCached() {
+        return cached.countTokens(text);
+    }
+
+    private static BpeTokenCounter counter(int cacheMaxEntries) throws Exception {
+        try (InputStream in = TokenizerBenchmark.class.getResourceAsStream("/tokenizer/cl100k_base.tiktoken")) {
+            if (in != null) {
+                return BpeTokenCounter.load(in, cacheMaxEntries);
+            }
+        }
+        Map<String, byte[]> tokens = new LinkedHashMap<>();
+        for (int b = 0; b < 256; b++) {
+            byte[] single = {(byte) b};
+            tokens.put(Arrays.toString(single), single);
+        }
+        List<byte[]> pieces = new ArrayList<>();
+        for (String prompt : List.of(BenchmarkPayloads.CHINESE_PROMPT, BenchmarkPayloads.ENGLISH_PROMPT,
+                BenchmarkPayloads.MIXED_PROMPT)) {
+            for (int start = 0; start < prompt.length(); ) {
+                int end = BpeTokenCounter.nextPiece(prompt, start);
+                pieces.add(prompt.substring(start, end).getBytes(StandardCharsets.UTF_8));
+                start = end;
+            }
+        }
+        // Shorter byte sequences get lower ranks, so long pieces are built up through several merges.
+        for (int length = 2; length <= MAX_SYNTHETIC_TOKEN_BYTES; length++) {
+            for (byte[] piece : pieces) {
+                for (int from = 0; from + length <= piece.length; from++) {
+                    byte[] token = Arrays.copyOfRange(piece, from, from + length);
+                    tokens.putIfAbsent(Arrays.toString(token), token);
+                }
+            }
+        }
+        for (byte[] piece : pieces) {
+            String word = new String(piece, StandardCharsets.UTF_8);
+            if (word.chars().allMatch(c -> c < 0x80)) {
+                tokens.putIfAbsent(Arrays.toString(piece), piece);
+            } else {
+                word.codePoints().forEach(cp -> {
+                    byte[] character = Character.toString(cp).getBytes(StandardCharsets.UTF_8);
+                    tokens.putIfAbsent(Arrays.toString(character), character);
+                });
+            }
+        }
+        int[] ranks = new int[tokens.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = i;
+        }
+        return new BpeTokenCounter(new ArrayList<>(tokens.values()), ranks, cacheMaxEntries);
+    }
+}
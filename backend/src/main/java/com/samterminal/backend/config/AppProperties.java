@@ -4,13 +4,20 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
     private List<AdminAccount> admins = new ArrayList<>();
     private LlmSettings llm = new LlmSettings();
+    private MemorySettings memory = new MemorySettings();
+    private GameSettings game = new GameSettings();
+    private PushSettings push = new PushSettings();
+    private ChatSettings chat = new ChatSettings();
+    private QuotaSettings quota = new QuotaSettings();
 
     @Data
     public static class AdminAccount {
@@ -25,7 +32,16 @@ public class AppProperties {
         private int minRemainingPercent = 5;
         private int sessionTimeoutMinutes = 30;
         private int requestTimeoutSeconds = 20;
+        private int streamTimeoutSeconds = 120;
+        private int maxConcurrentStreams = 200;
+        private long usageFlushIntervalMillis = 5000L;
+        private long reservedOutputTokens = 512L;
         private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private Http http = new Http();
+        private Routing routing = new Routing();
+        private Hedging hedging = new Hedging();
+        private Limiter limiter = new Limiter();
+        private Tokenizer tokenizer = new Tokenizer();
     }
 
     @Data
@@ -33,4 +49,112 @@ public class AppProperties {
         private int failureThreshold = 3;
         private int probeIntervalMinutes = 10;
     }
+
+    @Data
+    public static class Http {
+        private int connectTimeoutSeconds = 5;
+        private int maxConnectionsPerHost = 64;
+        private long acquireTimeoutMillis = 2000L;
+        private boolean http2Enabled = true;
+    }
+
+    @Data
+    public static class Routing {
+        private RoutingStrategy strategy = RoutingStrategy.CAPACITY;
+    }
+
+    @Data
+    public static class Hedging {
+        private boolean enabled = false;
+        private double percentile = 95;
+        private long minDelayMillis = 300L;
+        private int minSamples = 20;
+        private double maxHedgeRatio = 0.1;
+    }
+
+    @Data
+    public static class Limiter {
+        private boolean enabled = false;
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.7;
+        private double latencyTolerance = 2.0;
+        private long queueTimeoutMillis = 3000L;
+    }
+
+    @Data
+    public static class Tokenizer {
+        private String vocabulary = "classpath:tokenizer/cl100k_base.tiktoken";
+        private TokenizerType defaultType = TokenizerType.BPE;
+        // modelName prefix -> tokenizer; the longest matching prefix wins.
+        private Map<String, TokenizerType> models = new LinkedHashMap<>();
+        private int cacheMaxEntries = 1024;
+    }
+
+    @Data
+    public static class MemorySettings {
+        private MemoryBackend backend = MemoryBackend.EMBEDDED;
+        private String indexPath = "data/memory-index.bin";
+        private long indexIntervalMillis = 2000L;
+        private int indexBatchSize = 100;
+    }
+
+    @Data
+    public static class GameSettings {
+        private int contextCacheMaxEntries = 10000;
+        private long contextCacheTtlMillis = 300000L;
+    }
+
+    @Data
+    public static class PushSettings {
+        private long heartbeatIntervalMillis = 25000L;
+        private long idleTimeoutMillis = 75000L;
+        private int sendTimeLimitMillis = 10000;
+        private int bufferSizeLimit = 256 * 1024;
+        private int maxSessionsPerUser = 5;
+        private int quotaWarningPercent = 80;
+    }
+
+    @Data
+    public static class ChatSettings {
+        private MessagePersistence messagePersistence = MessagePersistence.WRITE_BEHIND;
+        private int messageBatchSize = 100;
+        private long messageFlushIntervalMillis = 200L;
+        private int maxPendingMessages = 10000;
+        private int nodeId = 0;
+    }
+
+    @Data
+    public static class QuotaSettings {
+        private QuotaWindow window = QuotaWindow.DAILY;
+        private int rollingHours = 24;
+        private int historyDays = 7;
+    }
+
+    public enum MemoryBackend {
+        EMBEDDED,
+        CHROMA
+    }
+
+    public enum MessagePersistence {
+        WRITE_BEHIND,
+        STRICT
+    }
+
+    public enum QuotaWindow {
+        DAILY,
+        ROLLING
+    }
+
+    public enum TokenizerType {
+        BPE,
+        HEURISTIC
+    }
+
+    public enum RoutingStrategy {
+        CAPACITY,
+        LEAST_OUTSTANDING,
+        POWER_OF_TWO_CHOICES
+    }
 }
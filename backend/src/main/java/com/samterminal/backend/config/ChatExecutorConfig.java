@@ -0,0 +1,20 @@
+package com.samterminal.backend.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+@Configuration
+public class ChatExecutorConfig {
+
+    @Bean
+    public AsyncTaskExecutor chatExecutor(AppProperties appProperties) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("chat-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(appProperties.getLlm().getMaxConcurrentStreams());
+        // Shed load instead of parking the caller (a socket's inbound thread or a request thread) until a slot frees.
+        executor.setRejectTasksWhenLimitReached(true);
+        return executor;
+    }
+}
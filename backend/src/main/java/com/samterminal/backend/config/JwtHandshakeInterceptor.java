@@ -0,0 +1,56 @@
+package com.samterminal.backend.config;
+
+import com.samterminal.backend.controller.GameSocketHandler;
+import com.samterminal.backend.service.JwtService;
+import io.jsonwebtoken.Claims;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Rejects the /ws/game handshake unless it carries a valid JWT ({@code ?token=}, since browsers cannot set headers).
+ * The token's expiry is kept on the session so the heartbeat can close the connection once it has passed.
+ */
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final JwtService jwtService;
+
+    public JwtHandshakeInterceptor(JwtService jwtService) {
+        this.jwtService = jwtService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("token");
+        String header = request.getHeaders().getFirst("Authorization");
+        if (token == null && header != null && header.startsWith("Bearer ")) {
+            token = header.substring(7);
+        }
+        if (token != null) {
+            try {
+                Claims claims = jwtService.extractClaim(token, c -> c);
+                if (claims.getSubject() != null) {
+                    attributes.put(GameSocketHandler.USERNAME_ATTRIBUTE, claims.getSubject());
+                    if (claims.getExpiration() != null) {
+                        attributes.put(GameSocketHandler.TOKEN_EXPIRES_AT_ATTRIBUTE, claims.getExpiration().getTime());
+                    }
+                    return true;
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
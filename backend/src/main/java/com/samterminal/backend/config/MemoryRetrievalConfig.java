@@ -0,0 +1,28 @@
+package com.samterminal.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.service.ChromaMemoryBackend;
+import com.samterminal.backend.service.EmbeddedMemoryBackend;
+import com.samterminal.backend.service.EmbeddingEngine;
+import com.samterminal.backend.service.MemoryRetrievalBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Path;
+
+@Configuration
+public class MemoryRetrievalConfig {
+
+    @Bean
+    public MemoryRetrievalBackend memoryRetrievalBackend(AppProperties appProperties, ObjectMapper objectMapper,
+                                                         RestTemplate restTemplate,
+                                                         @Value("${chroma.url:http://localhost:8000}") String chromaUrl) {
+        AppProperties.MemorySettings settings = appProperties.getMemory();
+        return switch (settings.getBackend()) {
+            case CHROMA -> new ChromaMemoryBackend(objectMapper, restTemplate, chromaUrl);
+            case EMBEDDED -> new EmbeddedMemoryBackend(Path.of(settings.getIndexPath()), EmbeddingEngine.DIMENSION);
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package com.samterminal.backend.config;
+
+import com.samterminal.backend.controller.GameSocketHandler;
+import com.samterminal.backend.service.JwtService;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final GameSocketHandler gameSocketHandler;
+    private final JwtService jwtService;
+
+    public WebSocketConfig(GameSocketHandler gameSocketHandler, JwtService jwtService) {
+        this.gameSocketHandler = gameSocketHandler;
+        this.jwtService = jwtService;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(gameSocketHandler, "/ws/game")
+                .addInterceptors(new JwtHandshakeInterceptor(jwtService))
+                .setAllowedOrigins(SecurityConfig.allowedOrigins().toArray(String[]::new));
+    }
+}
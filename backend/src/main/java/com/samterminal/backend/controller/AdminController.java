@@ -8,9 +8,15 @@ import com.samterminal.backend.repository.AppUserRepository;
 import com.samterminal.backend.service.AdminService;
 import com.samterminal.backend.service.AuthService;
 import com.samterminal.backend.service.LlmApiConfigService;
+import com.samterminal.backend.service.LlmHttpClientPool;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -22,13 +28,15 @@ public class AdminController {
     private final AuthService authService;
     private final AppUserRepository userRepository;
     private final LlmApiConfigService llmApiConfigService;
+    private final LlmHttpClientPool llmHttpClientPool;
 
     public AdminController(AdminService adminService, AuthService authService, AppUserRepository userRepository,
-                           LlmApiConfigService llmApiConfigService) {
+                           LlmApiConfigService llmApiConfigService, LlmHttpClientPool llmHttpClientPool) {
         this.adminService = adminService;
         this.authService = authService;
         this.userRepository = userRepository;
         this.llmApiConfigService = llmApiConfigService;
+        this.llmHttpClientPool = llmHttpClientPool;
     }
 
     @PostMapping("/login")
@@ -144,6 +152,11 @@ public class AdminController {
         return ResponseEntity.ok(llmApiConfigService.listConfigs());
     }
 
+    @GetMapping("/system/llm-apis/http-pool")
+    public ResponseEntity<?> llmHttpPool() {
+        return ResponseEntity.ok(llmHttpClientPool.stats());
+    }
+
     @PostMapping("/system/llm-apis")
     public ResponseEntity<?> createLlmApi(@RequestBody LlmApiConfigRequest request) {
         return ResponseEntity.ok(llmApiConfigService.createConfig(request));
@@ -172,8 +185,25 @@ public class AdminController {
     }
 
     @GetMapping("/users/usage")
-    public ResponseEntity<?> usage() {
-        return ResponseEntity.ok(adminService.listUserUsage());
+    public ResponseEntity<?> usage(@RequestParam(value = "page", defaultValue = "0") int page,
+                                   @RequestParam(value = "size", defaultValue = "50") int size,
+                                   @RequestParam(value = "sortField", defaultValue = "usage") String sortField,
+                                   @RequestParam(value = "sortDir", defaultValue = "desc") String sortDir,
+                                   @RequestParam(value = "search", required = false) String search) {
+        Sort.Direction direction = "asc".equalsIgnoreCase(sortDir) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return ResponseEntity.ok(adminService.listUserUsage(page, size, sortField, direction, search));
+    }
+
+    @GetMapping("/users/usage/export")
+    public ResponseEntity<StreamingResponseBody> exportUsage(@RequestParam(value = "sortField", defaultValue = "usage") String sortField,
+                                                             @RequestParam(value = "sortDir", defaultValue = "desc") String sortDir,
+                                                             @RequestParam(value = "search", required = false) String search) {
+        Sort.Direction direction = "asc".equalsIgnoreCase(sortDir) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        StreamingResponseBody body = out -> adminService.exportUserUsageCsv(out, sortField, direction, search);
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"user-usage.csv\"")
+                .body(body);
     }
 
     @PostMapping("/settings/global-limit")
@@ -1,17 +1,31 @@
 package com.samterminal.backend.controller;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.dto.ChatRequest;
 import com.samterminal.backend.dto.ChatResponse;
 import com.samterminal.backend.dto.GameStateDto;
 import com.samterminal.backend.dto.MemoryRecallRequest;
 import com.samterminal.backend.dto.SessionResponse;
+import com.samterminal.backend.exception.ApiException;
 import com.samterminal.backend.service.GameService;
 import com.samterminal.backend.service.JwtService;
+import com.samterminal.backend.service.PlayerRevisions;
+import com.samterminal.backend.service.PlayerRevisions.Slice;
 import com.samterminal.backend.service.SessionService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/game")
@@ -20,17 +34,26 @@ public class GameController {
     private final GameService gameService;
     private final JwtService jwtService;
     private final SessionService sessionService;
+    private final AsyncTaskExecutor chatExecutor;
+    private final AppProperties appProperties;
+    private final PlayerRevisions playerRevisions;
 
-    public GameController(GameService gameService, JwtService jwtService, SessionService sessionService) {
+    public GameController(GameService gameService, JwtService jwtService, SessionService sessionService,
+                          @Qualifier("chatExecutor") AsyncTaskExecutor chatExecutor, AppProperties appProperties,
+                          PlayerRevisions playerRevisions) {
         this.gameService = gameService;
         this.jwtService = jwtService;
         this.sessionService = sessionService;
+        this.chatExecutor = chatExecutor;
+        this.appProperties = appProperties;
+        this.playerRevisions = playerRevisions;
     }
 
     @GetMapping("/status")
-    public ResponseEntity<GameStateDto> status(HttpServletRequest request) {
+    public ResponseEntity<GameStateDto> status(HttpServletRequest request, WebRequest webRequest) {
         String username = resolveUser(request);
-        return ResponseEntity.ok(gameService.getState(username));
+        String etag = playerRevisions.etag(username, Slice.STATE, Slice.INVENTORY, Slice.MEMORIES, Slice.WORLD);
+        return ConditionalResponses.withETag(webRequest, etag, () -> gameService.getState(username));
     }
 
     @PostMapping("/chat")
@@ -39,6 +62,32 @@ public class GameController {
         return ResponseEntity.ok(gameService.handleChat(username, chatRequest.getMessage(), chatRequest.getSessionId()));
     }
 
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest chatRequest, HttpServletRequest request) {
+        String username = resolveUser(request);
+        SseEmitter emitter = new SseEmitter(appProperties.getLlm().getStreamTimeoutSeconds() * 1000L);
+        AtomicBoolean clientGone = new AtomicBoolean(false);
+        emitter.onTimeout(() -> clientGone.set(true));
+        emitter.onError(ex -> clientGone.set(true));
+        try {
+            chatExecutor.execute(() -> {
+                try {
+                    ChatResponse response = gameService.handleChat(username, chatRequest.getMessage(),
+                            chatRequest.getSessionId(),
+                            (field, text) -> send(emitter, clientGone, "delta", Map.of("field", field, "text", text)));
+                    send(emitter, clientGone, "done", response);
+                    emitter.complete();
+                } catch (Exception ex) {
+                    send(emitter, clientGone, "error", Map.of("error", "当前模型不可用，请稍后再试。"));
+                    emitter.complete();
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE, "服务繁忙，请稍后再试。");
+        }
+        return emitter;
+    }
+
     @PostMapping("/memory/recall")
     public ResponseEntity<ChatResponse> recall(@RequestBody MemoryRecallRequest request, HttpServletRequest httpRequest) {
         String username = resolveUser(httpRequest);
@@ -53,6 +102,18 @@ public class GameController {
         return ResponseEntity.ok(new SessionResponse(session.getSessionId()));
     }
 
+    private void send(SseEmitter emitter, AtomicBoolean clientGone, String event, Object data) {
+        if (clientGone.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException ex) {
+            // The reply is still persisted when the client disconnects mid-stream.
+            clientGone.set(true);
+        }
+    }
+
     private String resolveUser(HttpServletRequest request) {
         String header = request.getHeader("Authorization");
         if (header != null && header.startsWith("Bearer ")) {
@@ -0,0 +1,122 @@
+package com.samterminal.backend.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.dto.ChatResponse;
+import com.samterminal.backend.dto.SocketCommand;
+import com.samterminal.backend.service.GamePushService;
+import com.samterminal.backend.service.GameService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * /ws/game：握手时由 {@link com.samterminal.backend.config.JwtHandshakeInterceptor} 校验 JWT，令牌过期后连接由心跳关闭。
+ * 客户端可在连接上发送 chat / recall 指令，处理在 chatExecutor 上进行，每个连接同一时间只处理一条；
+ * 流式增量以 delta 帧、最终结果以 reply 帧回到发起的连接，状态变化由 {@link GamePushService} 推送给该玩家的所有连接。
+ */
+@Component
+public class GameSocketHandler extends TextWebSocketHandler {
+    public static final String USERNAME_ATTRIBUTE = "username";
+    public static final String TOKEN_EXPIRES_AT_ATTRIBUTE = "tokenExpiresAt";
+
+    private final GameService gameService;
+    private final GamePushService pushService;
+    private final AsyncTaskExecutor chatExecutor;
+    private final ObjectMapper objectMapper;
+
+    public GameSocketHandler(GameService gameService, GamePushService pushService,
+                             @Qualifier("chatExecutor") AsyncTaskExecutor chatExecutor, ObjectMapper objectMapper) {
+        this.gameService = gameService;
+        this.pushService = pushService;
+        this.chatExecutor = chatExecutor;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        Long expiresAt = (Long) session.getAttributes().get(TOKEN_EXPIRES_AT_ATTRIBUTE);
+        if (!pushService.register(username(session), session, expiresAt != null ? expiresAt : Long.MAX_VALUE)) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("too many connections"));
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        pushService.touch(session);
+        SocketCommand command;
+        try {
+            command = objectMapper.readValue(message.getPayload(), SocketCommand.class);
+        } catch (JsonProcessingException ex) {
+            pushService.reply(session, "error", null, Map.of("error", "无法解析的指令。"));
+            return;
+        }
+        String username = username(session);
+        switch (command.getType() == null ? "" : command.getType()) {
+            case "ping" -> pushService.reply(session, "pong", command.getRequestId(), null);
+            case "chat" -> {
+                if (command.getMessage() == null || command.getMessage().isBlank()) {
+                    pushService.reply(session, "error", command.getRequestId(), Map.of("error", "消息不能为空。"));
+                    return;
+                }
+                run(session, command, () -> gameService.handleChat(username, command.getMessage(), command.getSessionId(),
+                        (field, text) -> pushService.reply(session, "delta", command.getRequestId(),
+                                Map.of("field", field, "text", text))));
+            }
+            case "recall" -> run(session, command,
+                    () -> gameService.recallMemory(username, command.getMemoryId(), command.getSessionId()));
+            default -> pushService.reply(session, "error", command.getRequestId(), Map.of("error", "未知的指令。"));
+        }
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        pushService.touch(session);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        pushService.unregister(session);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        pushService.unregister(session);
+    }
+
+    private void run(WebSocketSession session, SocketCommand command, Supplier<ChatResponse> turn) {
+        if (!pushService.begin(session)) {
+            pushService.reply(session, "error", command.getRequestId(), Map.of("error", "上一条消息还在处理中。"));
+            return;
+        }
+        try {
+            chatExecutor.execute(() -> {
+                try {
+                    pushService.reply(session, "reply", command.getRequestId(), turn.get());
+                } catch (Exception ex) {
+                    pushService.reply(session, "error", command.getRequestId(), Map.of("error", "当前模型不可用，请稍后再试。"));
+                } finally {
+                    pushService.end(session);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            // The task never runs, so its finally cannot clear the busy flag.
+            pushService.end(session);
+            pushService.reply(session, "error", command.getRequestId(), Map.of("error", "服务繁忙，请稍后再试。"));
+        }
+    }
+
+    private static String username(WebSocketSession session) {
+        return (String) session.getAttributes().get(USERNAME_ATTRIBUTE);
+    }
+}
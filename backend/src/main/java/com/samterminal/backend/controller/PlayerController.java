@@ -1,17 +1,23 @@
 package com.samterminal.backend.controller;
 
-import com.samterminal.backend.dto.GameStateDto;
+import com.samterminal.backend.dto.GameStateDto.ItemDto;
+import com.samterminal.backend.dto.GameStateDto.MemoryDto;
 import com.samterminal.backend.entity.Location;
 import com.samterminal.backend.entity.UserLocationUnlock;
 import com.samterminal.backend.repository.LocationRepository;
 import com.samterminal.backend.repository.UserLocationUnlockRepository;
 import com.samterminal.backend.service.GameService;
 import com.samterminal.backend.service.JwtService;
+import com.samterminal.backend.service.PlayerRevisions;
+import com.samterminal.backend.service.PlayerRevisions.Slice;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/player")
@@ -21,37 +27,44 @@ public class PlayerController {
     private final JwtService jwtService;
     private final UserLocationUnlockRepository unlockRepository;
     private final LocationRepository locationRepository;
+    private final PlayerRevisions playerRevisions;
 
     public PlayerController(GameService gameService, JwtService jwtService,
                             UserLocationUnlockRepository unlockRepository,
-                            LocationRepository locationRepository) {
+                            LocationRepository locationRepository,
+                            PlayerRevisions playerRevisions) {
         this.gameService = gameService;
         this.jwtService = jwtService;
         this.unlockRepository = unlockRepository;
         this.locationRepository = locationRepository;
+        this.playerRevisions = playerRevisions;
     }
 
     @GetMapping("/inventory")
-    public ResponseEntity<?> inventory(HttpServletRequest request) {
-        GameStateDto dto = gameService.getState(resolveUser(request));
-        return ResponseEntity.ok(dto.getItems());
+    public ResponseEntity<List<ItemDto>> inventory(HttpServletRequest request, WebRequest webRequest) {
+        String username = resolveUser(request);
+        String etag = playerRevisions.etag(username, Slice.INVENTORY);
+        return ConditionalResponses.withETag(webRequest, etag, () -> gameService.getInventory(username));
     }
 
     @GetMapping("/memories")
-    public ResponseEntity<?> memories(HttpServletRequest request) {
-        GameStateDto dto = gameService.getState(resolveUser(request));
-        return ResponseEntity.ok(dto.getMemories());
+    public ResponseEntity<List<MemoryDto>> memories(HttpServletRequest request, WebRequest webRequest) {
+        String username = resolveUser(request);
+        String etag = playerRevisions.etag(username, Slice.MEMORIES);
+        return ConditionalResponses.withETag(webRequest, etag, () -> gameService.getMemories(username));
     }
 
     @GetMapping("/progress")
-    public ResponseEntity<?> progress(HttpServletRequest request) {
+    public ResponseEntity<List<String>> progress(HttpServletRequest request, WebRequest webRequest) {
         String username = resolveUser(request);
-        var user = gameService.getOrCreateUser(username);
-        var unlocks = unlockRepository.findByUser(user).stream()
-                .map(UserLocationUnlock::getLocation)
-                .map(Location::getCode)
-                .toList();
-        return ResponseEntity.ok(unlocks);
+        String etag = playerRevisions.etag(username, Slice.UNLOCKS);
+        return ConditionalResponses.withETag(webRequest, etag, () -> {
+            var user = gameService.getOrCreateUser(username);
+            return unlockRepository.findByUser(user).stream()
+                    .map(UserLocationUnlock::getLocation)
+                    .map(Location::getCode)
+                    .toList();
+        });
     }
 
     private String resolveUser(HttpServletRequest request) {
@@ -11,11 +11,14 @@ import com.samterminal.backend.repository.LocationRepository;
 import com.samterminal.backend.repository.StarDomainRepository;
 import com.samterminal.backend.repository.UserLocationUnlockRepository;
 import com.samterminal.backend.service.JwtService;
+import com.samterminal.backend.service.PlayerRevisions;
+import com.samterminal.backend.service.PlayerRevisions.Slice;
 import com.samterminal.backend.service.UserLocationUnlockService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
@@ -33,11 +36,12 @@ public class WorldController {
     private final AppUserRepository userRepository;
     private final FireflyAssetRepository assetRepository;
     private final UserLocationUnlockService unlockService;
+    private final PlayerRevisions playerRevisions;
 
     public WorldController(StarDomainRepository domainRepository, LocationRepository locationRepository,
                            JwtService jwtService, UserLocationUnlockRepository unlockRepository,
                            AppUserRepository userRepository, FireflyAssetRepository assetRepository,
-                           UserLocationUnlockService unlockService) {
+                           UserLocationUnlockService unlockService, PlayerRevisions playerRevisions) {
         this.domainRepository = domainRepository;
         this.locationRepository = locationRepository;
         this.jwtService = jwtService;
@@ -45,11 +49,19 @@ public class WorldController {
         this.userRepository = userRepository;
         this.assetRepository = assetRepository;
         this.unlockService = unlockService;
+        this.playerRevisions = playerRevisions;
     }
 
     @GetMapping("/map")
-    public ResponseEntity<MapResponse> map(HttpServletRequest request) {
-        Set<String> unlockedCodes = resolveUser(request)
+    public ResponseEntity<MapResponse> map(HttpServletRequest request, WebRequest webRequest) {
+        String username = resolveUsername(request);
+        String etag = playerRevisions.etag(username, Slice.WORLD, Slice.UNLOCKS);
+        return ConditionalResponses.withETag(webRequest, etag, () -> buildMap(username));
+    }
+
+    private MapResponse buildMap(String username) {
+        Set<String> unlockedCodes = java.util.Optional.ofNullable(username)
+                .flatMap(userRepository::findByUsername)
                 .map(user -> {
                     ensureDefaultUnlocks(user);
                     return unlockRepository.findByUser(user).stream()
@@ -72,7 +84,7 @@ public class WorldController {
                         l.isUnlocked() || unlockedCodes.contains(l.getCode()),
                         l.getDomain() != null ? l.getDomain().getCode() : null))
                 .toList();
-        return ResponseEntity.ok(new MapResponse(domains, locations));
+        return new MapResponse(domains, locations);
     }
 
     @GetMapping("/assets/firefly")
@@ -80,16 +92,15 @@ public class WorldController {
         return ResponseEntity.ok(assetRepository.findAll());
     }
 
-    private java.util.Optional<AppUser> resolveUser(HttpServletRequest request) {
+    private String resolveUsername(HttpServletRequest request) {
         String header = request.getHeader("Authorization");
         if (header != null && header.startsWith("Bearer ")) {
             try {
-                String username = jwtService.extractUsername(header.substring(7));
-                return userRepository.findByUsername(username);
+                return jwtService.extractUsername(header.substring(7));
             } catch (Exception ignored) {
             }
         }
-        return java.util.Optional.empty();
+        return null;
     }
 
     private void ensureDefaultUnlocks(AppUser user) {
@@ -11,7 +11,9 @@ import java.util.List;
 @AllArgsConstructor
 public class ChatResponse {
     private List<ChatMessageDto> messages;
-    private GameStateDto state;
+    private StateDeltaDto delta; // null when nothing changed
+    private long baseRevision;
+    private long revision;
     private StateUpdateDto stateUpdate;
     private String sessionId;
 }
@@ -0,0 +1,16 @@
+package com.samterminal.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyUsageDto {
+    private LocalDate date;
+    private long inputTokens;
+    private long outputTokens;
+}
@@ -20,6 +20,7 @@ public class GameStateDto {
     private List<ItemDto> items;
     private List<MemoryDto> memories;
     private String userName;
+    private long revision;
 
     @Data
     @NoArgsConstructor
@@ -28,6 +28,10 @@ public class LlmApiConfigResponse {
     private Instant circuitOpenedAt;
     private Integer maxLoad;
     private Integer currentLoad;
+    private Integer inFlight;
+    private Double latencyMillis;
+    private Double errorRate;
+    private Integer concurrencyLimit;
     private Instant createdAt;
     private Instant updatedAt;
 }
@@ -0,0 +1,17 @@
+package com.samterminal.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One frame on the /ws/game channel. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PushEvent {
+    private String type;
+    private String requestId; // echoes the command that produced a "delta"/"reply"/"error" frame
+    private Object data;
+}
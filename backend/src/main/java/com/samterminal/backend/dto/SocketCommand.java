@@ -0,0 +1,15 @@
+package com.samterminal.backend.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** A client frame on the /ws/game channel: {@code chat} (message) or {@code recall} (memoryId). */
+@Data
+@NoArgsConstructor
+public class SocketCommand {
+    private String type;
+    private String requestId;
+    private String message;
+    private Long memoryId;
+    private String sessionId;
+}
@@ -0,0 +1,25 @@
+package com.samterminal.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The fields of {@link GameStateDto} that one chat turn changed; unchanged fields are null and omitted.
+ * Applies on top of the state at {@link ChatResponse#getBaseRevision()}.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StateDeltaDto {
+    private String currentLocation;
+    private String currentLocationName;
+    private String locationDynamicState;
+    private String fireflyEmotion;
+    private String fireflyStatus;
+    private String fireflyMoodDetails;
+    private String gameTime;
+    private List<GameStateDto.ItemDto> items; // changed items with their new quantity
+}
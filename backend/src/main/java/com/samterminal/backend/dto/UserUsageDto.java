@@ -4,13 +4,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class UserUsageDto {
     private Long id;
     private String username;
+    // Usage inside the current quota window, the figure compared against the limit.
     private long inputTokens;
     private long outputTokens;
     private Long customLimit;
+    private long totalInputTokens;
+    private long totalOutputTokens;
+    private List<DailyUsageDto> history;
 }
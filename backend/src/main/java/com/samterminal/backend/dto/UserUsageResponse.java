@@ -11,5 +11,10 @@ import java.util.List;
 @AllArgsConstructor
 public class UserUsageResponse {
     private Long globalLimit;
+    private String quotaWindow;
+    private int rollingHours;
     private List<UserUsageDto> users;
+    private long total;
+    private int page;
+    private int size;
 }
@@ -1,5 +1,6 @@
 package com.samterminal.backend.entity;
 
+import com.samterminal.backend.service.GameContextListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,6 +14,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(GameContextListener.class)
 @Table(name = "users")
 public class AppUser {
     @Id
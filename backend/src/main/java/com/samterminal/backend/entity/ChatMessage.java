@@ -11,8 +11,8 @@ import java.time.Instant;
 @AllArgsConstructor
 @Entity
 public class ChatMessage {
+    // Assigned by ChatMessageWriter before the insert, so inserts can be batched and replies carry their id.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private String sender; // user, firefly, npc, system
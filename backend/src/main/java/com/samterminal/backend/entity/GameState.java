@@ -1,5 +1,6 @@
 package com.samterminal.backend.entity;
 
+import com.samterminal.backend.service.GameContextListener;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -8,6 +9,7 @@ import lombok.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(GameContextListener.class)
 public class GameState {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -31,4 +33,12 @@ public class GameState {
     private String fireflyMoodDetails;
 
     private String gameTime;
+
+    @Version
+    @Column(columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
+
+    // Bumped by every chat turn that changes what the player sees; chat replies carry deltas against it.
+    @Column(columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long revision;
 }
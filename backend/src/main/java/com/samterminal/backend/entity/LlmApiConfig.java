@@ -1,5 +1,6 @@
 package com.samterminal.backend.entity;
 
+import com.samterminal.backend.service.LlmApiConfigChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,6 +14,7 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(LlmApiConfigChangeListener.class)
 @Table(name = "llm_api_config")
 public class LlmApiConfig {
     @Id
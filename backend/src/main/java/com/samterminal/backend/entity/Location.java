@@ -1,5 +1,6 @@
 package com.samterminal.backend.entity;
 
+import com.samterminal.backend.service.GameContextListener;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -8,6 +9,7 @@ import lombok.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(GameContextListener.class)
 public class Location {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
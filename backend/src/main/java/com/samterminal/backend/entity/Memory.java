@@ -1,5 +1,7 @@
 package com.samterminal.backend.entity;
 
+import com.samterminal.backend.service.GameContextListener;
+import com.samterminal.backend.service.MemoryIndexListener;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -10,6 +12,7 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners({MemoryIndexListener.class, GameContextListener.class})
 public class Memory {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -20,6 +23,8 @@ public class Memory {
     private String content;
     private LocalDate date;
     private String tags; // comma separated
+    @Column(length = 64)
+    private String indexedHash; // content hash last written to the vector index
 
     @ManyToOne
     private AppUser user;
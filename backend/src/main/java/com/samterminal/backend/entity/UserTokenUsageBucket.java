@@ -0,0 +1,40 @@
+package com.samterminal.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "user_token_usage_bucket", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"user_id", "bucket_hour"})
+}, indexes = {
+        @Index(name = "idx_token_usage_bucket_hour", columnList = "bucket_hour")
+})
+public class UserTokenUsageBucket {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private AppUser user;
+
+    // Hours since the epoch (UTC); one row per player and hour with any usage.
+    @Column(name = "bucket_hour", nullable = false)
+    private long bucketHour;
+
+    @Column(name = "input_tokens")
+    private long inputTokens;
+
+    @Column(name = "output_tokens")
+    private long outputTokens;
+}
@@ -3,9 +3,47 @@ package com.samterminal.backend.repository;
 import com.samterminal.backend.entity.LlmApiConfig;
 import com.samterminal.backend.entity.LlmApiStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface LlmApiConfigRepository extends JpaRepository<LlmApiConfig, Long> {
     List<LlmApiConfig> findByStatus(LlmApiStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("update LlmApiConfig a set a.tokenUsed = coalesce(a.tokenUsed, 0) + :tokens, a.failureCount = 0, "
+            + "a.lastSuccessAt = :now, a.updatedAt = :now, "
+            + "a.circuitOpenedAt = case when a.status = :open then null else a.circuitOpenedAt end, "
+            + "a.status = case when a.status = :open then :active else a.status end, "
+            + "a.version = coalesce(a.version, 0) + 1 where a.id = :id")
+    int recordSuccess(@Param("id") Long id,
+                      @Param("tokens") long tokens,
+                      @Param("now") Instant now,
+                      @Param("open") LlmApiStatus open,
+                      @Param("active") LlmApiStatus active);
+
+    @Transactional
+    @Modifying
+    @Query("update LlmApiConfig a set a.failureCount = :failures, a.lastFailureAt = :now, a.updatedAt = :now, "
+            + "a.status = :status, a.circuitOpenedAt = :openedAt, "
+            + "a.version = coalesce(a.version, 0) + 1 where a.id = :id")
+    int recordFailure(@Param("id") Long id,
+                      @Param("failures") int failures,
+                      @Param("now") Instant now,
+                      @Param("status") LlmApiStatus status,
+                      @Param("openedAt") Instant openedAt);
+
+    @Transactional
+    @Modifying
+    @Query("update LlmApiConfig a set a.tokenUsed = coalesce(a.tokenUsed, 0) + :tokens, "
+            + "a.lastSuccessAt = :successAt, a.updatedAt = :successAt, "
+            + "a.version = coalesce(a.version, 0) + 1 where a.id = :id")
+    int addTokenUsage(@Param("id") Long id,
+                      @Param("tokens") long tokens,
+                      @Param("successAt") Instant successAt);
 }
@@ -2,10 +2,22 @@ package com.samterminal.backend.repository;
 
 import com.samterminal.backend.entity.AppUser;
 import com.samterminal.backend.entity.Memory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 public interface MemoryRepository extends JpaRepository<Memory, Long> {
     List<Memory> findByUser(AppUser user);
+
+    List<Memory> findByIndexedHashIsNullAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("update Memory m set m.indexedHash = null where m.indexedHash is not null")
+    int clearIndexedHashes();
 }
@@ -8,4 +8,6 @@ import java.util.Optional;
 
 public interface UserTokenLimitRepository extends JpaRepository<UserTokenLimit, Long> {
     Optional<UserTokenLimit> findByUser(AppUser user);
+
+    Optional<UserTokenLimit> findByUserId(Long userId);
 }
@@ -0,0 +1,26 @@
+package com.samterminal.backend.repository;
+
+import com.samterminal.backend.entity.UserTokenUsageBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface UserTokenUsageBucketRepository extends JpaRepository<UserTokenUsageBucket, Long> {
+    List<UserTokenUsageBucket> findByUserIdAndBucketHourGreaterThanEqual(Long userId, long fromHour);
+
+    List<UserTokenUsageBucket> findByUserIdInAndBucketHourGreaterThanEqual(Collection<Long> userIds, long fromHour);
+
+    @Transactional
+    @Modifying
+    @Query("update UserTokenUsageBucket b set b.inputTokens = b.inputTokens + :input, "
+            + "b.outputTokens = b.outputTokens + :output where b.user.id = :userId and b.bucketHour = :hour")
+    int addUsage(@Param("userId") Long userId,
+                 @Param("hour") long hour,
+                 @Param("input") long input,
+                 @Param("output") long output);
+}
@@ -2,10 +2,48 @@ package com.samterminal.backend.repository;
 
 import com.samterminal.backend.entity.AppUser;
 import com.samterminal.backend.entity.UserTokenUsage;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface UserTokenUsageRepository extends JpaRepository<UserTokenUsage, Long> {
     Optional<UserTokenUsage> findByUser(AppUser user);
+
+    Optional<UserTokenUsage> findByUserId(Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("update UserTokenUsage u set u.inputTokens = u.inputTokens + :input, "
+            + "u.outputTokens = u.outputTokens + :output, u.updatedAt = :now where u.user.id = :userId")
+    int addUsage(@Param("userId") Long userId,
+                 @Param("input") long input,
+                 @Param("output") long output,
+                 @Param("now") Instant now);
+
+    // Every player left-joined with their lifetime totals, custom limit and the buckets summed from :fromHour on.
+    // The weighted columns repeat TokenUsageService.weightedTokens so the database can sort by them.
+    String USAGE_REPORT = "select u.id as id, u.username as username, l.customLimit as customLimit, "
+            + "coalesce(w.inputSum, 0) as windowInputTokens, coalesce(w.outputSum, 0) as windowOutputTokens, "
+            + "coalesce(t.inputTokens, 0) as totalInputTokens, coalesce(t.outputTokens, 0) as totalOutputTokens, "
+            + "coalesce(w.inputSum, 0) + coalesce(w.outputSum, 0) * 8 as windowWeighted, "
+            + "coalesce(t.inputTokens, 0) + coalesce(t.outputTokens, 0) * 8 as totalWeighted "
+            + "from AppUser u "
+            + "left join UserTokenUsage t on t.user = u "
+            + "left join UserTokenLimit l on l.user = u "
+            + "left join (select b.user.id as userId, sum(b.inputTokens) as inputSum, sum(b.outputTokens) as outputSum "
+            + "from UserTokenUsageBucket b where b.bucketHour >= :fromHour group by b.user.id) w on w.userId = u.id "
+            + "where lower(u.username) like :pattern escape '!'";
+
+    @Query(value = USAGE_REPORT,
+            countQuery = "select count(u) from AppUser u where lower(u.username) like :pattern escape '!'")
+    Page<UserUsageRow> findUsageReport(@Param("fromHour") long fromHour,
+                                       @Param("pattern") String pattern,
+                                       Pageable pageable);
 }
@@ -0,0 +1,18 @@
+package com.samterminal.backend.repository;
+
+/** One row of the admin usage report: a player joined with their usage totals, current window and custom limit. */
+public interface UserUsageRow {
+    Long getId();
+
+    String getUsername();
+
+    Long getCustomLimit();
+
+    long getWindowInputTokens();
+
+    long getWindowOutputTokens();
+
+    long getTotalInputTokens();
+
+    long getTotalOutputTokens();
+}
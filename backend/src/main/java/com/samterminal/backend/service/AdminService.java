@@ -1,6 +1,8 @@
 package com.samterminal.backend.service;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.dto.CharacterAdminRequest;
+import com.samterminal.backend.dto.DailyUsageDto;
 import com.samterminal.backend.dto.FireflyAssetRequest;
 import com.samterminal.backend.dto.LocationAdminRequest;
 import com.samterminal.backend.dto.StarDomainAdminRequest;
@@ -8,15 +10,35 @@ import com.samterminal.backend.dto.UserUsageDto;
 import com.samterminal.backend.dto.UserUsageResponse;
 import com.samterminal.backend.entity.*;
 import com.samterminal.backend.repository.*;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class AdminService {
+    private static final int MAX_USAGE_PAGE_SIZE = 200;
+    private static final int EXPORT_FETCH_SIZE = 500;
+
     private final FireflyAssetRepository assetRepository;
     private final NpcCharacterRepository characterRepository;
     private final LocationRepository locationRepository;
@@ -26,14 +48,15 @@ public class AdminService {
     private final AppUserRepository userRepository;
     private final TokenUsageService tokenUsageService;
     private final UserTokenUsageRepository usageRepository;
-    private final UserTokenLimitRepository limitRepository;
+    private final EntityManager entityManager;
+    private final AppProperties.QuotaSettings quotaSettings;
 
     public AdminService(FireflyAssetRepository assetRepository, NpcCharacterRepository characterRepository,
                         LocationRepository locationRepository, StarDomainRepository domainRepository,
                         LlmSettingRepository llmSettingRepository, LlmApiConfigRepository llmApiConfigRepository,
                         AppUserRepository userRepository,
                         TokenUsageService tokenUsageService, UserTokenUsageRepository usageRepository,
-                        UserTokenLimitRepository limitRepository) {
+                        EntityManager entityManager, AppProperties appProperties) {
         this.assetRepository = assetRepository;
         this.characterRepository = characterRepository;
         this.locationRepository = locationRepository;
@@ -43,7 +66,8 @@ public class AdminService {
         this.userRepository = userRepository;
         this.tokenUsageService = tokenUsageService;
         this.usageRepository = usageRepository;
-        this.limitRepository = limitRepository;
+        this.entityManager = entityManager;
+        this.quotaSettings = appProperties.getQuota();
     }
 
     @Transactional
@@ -239,17 +263,116 @@ public class AdminService {
     }
 
     @Transactional(readOnly = true)
-    public UserUsageResponse listUserUsage() {
-        List<UserUsageDto> users = userRepository.findAll().stream()
-                .map(user -> {
-                    var usage = usageRepository.findByUser(user);
-                    long input = usage.map(UserTokenUsage::getInputTokens).orElse(0L);
-                    long output = usage.map(UserTokenUsage::getOutputTokens).orElse(0L);
-                    Long custom = limitRepository.findByUser(user).map(UserTokenLimit::getCustomLimit).orElse(null);
-                    return new UserUsageDto(user.getId(), user.getUsername(), input, output, custom);
+    public UserUsageResponse listUserUsage(int page, int size, String sortField, Sort.Direction direction, String search) {
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.clamp(size, 1, MAX_USAGE_PAGE_SIZE),
+                usageSort(sortField, direction));
+        Page<UserUsageRow> rows = usageRepository.findUsageReport(tokenUsageService.windowStartHour(),
+                usagePattern(search), pageRequest);
+        List<Long> ids = rows.getContent().stream().map(UserUsageRow::getId).toList();
+        Map<Long, List<TokenUsageService.DailyUsage>> history =
+                tokenUsageService.recentUsage(ids, quotaSettings.getHistoryDays());
+        List<UserUsageDto> users = rows.getContent().stream()
+                .map(row -> {
+                    TokenUsageService.Usage window = tokenUsageService.pendingWindowUsage(row.getId());
+                    TokenUsageService.Usage pending = tokenUsageService.pendingUsage(row.getId());
+                    List<DailyUsageDto> days = history.getOrDefault(row.getId(), List.of()).stream()
+                            .map(day -> new DailyUsageDto(day.date(), day.inputTokens(), day.outputTokens()))
+                            .toList();
+                    return new UserUsageDto(row.getId(), row.getUsername(),
+                            row.getWindowInputTokens() + window.inputTokens(),
+                            row.getWindowOutputTokens() + window.outputTokens(),
+                            row.getCustomLimit(),
+                            row.getTotalInputTokens() + pending.inputTokens(),
+                            row.getTotalOutputTokens() + pending.outputTokens(),
+                            days);
                 })
                 .toList();
-        return new UserUsageResponse(tokenUsageService.getGlobalLimit(), users);
+        return new UserUsageResponse(tokenUsageService.getGlobalLimit(), quotaSettings.getWindow().name().toLowerCase(Locale.ROOT),
+                quotaSettings.getRollingHours(), users, rows.getTotalElements(), rows.getNumber(), rows.getSize());
+    }
+
+    /** Writes the whole report as CSV while the rows stream in, so memory stays flat however many players there are. */
+    @Transactional(readOnly = true)
+    public void exportUserUsageCsv(OutputStream out, String sortField, Sort.Direction direction, String search) throws IOException {
+        long globalLimit = tokenUsageService.getGlobalLimit();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // Byte order mark, so spreadsheet software reads non-ASCII usernames as UTF-8.
+        writer.write('\uFEFF');
+        writer.write("id,username,window_input_tokens,window_output_tokens,window_weighted_tokens,"
+                + "total_input_tokens,total_output_tokens,total_weighted_tokens,custom_limit,effective_limit\n");
+        String orderBy = usageSort(sortField, direction).stream()
+                .map(order -> order.getProperty() + " " + order.getDirection().name())
+                .collect(Collectors.joining(", "));
+        try (Stream<Tuple> rows = entityManager.createQuery(UserTokenUsageRepository.USAGE_REPORT + " order by " + orderBy, Tuple.class)
+                .setParameter("fromHour", tokenUsageService.windowStartHour())
+                .setParameter("pattern", usagePattern(search))
+                .setHint(HibernateHints.HINT_FETCH_SIZE, exportFetchSize())
+                .getResultStream()) {
+            for (Tuple row : (Iterable<Tuple>) rows::iterator) {
+                Long id = row.get("id", Long.class);
+                Long customLimit = row.get("customLimit", Long.class);
+                TokenUsageService.Usage window = tokenUsageService.pendingWindowUsage(id);
+                TokenUsageService.Usage pending = tokenUsageService.pendingUsage(id);
+                long windowInput = tokens(row, "windowInputTokens") + window.inputTokens();
+                long windowOutput = tokens(row, "windowOutputTokens") + window.outputTokens();
+                long totalInput = tokens(row, "totalInputTokens") + pending.inputTokens();
+                long totalOutput = tokens(row, "totalOutputTokens") + pending.outputTokens();
+                writer.write(id + "," + csv(row.get("username", String.class)) + ","
+                        + windowInput + "," + windowOutput + "," + tokenUsageService.weightedTokens(windowInput, windowOutput) + ","
+                        + totalInput + "," + totalOutput + "," + tokenUsageService.weightedTokens(totalInput, totalOutput) + ","
+                        + (customLimit != null ? customLimit : "") + ","
+                        + (customLimit != null ? customLimit : globalLimit) + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    private int exportFetchSize() {
+        // Connector/J only streams row by row for Integer.MIN_VALUE (short of useCursorFetch, which would switch every
+        // statement of the shared pool to server-side prepares); other databases take a plain batch size.
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof MySQLDialect ? Integer.MIN_VALUE : EXPORT_FETCH_SIZE;
+    }
+
+    private static long tokens(Tuple row, String alias) {
+        Number value = row.get(alias, Number.class);
+        return value != null ? value.longValue() : 0L;
+    }
+
+    private Sort usageSort(String sortField, Sort.Direction direction) {
+        String property = switch (sortField == null ? "" : sortField) {
+            case "total" -> "totalWeighted";
+            case "username" -> "username";
+            default -> "windowWeighted";
+        };
+        // Usernames are unique, which keeps pages stable when many players share the same usage.
+        return "username".equals(property)
+                ? Sort.by(direction, property)
+                : Sort.by(direction, property).and(Sort.by(Sort.Direction.ASC, "username"));
+    }
+
+    private String usagePattern(String search) {
+        if (search == null || search.isBlank()) {
+            return "%";
+        }
+        // Matched literally: the report query declares '!' as the LIKE escape character.
+        String literal = search.trim().toLowerCase(Locale.ROOT)
+                .replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        return "%" + literal + "%";
+    }
+
+    private String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            // Spreadsheets would evaluate it as a formula.
+            value = "'" + value;
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
     }
 
     @Transactional
@@ -0,0 +1,133 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 每个 API 的自适应并发上限（AIMD）：成功且耗时正常时加性增长，失败或耗时超过基线容忍倍数时乘性回退。
+ * 关闭时不做任何限制。
+ */
+@Component
+public class ApiConcurrencyLimiter {
+    private static final double BASELINE_ALPHA = 0.05;
+
+    private final AppProperties.Limiter settings;
+    private final Map<Long, Limit> limits = new ConcurrentHashMap<>();
+    private final ReentrantLock releaseLock = new ReentrantLock();
+    private final Condition released = releaseLock.newCondition();
+
+    public ApiConcurrencyLimiter(AppProperties appProperties) {
+        this.settings = appProperties.getLlm().getLimiter();
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    public boolean hasCapacity(Long apiId) {
+        return !isEnabled() || apiId == null || limitFor(apiId).hasCapacity();
+    }
+
+    public boolean tryAcquire(Long apiId) {
+        return !isEnabled() || apiId == null || limitFor(apiId).tryAcquire();
+    }
+
+    /** Returns the permit taken by {@link #tryAcquire} and adapts the limit to how the call went. */
+    public void release(Long apiId, double elapsedMillis, boolean success) {
+        Limit limit = apiId != null ? limits.get(apiId) : null;
+        if (limit == null || !limit.release()) {
+            return;
+        }
+        limit.adapt(elapsedMillis, success);
+        signalRelease();
+    }
+
+    /** Returns the permit of a call that was cancelled; the limit is left unchanged. */
+    public void abandon(Long apiId) {
+        Limit limit = apiId != null ? limits.get(apiId) : null;
+        if (limit != null && limit.release()) {
+            signalRelease();
+        }
+    }
+
+    /** Current limit, or null when the limiter is off. */
+    public Integer currentLimit(Long apiId) {
+        if (!isEnabled() || apiId == null) {
+            return null;
+        }
+        return limitFor(apiId).permits();
+    }
+
+    public void awaitRelease(long timeoutNanos) throws InterruptedException {
+        releaseLock.lock();
+        try {
+            released.awaitNanos(timeoutNanos);
+        } finally {
+            releaseLock.unlock();
+        }
+    }
+
+    private void signalRelease() {
+        releaseLock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            releaseLock.unlock();
+        }
+    }
+
+    private Limit limitFor(Long apiId) {
+        return limits.computeIfAbsent(apiId, key -> new Limit());
+    }
+
+    private final class Limit {
+        private double limit = settings.getInitialLimit();
+        private double baselineMillis = Double.NaN;
+        private int inFlight;
+
+        private synchronized boolean hasCapacity() {
+            return inFlight < permits();
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (inFlight >= permits()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        private synchronized boolean release() {
+            if (inFlight == 0) {
+                return false;
+            }
+            inFlight--;
+            return true;
+        }
+
+        private synchronized void adapt(double elapsedMillis, boolean success) {
+            boolean slow = success && !Double.isNaN(baselineMillis)
+                    && elapsedMillis > baselineMillis * settings.getLatencyTolerance();
+            if (!success || slow) {
+                limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+            } else if ((inFlight + 1) * 2 >= permits()) {
+                // Only grow while the current limit is actually being used.
+                limit = Math.min(settings.getMaxLimit(), limit + 1.0 / limit);
+            }
+            if (success) {
+                baselineMillis = Double.isNaN(baselineMillis)
+                        ? elapsedMillis
+                        : baselineMillis + BASELINE_ALPHA * (elapsedMillis - baselineMillis);
+            }
+        }
+
+        private synchronized int permits() {
+            return Math.max(1, (int) limit);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.samterminal.backend.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个 API 的实时调用指标：正在进行的请求数、响应耗时与失败率的指数加权移动平均（EWMA）。
+ */
+@Component
+public class ApiLatencyTracker {
+    private static final double ALPHA = 0.2;
+    private static final int WINDOW = 64;
+
+    private final Map<Long, ApiStats> stats = new ConcurrentHashMap<>();
+
+    public long begin(Long apiId) {
+        if (apiId != null) {
+            statsFor(apiId).inFlight.incrementAndGet();
+        }
+        return System.nanoTime();
+    }
+
+    public void end(Long apiId, long startedAt, boolean success) {
+        if (apiId == null) {
+            return;
+        }
+        ApiStats api = statsFor(apiId);
+        api.inFlight.decrementAndGet();
+        api.record((System.nanoTime() - startedAt) / 1_000_000.0, success);
+    }
+
+    /** Releases the in-flight slot of a call that was cancelled before it finished, without recording a sample. */
+    public void abandon(Long apiId) {
+        if (apiId != null) {
+            statsFor(apiId).inFlight.decrementAndGet();
+        }
+    }
+
+    public int inFlight(Long apiId) {
+        ApiStats api = apiId != null ? stats.get(apiId) : null;
+        return api != null ? Math.max(0, api.inFlight.get()) : 0;
+    }
+
+    /** EWMA latency in milliseconds, or NaN before the first completed call. */
+    public double latencyMillis(Long apiId) {
+        ApiStats api = apiId != null ? stats.get(apiId) : null;
+        return api != null ? api.latencyMillis() : Double.NaN;
+    }
+
+    /** Percentile (0-100) of the last successful call latencies, or NaN with fewer than minSamples. */
+    public double latencyPercentile(Long apiId, double percentile, int minSamples) {
+        ApiStats api = apiId != null ? stats.get(apiId) : null;
+        return api != null ? api.percentile(percentile, minSamples) : Double.NaN;
+    }
+
+    public double errorRate(Long apiId) {
+        ApiStats api = apiId != null ? stats.get(apiId) : null;
+        return api != null ? api.errorRate() : 0.0;
+    }
+
+    private ApiStats statsFor(Long apiId) {
+        return stats.computeIfAbsent(apiId, key -> new ApiStats());
+    }
+
+    private static final class ApiStats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final double[] recent = new double[WINDOW];
+        private int samples;
+        private double latencyMillis = Double.NaN;
+        private double errorRate;
+
+        private synchronized void record(double elapsedMillis, boolean success) {
+            // Failed calls often return early, so only successful ones shape the latency average.
+            if (success) {
+                recent[samples++ % WINDOW] = elapsedMillis;
+                latencyMillis = Double.isNaN(latencyMillis)
+                        ? elapsedMillis
+                        : latencyMillis + ALPHA * (elapsedMillis - latencyMillis);
+            }
+            errorRate += ALPHA * ((success ? 0.0 : 1.0) - errorRate);
+        }
+
+        private synchronized double latencyMillis() {
+            return latencyMillis;
+        }
+
+        private double percentile(double percentile, int minSamples) {
+            double[] window;
+            synchronized (this) {
+                int size = Math.min(samples, WINDOW);
+                if (size == 0 || size < minSamples) {
+                    return Double.NaN;
+                }
+                window = Arrays.copyOf(recent, size);
+            }
+            Arrays.sort(window);
+            int index = (int) Math.ceil(percentile / 100.0 * window.length) - 1;
+            return window[Math.max(0, Math.min(window.length - 1, index))];
+        }
+
+        private synchronized double errorRate() {
+            return errorRate;
+        }
+    }
+}
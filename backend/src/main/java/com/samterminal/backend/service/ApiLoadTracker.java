@@ -2,46 +2,93 @@ package com.samterminal.backend.service;
 
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Deque;
+import java.time.Clock;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * 30 秒滑动窗口的调用计数。每个 API 一个按秒划分的环形数组，每格把"秒时间戳"和"该秒调用数"
+ * 打包在同一个 long 里，用 CAS 更新：记录 O(1)、读取 O(窗口秒数)，记录时不产生对象。
+ */
 @Component
 public class ApiLoadTracker {
-    private static final Duration WINDOW = Duration.ofSeconds(30);
-    private final Map<Long, Deque<Instant>> calls = new ConcurrentHashMap<>();
+    private static final int WINDOW_SECONDS = 30;
+    private static final int SLOTS = 32;
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final Clock clock;
+    private final Map<Long, AtomicLongArray> calls = new ConcurrentHashMap<>();
+
+    public ApiLoadTracker(Clock clock) {
+        this.clock = clock;
+    }
 
     public void recordCall(Long apiId) {
         if (apiId == null) {
             return;
         }
-        Deque<Instant> deque = calls.computeIfAbsent(apiId, key -> new ConcurrentLinkedDeque<>());
-        Instant now = Instant.now();
-        deque.addLast(now);
-        prune(deque, now);
+        AtomicLongArray slots = calls.get(apiId);
+        if (slots == null) {
+            slots = calls.computeIfAbsent(apiId, key -> new AtomicLongArray(SLOTS));
+        }
+        long second = currentSecond();
+        int index = (int) (second & (SLOTS - 1));
+        while (true) {
+            long current = slots.get(index);
+            long next;
+            if (secondOf(current) > second) {
+                // A caller that read the clock earlier lost the race to one a full ring later; drop it.
+                return;
+            }
+            if (secondOf(current) != second) {
+                // The slot still holds a second that has left the ring; reuse it for this one.
+                next = pack(second, 1);
+            } else if (countOf(current) == COUNT_MASK) {
+                return;
+            } else {
+                next = current + 1;
+            }
+            if (slots.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
     }
 
     public int currentLoad(Long apiId) {
         if (apiId == null) {
             return 0;
         }
-        Deque<Instant> deque = calls.computeIfAbsent(apiId, key -> new ConcurrentLinkedDeque<>());
-        Instant now = Instant.now();
-        prune(deque, now);
-        return deque.size();
-    }
-
-    private void prune(Deque<Instant> deque, Instant now) {
-        Instant cutoff = now.minus(WINDOW);
-        while (true) {
-            Instant head = deque.peekFirst();
-            if (head == null || !head.isBefore(cutoff)) {
-                return;
+        AtomicLongArray slots = calls.get(apiId);
+        if (slots == null) {
+            return 0;
+        }
+        long now = currentSecond();
+        long total = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long slot = slots.get(i);
+            long age = now - secondOf(slot);
+            if (age >= 0 && age < WINDOW_SECONDS) {
+                total += countOf(slot);
             }
-            deque.pollFirst();
         }
+        return (int) Math.min(Integer.MAX_VALUE, total);
+    }
+
+    private long currentSecond() {
+        return clock.millis() / 1000;
+    }
+
+    private static long pack(long second, long count) {
+        return (second << COUNT_BITS) | count;
+    }
+
+    private static long secondOf(long slot) {
+        return slot >>> COUNT_BITS;
+    }
+
+    private static long countOf(long slot) {
+        return slot & COUNT_MASK;
     }
 }
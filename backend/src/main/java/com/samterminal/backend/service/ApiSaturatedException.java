@@ -0,0 +1,7 @@
+package com.samterminal.backend.service;
+
+public class ApiSaturatedException extends NoAvailableApiException {
+    public ApiSaturatedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,508 @@
+package com.samterminal.backend.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字节级 BPE 计数，词表为 tiktoken 格式（每行 "base64 编码的 token 字节 + 空格 + rank"，如 cl100k_base.tiktoken）。
+ * 文本先按 cl100k 的预切分规则（缩写、字母串、最多 3 位数字、标点串、空白）手写扫描成片段，不经过正则；
+ * 每个片段编码成 UTF-8 写入复用的字节缓冲，在 int[] 边界与 rank 数组上按最小 rank 反复合并，剩余片数即 token 数；
+ * 较长的片段（如不含标点的整段中文）改用链表加最小堆合并，避免逐次线性扫描。
+ * 不超过 7 字节的 token 打包成 long 存入开放寻址的 long[] 哈希表，更长的 token 存放在一块连续的 byte[] 与
+ * 另一张 int[] 哈希表里，查询 rank 时不创建子数组或字符串。
+ * 较长的文本（如固定的系统提示词）按最近使用缓存计数结果。
+ */
+public class BpeTokenCounter implements TokenCounter {
+    static final int MIN_CACHED_LENGTH = 64;
+    private static final int NO_RANK = Integer.MAX_VALUE;
+    private static final int MAX_PACKED_LENGTH = 7;
+    private static final int LINEAR_MERGE_LIMIT = 24;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int vocabularySize;
+    private final long[] packedKeys;
+    private final int[] packedRanks;
+    private final int packedShift;
+    private final byte[] tokenBytes;
+    private final int[] tokenOffsets;
+    private final int[] tokenRanks;
+    private final int[] slots;
+    private final int mask;
+    private final Map<String, Long> cache;
+
+    /** {@code tokens[i]} has rank {@code ranks[i]}; lower ranks merge first. */
+    public BpeTokenCounter(List<byte[]> tokens, int[] ranks, int cacheMaxEntries) {
+        vocabularySize = tokens.size();
+        int packedCount = 0;
+        int longCount = 0;
+        int total = 0;
+        for (byte[] token : tokens) {
+            if (token.length <= MAX_PACKED_LENGTH) {
+                packedCount++;
+            } else {
+                longCount++;
+                total += token.length;
+            }
+        }
+
+        int packedCapacity = tableCapacity(packedCount);
+        packedKeys = new long[packedCapacity];
+        packedRanks = new int[packedCapacity];
+        packedShift = Long.numberOfLeadingZeros(packedCapacity - 1);
+        tokenBytes = new byte[total];
+        tokenOffsets = new int[longCount + 1];
+        tokenRanks = new int[longCount];
+        int offset = 0;
+        int index = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            byte[] token = tokens.get(i);
+            if (token.length <= MAX_PACKED_LENGTH) {
+                long key = pack(token, 0, token.length);
+                int slot = packedSlot(key);
+                while (packedKeys[slot] != 0) {
+                    slot = (slot + 1) & (packedCapacity - 1);
+                }
+                packedKeys[slot] = key;
+                packedRanks[slot] = ranks[i];
+                continue;
+            }
+            System.arraycopy(token, 0, tokenBytes, offset, token.length);
+            tokenOffsets[index] = offset;
+            tokenRanks[index++] = ranks[i];
+            offset += token.length;
+        }
+        tokenOffsets[longCount] = offset;
+
+        int capacity = tableCapacity(longCount);
+        slots = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < longCount; i++) {
+            int slot = hash(tokenBytes, tokenOffsets[i], tokenOffsets[i + 1]) & mask;
+            while (slots[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i;
+        }
+
+        int maxEntries = Math.max(1, cacheMaxEntries);
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /** Reads a tiktoken rank file. */
+    public static BpeTokenCounter load(InputStream in, int cacheMaxEntries) throws IOException {
+        List<byte[]> tokens = new ArrayList<>(100_000);
+        int[] ranks = new int[1024];
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                if (tokens.size() == ranks.length) {
+                    ranks = Arrays.copyOf(ranks, ranks.length * 2);
+                }
+                ranks[tokens.size()] = Integer.parseInt(line.substring(space + 1).trim());
+                tokens.add(decoder.decode(line.substring(0, space)));
+            }
+        }
+        return new BpeTokenCounter(tokens, ranks, cacheMaxEntries);
+    }
+
+    public int vocabularySize() {
+        return vocabularySize;
+    }
+
+    @Override
+    public long countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.length() < MIN_CACHED_LENGTH) {
+            return count(text);
+        }
+        Long cached = cache.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        long count = count(text);
+        cache.put(text, count);
+        return count;
+    }
+
+    private long count(String text) {
+        Scratch scratch = new Scratch(Math.min(text.length(), 256));
+        long count = 0;
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = nextPiece(text, start);
+            count += countPiece(text, start, end, scratch);
+            start = end;
+        }
+        return count;
+    }
+
+    private int countPiece(String text, int from, int to, Scratch scratch) {
+        int length = scratch.encode(text, from, to);
+        byte[] bytes = scratch.bytes;
+        if (length == 1 || rank(bytes, 0, length) != NO_RANK) {
+            return 1;
+        }
+        return length <= LINEAR_MERGE_LIMIT ? mergeLinear(bytes, length, scratch) : mergeWithHeap(bytes, length, scratch);
+    }
+
+    private int mergeLinear(byte[] bytes, int length, Scratch scratch) {
+        // parts[i] is where the i-th part starts; ranks[i] is the rank of parts i and i + 1 merged.
+        int[] parts = scratch.parts;
+        int[] ranks = scratch.ranks;
+        int boundaries = length + 1;
+        for (int i = 0; i < boundaries; i++) {
+            parts[i] = i;
+        }
+        for (int i = 0; i < boundaries - 2; i++) {
+            ranks[i] = rank(bytes, i, i + 2);
+        }
+        ranks[boundaries - 2] = NO_RANK;
+        while (boundaries > 2) {
+            int best = NO_RANK;
+            int index = -1;
+            for (int i = 0; i < boundaries - 2; i++) {
+                if (ranks[i] < best) {
+                    best = ranks[i];
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                break;
+            }
+            // Parts index and index + 1 become one: rerank it against both neighbours, then drop boundary index + 1.
+            if (index > 0) {
+                ranks[index - 1] = rank(bytes, parts[index - 1], parts[index + 2]);
+            }
+            ranks[index] = index + 3 < boundaries ? rank(bytes, parts[index], parts[index + 3]) : NO_RANK;
+            System.arraycopy(parts, index + 2, parts, index + 1, boundaries - index - 2);
+            System.arraycopy(ranks, index + 2, ranks, index + 1, boundaries - index - 3);
+            boundaries--;
+        }
+        return boundaries - 1;
+    }
+
+    private int mergeWithHeap(byte[] bytes, int length, Scratch scratch) {
+        // Parts are linked by their start offsets; pairRanks[i] is the rank of the part at i merged with its successor.
+        // Heap entries are (rank << 32 | start), so ties go to the leftmost pair; stale entries no longer match pairRanks.
+        int[] next = scratch.parts;
+        int[] prev = scratch.prev;
+        int[] pairRanks = scratch.ranks;
+        long[] heap = scratch.heap(length * 3);
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+            pairRanks[i] = i + 2 <= length ? rank(bytes, i, i + 2) : NO_RANK;
+            if (pairRanks[i] != NO_RANK) {
+                size = push(heap, size, pairRanks[i], i);
+            }
+        }
+        int parts = length;
+        while (size > 0) {
+            long top = heap[0];
+            size = pop(heap, size);
+            int rank = (int) (top >>> 32);
+            int left = (int) top;
+            if (pairRanks[left] != rank) {
+                continue;
+            }
+            int right = next[left];
+            int after = next[right];
+            next[left] = after;
+            if (after < length) {
+                prev[after] = left;
+            }
+            pairRanks[right] = NO_RANK;
+            parts--;
+            pairRanks[left] = after < length ? rank(bytes, left, next[after]) : NO_RANK;
+            if (pairRanks[left] != NO_RANK) {
+                size = push(heap, size, pairRanks[left], left);
+            }
+            int before = prev[left];
+            if (before >= 0) {
+                pairRanks[before] = rank(bytes, before, after);
+                if (pairRanks[before] != NO_RANK) {
+                    size = push(heap, size, pairRanks[before], before);
+                }
+            }
+        }
+        return parts;
+    }
+
+    private static int push(long[] heap, int size, int rank, int start) {
+        long entry = (long) rank << 32 | start;
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+        return size + 1;
+    }
+
+    private static int pop(long[] heap, int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    private int rank(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (length <= MAX_PACKED_LENGTH) {
+            // Same key as pack(), read with one 8-byte load; the scratch buffer is padded so this never overruns.
+            long key = (long) LONG_LE.get(bytes, from) & (-1L >>> (64 - 8 * length)) | (long) length << 56;
+            int slot = packedSlot(key);
+            while (true) {
+                long candidate = packedKeys[slot];
+                if (candidate == key) {
+                    return packedRanks[slot];
+                }
+                if (candidate == 0) {
+                    return NO_RANK;
+                }
+                slot = (slot + 1) & (packedKeys.length - 1);
+            }
+        }
+        int slot = hash(bytes, from, to) & mask;
+        while (true) {
+            int token = slots[slot];
+            if (token < 0) {
+                return NO_RANK;
+            }
+            int start = tokenOffsets[token];
+            if (tokenOffsets[token + 1] - start == length
+                    && Arrays.equals(tokenBytes, start, start + length, bytes, from, to)) {
+                return tokenRanks[token];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Bytes in the low 56 bits, length in the top byte; never 0, which marks an empty slot. */
+    private static long pack(byte[] bytes, int from, int to) {
+        long key = (long) (to - from) << 56;
+        for (int i = from, shift = 0; i < to; i++, shift += 8) {
+            key |= (bytes[i] & 0xFFL) << shift;
+        }
+        return key;
+    }
+
+    private int packedSlot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> packedShift);
+    }
+
+    private static int tableCapacity(int entries) {
+        return Integer.highestOneBit(Math.max(2, entries) * 2 - 1) << 1;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * End of the piece starting at {@code start}, following the cl100k split pattern
+     * {@code 's|'t|'re|'ve|'m|'ll|'d | [^\r\n\p{L}\p{N}]?\p{L}+ | \p{N}{1,3} | ?[^\s\p{L}\p{N}]+[\r\n]* | \s*[\r\n]+ | \s+(?!\S) | \s+}.
+     */
+    static int nextPiece(String text, int start) {
+        int length = text.length();
+        int cp = text.codePointAt(start);
+        int next = start + Character.charCount(cp);
+
+        if (cp == '\'' && next < length) {
+            char first = Character.toLowerCase(text.charAt(next));
+            if (first == 's' || first == 't' || first == 'm' || first == 'd') {
+                return next + 1;
+            }
+            if (next + 1 < length) {
+                char second = Character.toLowerCase(text.charAt(next + 1));
+                if (((first == 'r' || first == 'v') && second == 'e') || (first == 'l' && second == 'l')) {
+                    return next + 2;
+                }
+            }
+        }
+        if (Character.isLetter(cp)) {
+            return skipLetters(text, next);
+        }
+        if (cp != '\r' && cp != '\n' && !isNumber(cp) && next < length && Character.isLetter(text.codePointAt(next))) {
+            return skipLetters(text, next);
+        }
+        if (isNumber(cp)) {
+            int end = next;
+            for (int digits = 1; digits < 3 && end < length; digits++) {
+                int following = text.codePointAt(end);
+                if (!isNumber(following)) {
+                    break;
+                }
+                end += Character.charCount(following);
+            }
+            return end;
+        }
+        int symbols = cp == ' ' ? next : start;
+        if (symbols < length && isSymbol(text.codePointAt(symbols))) {
+            int end = symbols;
+            while (end < length && isSymbol(text.codePointAt(end))) {
+                end += Character.charCount(text.codePointAt(end));
+            }
+            while (end < length && (text.charAt(end) == '\r' || text.charAt(end) == '\n')) {
+                end++;
+            }
+            return end;
+        }
+        if (isWhitespace(cp)) {
+            int end = start;
+            int afterNewline = -1;
+            while (end < length) {
+                int c = text.codePointAt(end);
+                if (!isWhitespace(c)) {
+                    break;
+                }
+                end += Character.charCount(c);
+                if (c == '\r' || c == '\n') {
+                    afterNewline = end;
+                }
+            }
+            if (afterNewline > 0) {
+                return afterNewline;
+            }
+            if (end == length) {
+                return end;
+            }
+            // The last space belongs to the word that follows, as in " world".
+            int lastStart = end - Character.charCount(text.codePointBefore(end));
+            return lastStart > start ? lastStart : end;
+        }
+        return next;
+    }
+
+    private static int skipLetters(String text, int from) {
+        int end = from;
+        while (end < text.length()) {
+            int c = text.codePointAt(end);
+            if (!Character.isLetter(c)) {
+                break;
+            }
+            end += Character.charCount(c);
+        }
+        return end;
+    }
+
+    private static boolean isNumber(int cp) {
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+    private static boolean isWhitespace(int cp) {
+        return Character.isWhitespace(cp) || Character.isSpaceChar(cp) || cp == 0x85;
+    }
+
+    private static boolean isSymbol(int cp) {
+        return !isWhitespace(cp) && !Character.isLetter(cp) && !isNumber(cp);
+    }
+
+    /** Buffers reused across the pieces of one text. */
+    private static final class Scratch {
+        byte[] bytes;
+        int[] parts;
+        int[] prev;
+        int[] ranks;
+        private long[] heap = new long[0];
+
+        Scratch(int capacity) {
+            resize(Math.max(16, capacity * 3));
+        }
+
+        /** Writes {@code text[from, to)} as UTF-8 into {@link #bytes} and returns its length. */
+        int encode(String text, int from, int to) {
+            if ((to - from) * 3 > bytes.length - Long.BYTES) {
+                resize((to - from) * 3);
+            }
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xC0 | c >> 6);
+                    bytes[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[length++] = (byte) (0xF0 | cp >> 18);
+                    bytes[length++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | cp & 0x3F);
+                } else {
+                    // Lone surrogates are written as U+FFFD, like String.getBytes.
+                    char unit = Character.isSurrogate(c) ? '\uFFFD' : c;
+                    bytes[length++] = (byte) (0xE0 | unit >> 12);
+                    bytes[length++] = (byte) (0x80 | unit >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | unit & 0x3F);
+                }
+            }
+            return length;
+        }
+
+        long[] heap(int capacity) {
+            if (heap.length < capacity) {
+                heap = new long[capacity];
+            }
+            return heap;
+        }
+
+        private void resize(int capacity) {
+            bytes = new byte[capacity + Long.BYTES];
+            parts = new int[capacity + 1];
+            prev = new int[capacity + 1];
+            ranks = new int[capacity + 1];
+        }
+    }
+}
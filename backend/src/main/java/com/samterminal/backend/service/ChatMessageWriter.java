@@ -0,0 +1,176 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.ChatMessage;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 聊天记录的写入端。id 在写入前由本进程生成（毫秒时间戳 + app.chat.node-id + 序号，随时间递增），
+ * 回复在落库前就带有最终 id，插入也不依赖自增列，可以按 JDBC 批量写入（hibernate.jdbc.batch_size）。
+ * <ul>
+ *   <li>write-behind（默认）：回合事务提交后消息进入内存缓冲，攒够 app.chat.message-batch-size 条时由后台线程、
+ *   或每隔 app.chat.message-flush-interval-millis 批量写库，进程正常停止时写完缓冲；进程崩溃时最多丢失最近一个刷写间隔内的记录，
+ *   回合状态本身不受影响。写库失败时消息留在缓冲中下次重试，缓冲超过 app.chat.max-pending-messages 时改为在回合事务内直接写入。</li>
+ *   <li>strict：消息在回合事务内写入，与状态一起提交，响应返回前已落库。</li>
+ * </ul>
+ */
+@Service
+public class ChatMessageWriter {
+    private static final long ID_EPOCH_MILLIS = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int SEQUENCE_MASK = (1 << SEQUENCE_BITS) - 1;
+
+    private final EntityManager entityManager;
+    private final Clock clock;
+    private final AppProperties.ChatSettings settings;
+    private final TransactionTemplate transactionTemplate;
+    private final Deque<ChatMessage> pending = new ArrayDeque<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ExecutorService flushExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long nodeId;
+    private long lastMillis;
+    private int sequence;
+
+    public ChatMessageWriter(EntityManager entityManager, Clock clock, AppProperties appProperties,
+                             PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.clock = clock;
+        this.settings = appProperties.getChat();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nodeId = settings.getNodeId() & ((1 << NODE_BITS) - 1);
+    }
+
+    /** Assigns ids, then writes in the caller's transaction (strict) or queues once it commits (write-behind). */
+    public void append(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            message.setId(nextId());
+        }
+        if (settings.getMessagePersistence() == AppProperties.MessagePersistence.STRICT
+                || !TransactionSynchronizationManager.isSynchronizationActive()
+                || pendingCount() >= settings.getMaxPendingMessages()) {
+            transactionTemplate.executeWithoutResult(status -> insert(messages));
+            return;
+        }
+        // A rolled-back turn (e.g. replayed after an optimistic lock failure) never reaches the buffer.
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(messages);
+            }
+        });
+    }
+
+    public int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.message-flush-interval-millis:200}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<ChatMessage> batch;
+            while (!(batch = take()).isEmpty()) {
+                if (!write(batch)) {
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.close();
+        flush();
+    }
+
+    private void enqueue(List<ChatMessage> messages) {
+        int size;
+        synchronized (pending) {
+            pending.addAll(messages);
+            size = pending.size();
+        }
+        // Written off the request thread, which still holds the turn's connection; a running flush drains it anyway.
+        if (size >= settings.getMessageBatchSize() && !flushLock.isLocked()) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    private boolean write(List<ChatMessage> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            return true;
+        } catch (DataIntegrityViolationException ex) {
+            // Usually a player deleted while their messages waited; keep every row that can still be written.
+            for (ChatMessage message : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(message)));
+                } catch (DataIntegrityViolationException ignored) {
+                }
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            // The database is unreachable: put the batch back in order and retry on the next tick.
+            synchronized (pending) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    pending.addFirst(batch.get(i));
+                }
+            }
+            return false;
+        }
+    }
+
+    private void insert(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            entityManager.persist(message);
+        }
+    }
+
+    private List<ChatMessage> take() {
+        int batchSize = Math.max(1, settings.getMessageBatchSize());
+        synchronized (pending) {
+            List<ChatMessage> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            while (!pending.isEmpty() && batch.size() < batchSize) {
+                batch.add(pending.pollFirst());
+            }
+            return batch;
+        }
+    }
+
+    private synchronized long nextId() {
+        long now = Math.max(clock.millis(), lastMillis);
+        if (now == lastMillis) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 4096 ids in one millisecond: borrow the next one rather than wait for the clock.
+                now = lastMillis + 1;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = now;
+        return (now - ID_EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS) | nodeId << SEQUENCE_BITS | sequence;
+    }
+}
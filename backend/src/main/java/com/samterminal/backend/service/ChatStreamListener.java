@@ -0,0 +1,9 @@
+package com.samterminal.backend.service;
+
+@FunctionalInterface
+public interface ChatStreamListener {
+    /**
+     * Receives decoded text appended to a reply field ("content" or "narration") while the model is still generating.
+     */
+    void onDelta(String field, String text);
+}
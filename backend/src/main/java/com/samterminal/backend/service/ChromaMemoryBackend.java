@@ -0,0 +1,131 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.entity.Memory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+
+/**
+ * 远程 ChromaDB 后端（app.memory.backend=chroma）。每条向量带 user_id 元数据，查询用 where 过滤，
+ * 只在当前用户自己的记忆里取 top-k。
+ */
+public class ChromaMemoryBackend implements MemoryRetrievalBackend {
+    // v3: 256-dim n-gram embeddings with user_id metadata. Older collections are left untouched.
+    private static final String COLLECTION_NAME = "sam_memories_v3";
+    private static final long UNOWNED = 0L;
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final String chromaUrl;
+
+    private String collectionId;
+    private boolean created;
+
+    public ChromaMemoryBackend(ObjectMapper objectMapper, RestTemplate restTemplate, String chromaUrl) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.chromaUrl = chromaUrl;
+    }
+
+    @Override
+    public void upsert(List<Memory> memories, List<float[]> embeddings) throws Exception {
+        if (memories.isEmpty()) {
+            return;
+        }
+        ensureCollection();
+        List<String> ids = new ArrayList<>();
+        List<String> documents = new ArrayList<>();
+        List<Map<String, Object>> metadatas = new ArrayList<>();
+
+        for (Memory memory : memories) {
+            ids.add("mem-" + memory.getId());
+            documents.add(memory.getContent());
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("title", memory.getTitle());
+            meta.put("date", memory.getDate() != null ? memory.getDate().toString() : null);
+            meta.put("user_id", ownerOf(memory));
+            metadatas.add(meta);
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("ids", ids);
+        payload.put("embeddings", embeddings);
+        payload.put("documents", documents);
+        payload.put("metadatas", metadatas);
+
+        String upsertUrl = chromaUrl + "/api/v1/collections/" + collectionId + "/upsert";
+        restTemplate.postForEntity(upsertUrl, payload, String.class);
+    }
+
+    @Override
+    public void remove(Collection<Long> memoryIds) throws Exception {
+        if (memoryIds.isEmpty()) {
+            return;
+        }
+        ensureCollection();
+        List<String> ids = memoryIds.stream().map(id -> "mem-" + id).toList();
+        String deleteUrl = chromaUrl + "/api/v1/collections/" + collectionId + "/delete";
+        restTemplate.postForEntity(deleteUrl, Map.of("ids", ids), String.class);
+    }
+
+    @Override
+    public List<Long> search(Long userId, float[] query, int limit) throws Exception {
+        ensureCollection();
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("query_embeddings", List.of(query));
+        payload.put("n_results", Math.max(1, limit));
+        payload.put("where", Map.of("user_id", userId != null ? userId : UNOWNED));
+
+        String queryUrl = chromaUrl + "/api/v1/collections/" + collectionId + "/query";
+        ResponseEntity<String> resp = restTemplate.postForEntity(queryUrl, payload, String.class);
+        Map<?, ?> data = objectMapper.readValue(resp.getBody(), Map.class);
+        List<List<String>> ids = (List<List<String>>) data.get("ids");
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        List<Long> result = new ArrayList<>();
+        for (String id : ids.get(0)) {
+            if (id != null && id.startsWith("mem-")) {
+                result.add(Long.parseLong(id.substring(4)));
+            }
+        }
+        return result;
+    }
+
+    /** A freshly created collection is empty, so every memory has to be indexed into it. */
+    @Override
+    public boolean needsRebuild() {
+        try {
+            ensureCollection();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Chroma is unavailable", ex);
+        }
+        return created;
+    }
+
+    private long ownerOf(Memory memory) {
+        return memory.getUser() != null && memory.getUser().getId() != null ? memory.getUser().getId() : UNOWNED;
+    }
+
+    private void ensureCollection() throws Exception {
+        if (collectionId != null) {
+            return;
+        }
+        String listUrl = chromaUrl + "/api/v1/collections";
+        ResponseEntity<String> listRes = restTemplate.getForEntity(listUrl, String.class);
+        List<?> collections = objectMapper.readValue(listRes.getBody(), List.class);
+        for (Object item : collections) {
+            Map<?, ?> map = (Map<?, ?>) item;
+            if (COLLECTION_NAME.equals(map.get("name"))) {
+                collectionId = String.valueOf(map.get("id"));
+                return;
+            }
+        }
+        Map<String, Object> payload = Map.of("name", COLLECTION_NAME);
+        ResponseEntity<Map> createRes = restTemplate.postForEntity(listUrl, payload, Map.class);
+        collectionId = String.valueOf(createRes.getBody().get("id"));
+        created = true;
+    }
+}
@@ -0,0 +1,333 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.Memory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内的记忆向量索引（app.memory.backend=embedded，默认）。按用户分区，每个分区是连续的 float[]，
+ * 查询时对分区做一次余弦（向量已归一化，即点积，见 {@link EmbeddingEngine#dot}）全量扫描取 top-k。
+ * 索引定期写入内存映射文件，启动后第一次使用时再加载；文件缺失或损坏时要求全量重建。
+ */
+public class EmbeddedMemoryBackend implements MemoryRetrievalBackend, DisposableBean {
+    private static final int MAGIC = 0x53414D56; // "SAMV"
+    private static final int FORMAT_VERSION = 2; // 2: n-gram embeddings from EmbeddingEngine
+    private static final int HEADER_BYTES = 16;
+    private static final long UNOWNED = 0L;
+
+    private final Path path;
+    private final int dimension;
+    private final Map<Long, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<Long, Long> owners = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile boolean loaded;
+    private volatile boolean rebuildRequired;
+
+    public EmbeddedMemoryBackend(Path path, int dimension) {
+        this.path = path;
+        this.dimension = dimension;
+    }
+
+    @Override
+    public void upsert(List<Memory> memories, List<float[]> embeddings) {
+        ensureLoaded();
+        for (int i = 0; i < memories.size(); i++) {
+            Memory memory = memories.get(i);
+            long userId = memory.getUser() != null && memory.getUser().getId() != null
+                    ? memory.getUser().getId()
+                    : UNOWNED;
+            put(memory.getId(), userId, embeddings.get(i));
+        }
+        dirty.set(true);
+    }
+
+    @Override
+    public void remove(Collection<Long> memoryIds) {
+        ensureLoaded();
+        for (Long memoryId : memoryIds) {
+            Long owner = owners.remove(memoryId);
+            Partition partition = owner != null ? partitions.get(owner) : null;
+            if (partition != null) {
+                partition.remove(memoryId);
+            }
+        }
+        dirty.set(true);
+    }
+
+    @Override
+    public List<Long> search(Long userId, float[] query, int limit) {
+        ensureLoaded();
+        Partition partition = partitions.get(userId != null ? userId : UNOWNED);
+        if (partition == null || limit <= 0) {
+            return List.of();
+        }
+        return partition.top(normalize(query), limit);
+    }
+
+    @Override
+    public boolean needsRebuild() {
+        ensureLoaded();
+        return rebuildRequired;
+    }
+
+    public int size() {
+        ensureLoaded();
+        return owners.size();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            write();
+            rebuildRequired = false;
+        } catch (IOException | RuntimeException ex) {
+            dirty.set(true);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException ignored) {
+            // Best effort; a lost file only means a rebuild on the next start.
+        }
+    }
+
+    private void put(Long memoryId, long userId, float[] embedding) {
+        if (memoryId == null || embedding.length != dimension) {
+            return;
+        }
+        Long previousOwner = owners.put(memoryId, userId);
+        if (previousOwner != null && previousOwner != userId) {
+            Partition previous = partitions.get(previousOwner);
+            if (previous != null) {
+                previous.remove(memoryId);
+            }
+        }
+        partitions.computeIfAbsent(userId, key -> new Partition(dimension)).put(memoryId, normalize(embedding));
+    }
+
+    private float[] normalize(float[] vector) {
+        float[] result = vector.clone();
+        EmbeddingEngine.normalize(result);
+        return result;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            try {
+                rebuildRequired = !read();
+            } catch (IOException | RuntimeException ex) {
+                partitions.clear();
+                owners.clear();
+                rebuildRequired = true;
+            }
+            loaded = true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /** Returns false when there is no usable index file. */
+    private boolean read() throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != dimension) {
+                return false;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || fileSize != HEADER_BYTES + (long) count * recordBytes()) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                long memoryId = buffer.getLong();
+                long userId = buffer.getLong();
+                float[] vector = new float[dimension];
+                buffer.asFloatBuffer().get(vector);
+                buffer.position(buffer.position() + dimension * Float.BYTES);
+                owners.put(memoryId, userId);
+                partitions.computeIfAbsent(userId, key -> new Partition(dimension)).put(memoryId, vector);
+            }
+            return true;
+        }
+    }
+
+    private void write() throws IOException {
+        List<Map.Entry<Long, Partition>> snapshot = new ArrayList<>(partitions.entrySet());
+        List<Partition.Rows> rows = new ArrayList<>(snapshot.size());
+        long count = 0;
+        for (Map.Entry<Long, Partition> entry : snapshot) {
+            Partition.Rows partitionRows = entry.getValue().copy(entry.getKey());
+            rows.add(partitionRows);
+            count += partitionRows.size();
+        }
+        long fileSize = HEADER_BYTES + count * recordBytes();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Memory index exceeds 2 GiB: " + count + " vectors");
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(dimension).putInt((int) count);
+            for (Partition.Rows partitionRows : rows) {
+                for (int i = 0; i < partitionRows.size(); i++) {
+                    buffer.putLong(partitionRows.ids()[i]).putLong(partitionRows.userId());
+                    buffer.asFloatBuffer().put(partitionRows.vectors(), i * dimension, dimension);
+                    buffer.position(buffer.position() + dimension * Float.BYTES);
+                }
+            }
+            buffer.force();
+        }
+        // Readers only ever see a complete file.
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int recordBytes() {
+        return 2 * Long.BYTES + dimension * Float.BYTES;
+    }
+
+    private static final class Partition {
+        private final int dimension;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Integer> slots = new HashMap<>();
+        private long[] ids = new long[8];
+        private float[] vectors;
+        private int size;
+
+        private Partition(int dimension) {
+            this.dimension = dimension;
+            this.vectors = new float[ids.length * dimension];
+        }
+
+        private void put(long memoryId, float[] vector) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.get(memoryId);
+                if (slot == null) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        vectors = Arrays.copyOf(vectors, size * 2 * dimension);
+                    }
+                    slot = size++;
+                    ids[slot] = memoryId;
+                    slots.put(memoryId, slot);
+                }
+                System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long memoryId) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slots.remove(memoryId);
+                if (slot == null) {
+                    return;
+                }
+                int last = --size;
+                if (slot != last) {
+                    // Keep rows dense: move the last row into the freed slot.
+                    ids[slot] = ids[last];
+                    System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+                    slots.put(ids[slot], slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private List<Long> top(float[] query, int limit) {
+            lock.readLock().lock();
+            try {
+                int k = Math.min(limit, size);
+                if (k == 0) {
+                    return List.of();
+                }
+                long[] bestIds = new long[k];
+                float[] bestScores = new float[k];
+                int found = 0;
+                for (int row = 0; row < size; row++) {
+                    float score = dot(query, row * dimension);
+                    if (score <= 0f || (found == k && score <= bestScores[k - 1])) {
+                        continue;
+                    }
+                    int at = found < k ? found++ : k - 1;
+                    while (at > 0 && bestScores[at - 1] < score) {
+                        bestScores[at] = bestScores[at - 1];
+                        bestIds[at] = bestIds[at - 1];
+                        at--;
+                    }
+                    bestScores[at] = score;
+                    bestIds[at] = ids[row];
+                }
+                List<Long> result = new ArrayList<>(found);
+                for (int i = 0; i < found; i++) {
+                    result.add(bestIds[i]);
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private float dot(float[] query, int offset) {
+            return EmbeddingEngine.dot(query, 0, vectors, offset, dimension);
+        }
+
+        private Rows copy(long userId) {
+            lock.readLock().lock();
+            try {
+                return new Rows(userId, Arrays.copyOf(ids, size), Arrays.copyOf(vectors, size * dimension));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private record Rows(long userId, long[] ids, float[] vectors) {
+            int size() {
+                return ids.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.samterminal.backend.service;
+
+import java.util.Arrays;
+
+/**
+ * 记忆向量化：字符 n-gram 特征哈希。中文按单字与相邻双字，英文/数字按整词与带边界的三字母片段，
+ * 带符号地累加到 {@link #DIMENSION} 维 float[] 后 L2 归一化。点积与归一化在有 jdk.incubator.vector
+ * 模块时走 Vector API，否则退回标量实现。
+ */
+public final class EmbeddingEngine {
+    public static final int DIMENSION = 256;
+    private static final int MASK = DIMENSION - 1;
+    private static final float CJK_UNIGRAM_WEIGHT = 0.5f;
+    private static final float CJK_BIGRAM_WEIGHT = 1.0f;
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    private static final char WORD_START = '\u0002';
+    private static final char WORD_END = '\u0003';
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private static final VectorMath MATH = loadMath();
+
+    private EmbeddingEngine() {}
+
+    public static float[] embed(String text) {
+        float[] vector = new float[DIMENSION];
+        embed(text, vector);
+        return vector;
+    }
+
+    /** Writes the normalized embedding of {@code text} into {@code out}, which must hold {@link #DIMENSION} floats. */
+    public static void embed(String text, float[] out) {
+        Arrays.fill(out, 0, DIMENSION, 0f);
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        char previousCjk = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                add(out, mix(step(FNV_OFFSET, c)), CJK_UNIGRAM_WEIGHT);
+                if (previousCjk != 0) {
+                    add(out, mix(step(step(FNV_OFFSET, previousCjk), c)), CJK_BIGRAM_WEIGHT);
+                }
+                previousCjk = c;
+                i++;
+            } else if (Character.isLetterOrDigit(c)) {
+                previousCjk = 0;
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                addWord(out, text, start, i);
+            } else {
+                previousCjk = 0;
+                i++;
+            }
+        }
+        normalize(out);
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return MATH.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /** Scales {@code vector} to unit length in place; an all-zero vector is left as is. */
+    public static void normalize(float[] vector) {
+        float squared = MATH.squaredNorm(vector, 0, vector.length);
+        if (squared > 0f) {
+            MATH.scale(vector, 0, vector.length, (float) (1.0 / Math.sqrt(squared)));
+        }
+    }
+
+    public static boolean simdEnabled() {
+        return !(MATH instanceof ScalarVectorMath);
+    }
+
+    private static void addWord(float[] out, String text, int start, int end) {
+        int word = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            word = step(word, Character.toLowerCase(text.charAt(i)));
+        }
+        add(out, mix(word), WORD_WEIGHT);
+        // Trigrams over "\u0002word\u0003" let inflections and typos still share features.
+        int wordLength = end - start;
+        if (wordLength < 2) {
+            return;
+        }
+        for (int j = -1; j + 2 <= wordLength; j++) {
+            int gram = FNV_OFFSET;
+            for (int k = j; k < j + 3; k++) {
+                gram = step(gram, charAt(text, start, wordLength, k));
+            }
+            add(out, mix(gram), TRIGRAM_WEIGHT);
+        }
+    }
+
+    private static char charAt(String text, int start, int wordLength, int index) {
+        if (index < 0) {
+            return WORD_START;
+        }
+        if (index >= wordLength) {
+            return WORD_END;
+        }
+        return Character.toLowerCase(text.charAt(start + index));
+    }
+
+    private static void add(float[] out, int hash, float weight) {
+        // The sign bit keeps colliding features from only ever adding up.
+        out[hash & MASK] += hash < 0 ? -weight : weight;
+    }
+
+    private static int step(int hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF);
+    }
+
+    private static VectorMath loadMath() {
+        try {
+            return (VectorMath) Class.forName(EmbeddingEngine.class.getPackageName() + ".SimdVectorMath")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // Started without --add-modules jdk.incubator.vector.
+            return new ScalarVectorMath();
+        }
+    }
+}
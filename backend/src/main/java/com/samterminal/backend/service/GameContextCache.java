@@ -0,0 +1,117 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.GameState;
+import com.samterminal.backend.entity.Item;
+import com.samterminal.backend.entity.Memory;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 每个玩家的热数据快照（用户、游戏状态、物品、记忆、已解锁地点），一轮对话只加载一次。
+ * 按最近使用淘汰（app.game.context-cache-max-entries）并在 app.game.context-cache-ttl-millis 后过期；
+ * 相关实体经 JPA 写入并提交后由 {@link GameContextListener} 失效或替换。快照里的实体是脱管的，只读使用。
+ */
+@Component
+public class GameContextCache {
+    private final Clock clock;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    // Bumped on every change so a load that raced a commit never stores what it read before it.
+    private final AtomicLong changes = new AtomicLong();
+
+    public GameContextCache(Clock clock, AppProperties appProperties) {
+        this.clock = clock;
+        AppProperties.GameSettings settings = appProperties.getGame();
+        this.ttlMillis = settings.getContextCacheTtlMillis();
+        int maxEntries = Math.max(1, settings.getContextCacheMaxEntries());
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public record PlayerContext(AppUser user, GameState state, List<Item> items, List<Memory> memories,
+                                Set<Long> unlockedLocationIds) {}
+
+    /** Returns the cached context for {@code username}, or runs {@code loader}; a null result is not cached. */
+    public PlayerContext get(String username, Supplier<PlayerContext> loader) {
+        long now = clock.millis();
+        Entry entry = entries.get(username);
+        if (entry != null && entry.expiresAt() > now) {
+            return entry.context();
+        }
+        long stamp = changes.get();
+        PlayerContext loaded = loader.get();
+        if (loaded != null) {
+            synchronized (entries) {
+                if (changes.get() == stamp) {
+                    entries.put(username, new Entry(loaded, now + ttlMillis));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /** Returns the cached context for {@code username} without loading it; null on a miss. */
+    public PlayerContext peek(String username) {
+        Entry entry = entries.get(username);
+        return entry != null && entry.expiresAt() > clock.millis() ? entry.context() : null;
+    }
+
+    public void invalidate(AppUser user) {
+        if (user == null || user.getUsername() == null) {
+            return;
+        }
+        synchronized (entries) {
+            changes.incrementAndGet();
+            entries.remove(user.getUsername());
+        }
+    }
+
+    /** Swaps in a committed state so a chat turn does not throw away the player's items and memories. */
+    public void stateChanged(GameState state) {
+        if (state.getUser() == null || state.getUser().getUsername() == null) {
+            return;
+        }
+        synchronized (entries) {
+            changes.incrementAndGet();
+            String username = state.getUser().getUsername();
+            Entry entry = entries.get(username);
+            if (entry == null) {
+                return;
+            }
+            GameState cached = entry.context().state();
+            if (!cached.getId().equals(state.getId())) {
+                entries.remove(username);
+            } else if (isNewer(state, cached)) {
+                PlayerContext context = entry.context();
+                entries.put(username, new Entry(new PlayerContext(context.user(), state, context.items(),
+                        context.memories(), context.unlockedLocationIds()), entry.expiresAt()));
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static boolean isNewer(GameState candidate, GameState cached) {
+        // Two turns may commit in either order; never replace a state with an older version.
+        return cached.getVersion() == null || candidate.getVersion() == null
+                || candidate.getVersion() > cached.getVersion();
+    }
+
+    private record Entry(PlayerContext context, long expiresAt) {}
+}
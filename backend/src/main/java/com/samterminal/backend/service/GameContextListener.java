@@ -0,0 +1,106 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.*;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps {@link GameContextCache} and {@link PlayerRevisions} in step with JPA writes to a player's user, state,
+ * items, memories and unlocks, and to the shared map. Applied after commit, so a rolled-back turn never reaches
+ * either; the cache is updated before the revision moves, so a request that sees the new revision reads new data.
+ */
+public class GameContextListener {
+    private final ObjectProvider<GameContextCache> cache;
+    private final ObjectProvider<PlayerRevisions> revisions;
+
+    public GameContextListener(ObjectProvider<GameContextCache> cache, ObjectProvider<PlayerRevisions> revisions) {
+        this.cache = cache;
+        this.revisions = revisions;
+    }
+
+    @PostPersist
+    @PostRemove
+    public void onInsertOrDelete(Object entity) {
+        GameContextCache target = cache.getIfAvailable();
+        AppUser user = ownerOf(entity);
+        if (target != null && user != null) {
+            afterCommit(() -> {
+                target.invalidate(user);
+                bumpRevision(entity, user);
+            });
+        } else if (entity instanceof Location || entity instanceof StarDomain) {
+            afterCommit(() -> bumpRevision(entity, null));
+        }
+    }
+
+    @PostUpdate
+    public void onUpdate(Object entity) {
+        GameContextCache target = cache.getIfAvailable();
+        if (target == null) {
+            return;
+        }
+        if (entity instanceof GameState state) {
+            afterCommit(() -> {
+                target.stateChanged(state);
+                bumpRevision(state, state.getUser());
+            });
+            return;
+        }
+        AppUser user = ownerOf(entity);
+        if (user != null) {
+            afterCommit(() -> {
+                target.invalidate(user);
+                bumpRevision(entity, user);
+            });
+        } else if (entity instanceof Location || entity instanceof StarDomain) {
+            afterCommit(() -> bumpRevision(entity, null));
+        }
+    }
+
+    private void bumpRevision(Object entity, AppUser user) {
+        PlayerRevisions target = revisions.getIfAvailable();
+        if (target == null) {
+            return;
+        }
+        String username = user != null ? user.getUsername() : null;
+        switch (entity) {
+            case AppUser ignored -> target.bumpAll(username);
+            case GameState ignored -> target.bump(username, PlayerRevisions.Slice.STATE);
+            case Item ignored -> target.bump(username, PlayerRevisions.Slice.INVENTORY);
+            case Memory ignored -> target.bump(username, PlayerRevisions.Slice.MEMORIES);
+            case UserLocationUnlock ignored -> target.bump(username, PlayerRevisions.Slice.UNLOCKS);
+            case Location ignored -> target.bumpWorld();
+            case StarDomain ignored -> target.bumpWorld();
+            default -> {
+            }
+        }
+    }
+
+    private AppUser ownerOf(Object entity) {
+        return switch (entity) {
+            case AppUser user -> user;
+            case GameState state -> state.getUser();
+            case Item item -> item.getUser();
+            case Memory memory -> memory.getUser();
+            case UserLocationUnlock unlock -> unlock.getUser();
+            default -> null;
+        };
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
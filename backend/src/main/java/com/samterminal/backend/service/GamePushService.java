@@ -0,0 +1,224 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.dto.ChatResponse;
+import com.samterminal.backend.dto.PushEvent;
+import com.samterminal.backend.entity.Location;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 玩家的 WebSocket 推送连接（/ws/game），按用户名分组，推送聊天回复、状态变化、地点解锁与额度提醒。
+ * 每个连接由 {@link ConcurrentWebSocketSessionDecorator} 包装：并发发送在有上限的缓冲中排队，
+ * 单次发送超过 app.push.send-time-limit-millis 或待发内容超过 app.push.buffer-size-limit 时断开该连接，
+ * 慢客户端不会拖住聊天线程，客户端重连后按 revision 重新同步。
+ * 每 app.push.heartbeat-interval-millis 发送一次 ping，超过 app.push.idle-timeout-millis 未收到任何帧（含 pong）
+ * 或握手时的 JWT 已过期的连接被关闭，客户端需用新令牌重连。
+ */
+@Component
+public class GamePushService {
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final AppProperties.PushSettings settings;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Set<Connection>> byUser = new ConcurrentHashMap<>();
+    // "<username>:warning" / "<username>:exhausted", so each threshold is announced once until usage drops below it.
+    private final Set<String> quotaAnnounced = ConcurrentHashMap.newKeySet();
+
+    public GamePushService(ObjectMapper objectMapper, Clock clock, AppProperties appProperties) {
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.settings = appProperties.getPush();
+    }
+
+    /** Adds {@code session} for {@code username}; false when the player already has the maximum number of connections. */
+    public boolean register(String username, WebSocketSession session) {
+        return register(username, session, Long.MAX_VALUE);
+    }
+
+    /** As {@link #register(String, WebSocketSession)}; the heartbeat closes the connection at {@code expiresAt} (epoch millis). */
+    public boolean register(String username, WebSocketSession session, long expiresAt) {
+        Connection connection = new Connection(username, new ConcurrentWebSocketSessionDecorator(session,
+                settings.getSendTimeLimitMillis(), settings.getBufferSizeLimit(),
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE),
+                new AtomicLong(clock.millis()), new AtomicBoolean(), expiresAt);
+        AtomicBoolean accepted = new AtomicBoolean();
+        byUser.compute(username, (key, current) -> {
+            Set<Connection> set = current != null ? current : ConcurrentHashMap.newKeySet();
+            if (set.size() < settings.getMaxSessionsPerUser()) {
+                set.add(connection);
+                connections.put(session.getId(), connection);
+                accepted.set(true);
+            }
+            return set.isEmpty() ? null : set;
+        });
+        return accepted.get();
+    }
+
+    public void unregister(WebSocketSession session) {
+        Connection connection = connections.remove(session.getId());
+        if (connection == null) {
+            return;
+        }
+        byUser.computeIfPresent(connection.username(), (key, set) -> {
+            set.remove(connection);
+            if (set.isEmpty()) {
+                quotaAnnounced.remove(key + ":warning");
+                quotaAnnounced.remove(key + ":exhausted");
+                return null;
+            }
+            return set;
+        });
+    }
+
+    /** Records inbound traffic (any frame, including pong) for the idle check. */
+    public void touch(WebSocketSession session) {
+        Connection connection = connections.get(session.getId());
+        if (connection != null) {
+            connection.lastSeen().set(clock.millis());
+        }
+    }
+
+    /** Marks the connection busy with a command; false while the previous one is still running. */
+    public boolean begin(WebSocketSession session) {
+        Connection connection = connections.get(session.getId());
+        return connection != null && connection.busy().compareAndSet(false, true);
+    }
+
+    public void end(WebSocketSession session) {
+        Connection connection = connections.get(session.getId());
+        if (connection != null) {
+            connection.busy().set(false);
+        }
+    }
+
+    public boolean isConnected(String username) {
+        return byUser.containsKey(username);
+    }
+
+    public int connectionCount(String username) {
+        Set<Connection> set = byUser.get(username);
+        return set != null ? set.size() : 0;
+    }
+
+    /** Sends one frame to a single connection, e.g. the reply to the command it sent. */
+    public void reply(WebSocketSession session, String type, String requestId, Object data) {
+        Connection connection = connections.get(session.getId());
+        TextMessage frame = frame(type, requestId, data);
+        if (connection != null && frame != null) {
+            deliver(connection, frame);
+        }
+    }
+
+    /** Sends one frame to every connection of {@code username}. */
+    public void publish(String username, String type, Object data) {
+        Set<Connection> set = byUser.get(username);
+        if (set == null) {
+            return;
+        }
+        TextMessage frame = frame(type, null, data);
+        if (frame == null) {
+            return;
+        }
+        for (Connection connection : set) {
+            deliver(connection, frame);
+        }
+    }
+
+    public void stateChanged(String username, ChatResponse response) {
+        if (response.getDelta() == null && response.getStateUpdate() == null) {
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("baseRevision", response.getBaseRevision());
+        data.put("revision", response.getRevision());
+        data.put("delta", response.getDelta());
+        data.put("stateUpdate", response.getStateUpdate());
+        publish(username, "state", data);
+    }
+
+    public void unlocked(String username, Location location) {
+        publish(username, "unlock", Map.of("location", location.getCode(), "name", location.getName()));
+    }
+
+    /** Announces crossing app.push.quota-warning-percent and running out, each once until usage falls back below. */
+    public void quota(String username, long used, long limit) {
+        if (limit <= 0 || !isConnected(username)) {
+            return;
+        }
+        long percent = used * 100 / limit;
+        announceQuota(username, "exhausted", percent >= 100, used, limit, percent);
+        announceQuota(username, "warning", percent >= settings.getQuotaWarningPercent() && percent < 100, used, limit, percent);
+    }
+
+    @Scheduled(fixedDelayString = "${app.push.heartbeat-interval-millis:25000}")
+    public void heartbeat() {
+        long now = clock.millis();
+        for (Connection connection : connections.values()) {
+            if (now >= connection.expiresAt()) {
+                close(connection, CloseStatus.POLICY_VIOLATION.withReason("token expired"));
+            } else if (now - connection.lastSeen().get() > settings.getIdleTimeoutMillis()) {
+                close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+            } else {
+                deliver(connection, new PingMessage());
+            }
+        }
+    }
+
+    private void announceQuota(String username, String level, boolean reached, long used, long limit, long percent) {
+        String key = username + ":" + level;
+        if (!reached) {
+            quotaAnnounced.remove(key);
+        } else if (quotaAnnounced.add(key)) {
+            publish(username, "quota", Map.of("level", level, "used", used, "limit", limit, "percent", percent));
+        }
+    }
+
+    private TextMessage frame(String type, String requestId, Object data) {
+        try {
+            return new TextMessage(objectMapper.writeValueAsString(new PushEvent(type, requestId, data)));
+        } catch (JsonProcessingException ex) {
+            return null;
+        }
+    }
+
+    private void deliver(Connection connection, WebSocketMessage<?> message) {
+        try {
+            connection.session().sendMessage(message);
+        } catch (SessionLimitExceededException ex) {
+            // The decorator has already closed the session; the client reconnects and resynchronises.
+            unregister(connection.session());
+        } catch (IOException | IllegalStateException ex) {
+            close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    private void close(Connection connection, CloseStatus status) {
+        unregister(connection.session());
+        try {
+            connection.session().close(status);
+        } catch (IOException | IllegalStateException ignored) {
+        }
+    }
+
+    private record Connection(String username, ConcurrentWebSocketSessionDecorator session,
+                              AtomicLong lastSeen, AtomicBoolean busy, long expiresAt) {}
+}
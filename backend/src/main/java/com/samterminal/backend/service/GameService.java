@@ -1,32 +1,40 @@
 package com.samterminal.backend.service;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.dto.ChatResponse;
 import com.samterminal.backend.dto.GameStateDto;
 import com.samterminal.backend.dto.GameStateDto.ItemDto;
 import com.samterminal.backend.dto.GameStateDto.MemoryDto;
+import com.samterminal.backend.dto.StateDeltaDto;
 import com.samterminal.backend.entity.*;
 import com.samterminal.backend.repository.*;
+import com.samterminal.backend.service.GameContextCache.PlayerContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class GameService {
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
 
     private final AppUserRepository userRepository;
     private final GameStateRepository stateRepository;
     private final LocationRepository locationRepository;
     private final ItemRepository itemRepository;
     private final MemoryRepository memoryRepository;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageWriter chatMessageWriter;
     private final LlmSettingRepository llmSettingRepository;
-    private final LlmApiConfigRepository llmApiConfigRepository;
     private final UserLocationUnlockRepository unlockRepository;
     private final TokenUsageService tokenUsageService;
     private final LlmService llmService;
@@ -34,23 +42,32 @@ public class GameService {
     private final SessionService sessionService;
     private final MemoryRagService memoryRagService;
     private final UserLocationUnlockService unlockService;
+    private final GameContextCache contextCache;
+    private final GamePushService pushService;
+    private final TokenCounterRegistry tokenCounters;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTemplate;
+    private final long systemPromptTokens;
+    private final long reservedOutputTokens;
+    private final String quotaExhaustedNotice;
 
     public GameService(AppUserRepository userRepository, GameStateRepository stateRepository,
                        LocationRepository locationRepository, ItemRepository itemRepository,
-                       MemoryRepository memoryRepository, ChatMessageRepository chatMessageRepository,
-                       LlmSettingRepository llmSettingRepository, LlmApiConfigRepository llmApiConfigRepository,
+                       MemoryRepository memoryRepository, ChatMessageWriter chatMessageWriter,
+                       LlmSettingRepository llmSettingRepository,
                        UserLocationUnlockRepository unlockRepository,
                        TokenUsageService tokenUsageService, LlmService llmService,
                        LlmPoolService llmPoolService, SessionService sessionService,
-                       MemoryRagService memoryRagService, UserLocationUnlockService unlockService) {
+                       MemoryRagService memoryRagService, UserLocationUnlockService unlockService,
+                       GameContextCache contextCache, GamePushService pushService,
+                       TokenCounterRegistry tokenCounters, AppProperties appProperties, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.stateRepository = stateRepository;
         this.locationRepository = locationRepository;
         this.itemRepository = itemRepository;
         this.memoryRepository = memoryRepository;
-        this.chatMessageRepository = chatMessageRepository;
+        this.chatMessageWriter = chatMessageWriter;
         this.llmSettingRepository = llmSettingRepository;
-        this.llmApiConfigRepository = llmApiConfigRepository;
         this.unlockRepository = unlockRepository;
         this.tokenUsageService = tokenUsageService;
         this.llmService = llmService;
@@ -58,6 +75,17 @@ public class GameService {
         this.sessionService = sessionService;
         this.memoryRagService = memoryRagService;
         this.unlockService = unlockService;
+        this.contextCache = contextCache;
+        this.pushService = pushService;
+        this.tokenCounters = tokenCounters;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+        this.systemPromptTokens = tokenCounters.defaultCounter().countTokens(buildSystemPrompt());
+        this.reservedOutputTokens = appProperties.getLlm().getReservedOutputTokens();
+        this.quotaExhaustedNotice = appProperties.getQuota().getWindow() == AppProperties.QuotaWindow.ROLLING
+                ? "终端的通讯配额暂时用尽了，过几个小时再来找我吧。"
+                : "终端今日的通讯配额已用尽了，我们明天再聊吧。";
     }
 
     public AppUser getOrCreateUser(String username) {
@@ -67,12 +95,40 @@ public class GameService {
         });
     }
 
-    @Transactional
     public GameStateDto getState(String username) {
-        AppUser user = getOrCreateUser(username);
-        GameState state = stateRepository.findByUser(user).orElseGet(() -> initDefaultState(user));
-        ensureDefaultUnlocks(user);
-        return toDto(state, user);
+        PlayerContext player = player(username);
+        if (player == null) {
+            preparePlayer(username);
+            player = player(username);
+        }
+        ensureDefaultUnlocks(player.user(), player.unlockedLocationIds());
+        return toDto(player.state(), player);
+    }
+
+    /** Only the inventory: from the context cache when warm, else the item table alone; new players go through getState. */
+    public List<ItemDto> getInventory(String username) {
+        PlayerContext player = contextCache.peek(username);
+        List<Item> items = player != null ? player.items() : readOnlyTemplate.execute(status ->
+                userRepository.findByUsername(username).map(itemRepository::findByUser).orElse(null));
+        return items != null ? items.stream().map(GameService::toItemDto).toList() : getState(username).getItems();
+    }
+
+    public List<MemoryDto> getMemories(String username) {
+        PlayerContext player = contextCache.peek(username);
+        List<Memory> memories = player != null ? player.memories() : readOnlyTemplate.execute(status ->
+                userRepository.findByUsername(username).map(memoryRepository::findByUser).orElse(null));
+        return memories != null ? memories.stream().map(GameService::toMemoryDto).toList() : getState(username).getMemories();
+    }
+
+    private PlayerInit ensurePlayer(String username) {
+        return transactionTemplate.execute(status -> {
+            AppUser user = getOrCreateUser(username);
+            boolean created = stateRepository.findByUser(user).isEmpty();
+            if (created) {
+                initDefaultState(user);
+            }
+            return new PlayerInit(user, created);
+        });
     }
 
     private GameState initDefaultState(AppUser user) {
@@ -88,7 +144,6 @@ public class GameService {
                 .gameTime(formatNow())
                 .build();
         GameState saved = stateRepository.save(state);
-        ensureDefaultUnlocks(user);
 
         if (itemRepository.findByUser(user).isEmpty()) {
             itemRepository.saveAll(List.of(
@@ -105,64 +160,85 @@ public class GameService {
         return saved;
     }
 
-    @Transactional
     public ChatResponse handleChat(String username, String userMessage, String sessionId) {
-        AppUser user = getOrCreateUser(username);
-        GameState state = stateRepository.findByUser(user).orElseGet(() -> initDefaultState(user));
-        ChatSession session = sessionService.resolveSession(user, sessionId);
+        return handleChat(username, userMessage, sessionId, null);
+    }
 
-        long estimatedInputTokens = TokenEstimator.estimateTokens(userMessage);
-        if (tokenUsageService.wouldExceedLimit(user, estimatedInputTokens, 0)) {
-            ChatMessage blocked = ChatMessage.builder()
-                    .user(user)
-                    .sender("firefly")
-                    .content("终端今日的通讯配额已用尽了，我们明天再聊吧。")
-                    .timestamp(Instant.now())
-                    .build();
-            chatMessageRepository.save(blocked);
-            return new ChatResponse(
-                    List.of(new com.samterminal.backend.dto.ChatMessageDto(
-                            String.valueOf(blocked.getId()), blocked.getSender(), blocked.getNpcName(),
-                            blocked.getContent(), blocked.getNarration(), blocked.getTimestamp().toString())),
-                    toDto(state, user),
-                    null,
-                    session.getSessionId()
-            );
+    public ChatResponse handleChat(String username, String userMessage, String sessionId, ChatStreamListener listener) {
+        Instant receivedAt = Instant.now();
+        long estimatedInputTokens = tokenCounters.defaultCounter().countTokens(userMessage);
+        ChatTurn turn = loadTurn(username, sessionId, ctx -> new ChatTurn(ctx,
+                ctx.player().memories(),
+                ctx.player().items().stream().map(Item::getName).collect(Collectors.joining(", ")),
+                estimatedInputTokens));
+        TurnContext ctx = turn.context();
+        TokenUsageService.Reservation reservation = reserve(ctx.user(), estimatedInputTokens);
+        if (reservation == null) {
+            ChatResponse notice = commitTurn(() -> noticeReply(ctx, null, quotaExhaustedNotice));
+            pushQuota(ctx.user());
+            return notice;
         }
 
-        chatMessageRepository.save(ChatMessage.builder()
-                .user(user)
-                .sender("user")
-                .content(userMessage)
-                .timestamp(Instant.now())
-                .build());
-
-        LlmPoolService.LlmCallResult llmResult = null;
+        ChatCommit commit;
         try {
-            llmResult = generateLlmReply(state, user, userMessage, session);
-        } catch (NoAvailableApiException ex) {
-            ChatMessage reply = ChatMessage.builder()
-                    .user(user)
-                    .sender("firefly")
-                    .content("当前模型不可用，请稍后再试。")
-                    .timestamp(Instant.now())
-                    .build();
-            chatMessageRepository.save(reply);
-            return new ChatResponse(
-                    List.of(new com.samterminal.backend.dto.ChatMessageDto(
-                            String.valueOf(reply.getId()), reply.getSender(), reply.getNpcName(),
-                            reply.getContent(), reply.getNarration(), reply.getTimestamp().toString())),
-                    toDto(state, user),
-                    null,
-                    session.getSessionId()
-            );
+            LlmPoolService.LlmCallResult llmResult;
+            try {
+                llmResult = generateLlmReply(turn, userMessage, listener);
+            } catch (NoAvailableApiException ex) {
+                ChatMessage userEntry = userEntry(ctx.user(), userMessage, receivedAt);
+                return commitTurn(() -> noticeReply(ctx, userEntry, unavailableNotice(ex)));
+            }
+            commit = commitTurn(() ->
+                    completeChat(turn, reservation, userEntry(ctx.user(), userMessage, receivedAt), llmResult));
+        } finally {
+            // Settled turns have already released it after commit; this covers failures and notices.
+            reservation.release();
+        }
+        pushService.stateChanged(username, commit.response());
+        // Unlock rows use their own transaction, so they are written once the turn has released its connection.
+        for (Location location : commit.unlocks()) {
+            boolean wasUnlocked = isLocationUnlocked(ctx.player(), location);
+            ensureUnlocked(ctx.user(), location);
+            if (!wasUnlocked) {
+                pushService.unlocked(username, location);
+            }
         }
+        pushQuota(ctx.user());
+        return commit.response();
+    }
+
+    /** Pushes a quota warning to the player's open connections; the usage lookup is skipped when there are none. */
+    private void pushQuota(AppUser user) {
+        if (pushService.isConnected(user.getUsername())) {
+            pushService.quota(user.getUsername(), tokenUsageService.currentWeightedUsage(user),
+                    tokenUsageService.resolveLimit(user));
+        }
+    }
+
+    /**
+     * Holds an upper bound of the turn's weighted cost (system prompt plus the estimated input, and
+     * app.llm.reserved-output-tokens of output) against the quota until the real usage is settled; null when over quota.
+     */
+    private TokenUsageService.Reservation reserve(AppUser user, long estimatedInputTokens) {
+        return tokenUsageService.reserve(user, systemPromptTokens + estimatedInputTokens, reservedOutputTokens);
+    }
+
+    private ChatCommit completeChat(ChatTurn turn, TokenUsageService.Reservation reservation, ChatMessage userEntry,
+                                    LlmPoolService.LlmCallResult llmResult) {
+        TurnContext ctx = turn.context();
+        List<Location> unlocks = new ArrayList<>();
+        AppUser user = ctx.user();
+        ChatSession session = commitSession(ctx, llmResult);
+        GameState state = reloadState(ctx.state());
+        GameStateDto before = toDto(state, user, List.of(), List.of());
+        long estimatedInputTokens = turn.estimatedInputTokens();
         List<ChatMessage> replyEntities;
         com.samterminal.backend.dto.StateUpdateDto stateUpdate = null;
+        List<Item> changedItems = List.of();
 
         LlmService.LlmReply llmReply = llmResult != null ? llmResult.reply() : null;
         if (llmReply == null) {
-            var result = simulateReply(userMessage.toLowerCase(), state, user);
+            var result = simulateReply(userEntry.getContent().toLowerCase(), state, ctx.player(), unlocks);
             replyEntities = result.messages().stream().map(msg -> ChatMessage.builder()
                     .user(user)
                     .sender(msg.sender())
@@ -171,11 +247,10 @@ public class GameService {
                     .narration(msg.narration())
                     .timestamp(msg.timestamp())
                     .build()).toList();
-            chatMessageRepository.saveAll(replyEntities);
             applyStatePatch(state, result.newState());
-            tokenUsageService.recordUsage(user, estimatedInputTokens, estimateMessagesTokens(result.messages()));
+            tokenUsageService.settle(reservation, estimatedInputTokens, estimateMessagesTokens(result.messages()));
         } else {
-            IntentResult intentResult = applyIntent(state, user, llmReply);
+            IntentResult intentResult = applyIntent(state, ctx.player(), llmReply, unlocks);
             ChatMessage reply = ChatMessage.builder()
                     .user(user)
                     .sender("firefly")
@@ -184,104 +259,90 @@ public class GameService {
                     .timestamp(Instant.now())
                     .build();
             replyEntities = List.of(reply);
-            chatMessageRepository.save(reply);
             applyStatePatch(state, intentResult.statePatch);
             stateUpdate = intentResult.stateUpdate;
+            if (intentResult.changedItem != null) {
+                changedItems = List.of(intentResult.changedItem);
+            }
             long outputTokens = llmReply.outputTokens() > 0 ? llmReply.outputTokens()
-                    : TokenEstimator.estimateTokens(reply.getContent());
-            tokenUsageService.recordUsage(user, llmReply.inputTokens() > 0 ? llmReply.inputTokens() : estimatedInputTokens, outputTokens);
+                    : counterFor(llmResult).countTokens(reply.getContent());
+            tokenUsageService.settle(reservation,
+                    llmReply.inputTokens() > 0 ? llmReply.inputTokens() : estimatedInputTokens, outputTokens);
         }
 
-        stateRepository.save(state);
+        List<ChatMessage> entries = new ArrayList<>(replyEntities.size() + 1);
+        entries.add(userEntry);
+        entries.addAll(replyEntities);
+        chatMessageWriter.append(entries);
 
-        return new ChatResponse(
+        StateDeltaDto delta = diff(before, toDto(state, user, changedItems, List.of()));
+        long baseRevision = state.getRevision();
+        if (delta != null) {
+            state.setRevision(baseRevision + 1);
+        }
+        stateRepository.saveAndFlush(state);
+
+        return new ChatCommit(new ChatResponse(
                 replyEntities.stream().map(m -> new com.samterminal.backend.dto.ChatMessageDto(
                         String.valueOf(m.getId()), m.getSender(), m.getNpcName(), m.getContent(), m.getNarration(), m.getTimestamp().toString())
                 ).toList(),
-                toDto(state, user),
+                delta,
+                baseRevision,
+                state.getRevision(),
                 stateUpdate,
                 session.getSessionId()
-        );
+        ), unlocks);
     }
 
-    @Transactional
     public ChatResponse recallMemory(String username, Long memoryId, String sessionId) {
-        AppUser user = getOrCreateUser(username);
-        GameState state = stateRepository.findByUser(user).orElseGet(() -> initDefaultState(user));
-        ChatSession session = sessionService.resolveSession(user, sessionId);
-        Memory memory = memoryRepository.findById(memoryId).orElse(null);
-        if (memory == null || memory.getUser() == null || !memory.getUser().getId().equals(user.getId())) {
-            ChatMessage reply = ChatMessage.builder()
-                    .user(user)
-                    .sender("firefly")
-                    .content("这段记忆好像已经有些模糊了，我们换一个话题吧。")
-                    .timestamp(Instant.now())
-                    .build();
-            chatMessageRepository.save(reply);
-            return new ChatResponse(
-                    List.of(new com.samterminal.backend.dto.ChatMessageDto(
-                            String.valueOf(reply.getId()), reply.getSender(), reply.getNpcName(),
-                            reply.getContent(), reply.getNarration(), reply.getTimestamp().toString())),
-                    toDto(state, user),
-                    null,
-                    session.getSessionId()
-            );
-        }
-        String recallPrompt = """
+        RecallTurn turn = loadTurn(username, sessionId, ctx -> {
+            Memory memory = ctx.player().memories().stream()
+                    .filter(m -> m.getId().equals(memoryId))
+                    .findFirst()
+                    .orElse(null);
+            if (memory == null) {
+                return new RecallTurn(ctx, null, null, 0);
+            }
+            String recallPrompt = """
 # Recall Request
 请根据以下记忆内容，进行第一人称的回忆性回复，保持流萤语气。
 记忆标题: %s
 记忆内容: %s
 """.formatted(memory.getTitle(), memory.getContent());
-        long estimatedInput = TokenEstimator.estimateTokens(recallPrompt);
-        if (tokenUsageService.wouldExceedLimit(user, estimatedInput, 0)) {
-            ChatMessage reply = ChatMessage.builder()
-                    .user(user)
-                    .sender("firefly")
-                    .content("终端今日的通讯配额已用尽了，我们明天再聊吧。")
-                    .timestamp(Instant.now())
-                    .build();
-            chatMessageRepository.save(reply);
-            return new ChatResponse(
-                    List.of(new com.samterminal.backend.dto.ChatMessageDto(
-                            String.valueOf(reply.getId()), reply.getSender(), reply.getNpcName(),
-                            reply.getContent(), reply.getNarration(), reply.getTimestamp().toString())),
-                    toDto(state, user),
-                    null,
-                    session.getSessionId()
-            );
+            return new RecallTurn(ctx, memory, recallPrompt, tokenCounters.defaultCounter().countTokens(recallPrompt));
+        });
+        TurnContext ctx = turn.context();
+        if (turn.memory() == null) {
+            return commitTurn(() -> noticeReply(ctx, null, "这段记忆好像已经有些模糊了，我们换一个话题吧。"));
         }
-        LlmService.LlmReply reply = null;
-        if (llmApiConfigRepository.count() > 0) {
+        TokenUsageService.Reservation reservation = reserve(ctx.user(), turn.estimatedInputTokens());
+        if (reservation == null) {
+            return commitTurn(() -> noticeReply(ctx, null, quotaExhaustedNotice));
+        }
+        ChatResponse response;
+        try {
+            LlmPoolService.LlmCallResult result;
             try {
-                LlmPoolService.LlmCallResult result = llmPoolService.callWithSession(session, buildSystemPrompt(), recallPrompt);
-                reply = result.reply();
+                result = callModel(ctx, buildSystemPrompt(), turn.prompt(), null);
             } catch (NoAvailableApiException ex) {
-                ChatMessage unavailable = ChatMessage.builder()
-                        .user(user)
-                        .sender("firefly")
-                        .content("当前模型不可用，请稍后再试。")
-                        .timestamp(Instant.now())
-                        .build();
-                chatMessageRepository.save(unavailable);
-                return new ChatResponse(
-                        List.of(new com.samterminal.backend.dto.ChatMessageDto(
-                                String.valueOf(unavailable.getId()), unavailable.getSender(), unavailable.getNpcName(),
-                                unavailable.getContent(), unavailable.getNarration(), unavailable.getTimestamp().toString())),
-                        toDto(state, user),
-                        null,
-                        session.getSessionId()
-                );
+                return commitTurn(() -> noticeReply(ctx, null, unavailableNotice(ex)));
             }
-        } else {
-            reply = llmService.callLlm(
-                    llmSettingRepository.findAll().stream().findFirst().orElse(null),
-                    buildSystemPrompt(),
-                    recallPrompt
-            );
+            response = commitTurn(() -> completeRecall(turn, reservation, result));
+        } finally {
+            reservation.release();
         }
+        pushQuota(ctx.user());
+        return response;
+    }
+
+    private ChatResponse completeRecall(RecallTurn turn, TokenUsageService.Reservation reservation,
+                                        LlmPoolService.LlmCallResult result) {
+        TurnContext ctx = turn.context();
+        AppUser user = ctx.user();
+        ChatSession session = commitSession(ctx, result);
+        LlmService.LlmReply reply = result != null ? result.reply() : null;
         String content = reply != null && reply.content() != null ? reply.content()
-                : "我记得那天的细节依然很清晰：" + memory.getContent();
+                : "我记得那天的细节依然很清晰：" + turn.memory().getContent();
         String narration = reply != null ? reply.narration() : null;
         ChatMessage message = ChatMessage.builder()
                 .user(user)
@@ -290,20 +351,152 @@ public class GameService {
                 .narration(narration)
                 .timestamp(Instant.now())
                 .build();
-        chatMessageRepository.save(message);
-        tokenUsageService.recordUsage(user,
-                reply != null && reply.inputTokens() > 0 ? reply.inputTokens() : estimatedInput,
-                reply != null && reply.outputTokens() > 0 ? reply.outputTokens() : TokenEstimator.estimateTokens(content));
+        chatMessageWriter.append(List.of(message));
+        tokenUsageService.settle(reservation,
+                reply != null && reply.inputTokens() > 0 ? reply.inputTokens() : turn.estimatedInputTokens(),
+                reply != null && reply.outputTokens() > 0 ? reply.outputTokens() : counterFor(result).countTokens(content));
         return new ChatResponse(
                 List.of(new com.samterminal.backend.dto.ChatMessageDto(
                         String.valueOf(message.getId()), message.getSender(), message.getNpcName(),
                         message.getContent(), message.getNarration(), message.getTimestamp().toString())),
-                toDto(state, user),
+                null,
+                ctx.state().getRevision(),
+                ctx.state().getRevision(),
+                null,
+                session.getSessionId()
+        );
+    }
+
+    private <T> T loadTurn(String username, String sessionId, Function<TurnContext, T> loader) {
+        T turn = readOnlyTemplate.execute(status -> {
+            TurnContext ctx = readContext(username, sessionId);
+            return ctx != null ? loader.apply(ctx) : null;
+        });
+        if (turn != null) {
+            return turn;
+        }
+        preparePlayer(username);
+        return readOnlyTemplate.execute(status -> loader.apply(readContext(username, sessionId)));
+    }
+
+    private TurnContext readContext(String username, String sessionId) {
+        PlayerContext player = player(username);
+        if (player == null) {
+            return null;
+        }
+        boolean usePool = llmPoolService.hasConfiguredApis();
+        LlmSetting setting = usePool ? null : llmSettingRepository.findAll().stream().findFirst().orElse(null);
+        return new TurnContext(player, sessionService.findActiveSession(player.user(), sessionId), sessionId,
+                usePool, setting);
+    }
+
+    private PlayerContext player(String username) {
+        return contextCache.get(username, () -> readOnlyTemplate.execute(status -> loadPlayer(username)));
+    }
+
+    private PlayerContext loadPlayer(String username) {
+        AppUser user = userRepository.findByUsername(username).orElse(null);
+        if (user == null) {
+            return null;
+        }
+        GameState state = stateRepository.findByUser(user).orElse(null);
+        if (state == null) {
+            return null;
+        }
+        Set<Long> unlockedLocationIds = unlockRepository.findByUser(user).stream()
+                .map(unlock -> unlock.getLocation().getId())
+                .collect(Collectors.toUnmodifiableSet());
+        return new PlayerContext(user, state, List.copyOf(itemRepository.findByUser(user)),
+                List.copyOf(memoryRepository.findByUser(user)), unlockedLocationIds);
+    }
+
+    private <T> T commitTurn(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException ex) {
+                // Another turn for the same player committed first (state version or a first usage row);
+                // replay on top of what it wrote.
+                if (attempt >= MAX_COMMIT_ATTEMPTS) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private ChatSession commitSession(TurnContext ctx, LlmPoolService.LlmCallResult result) {
+        return sessionService.commitSession(ctx.user(), ctx.requestedSessionId(), ctx.session(),
+                result != null ? result.apiConfig() : null);
+    }
+
+    private ChatMessage userEntry(AppUser user, String content, Instant timestamp) {
+        return ChatMessage.builder()
+                .user(user)
+                .sender("user")
+                .content(content)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private String unavailableNotice(NoAvailableApiException ex) {
+        return ex instanceof ApiSaturatedException ? ex.getMessage() : "当前模型不可用，请稍后再试。";
+    }
+
+    private ChatResponse noticeReply(TurnContext ctx, ChatMessage userEntry, String content) {
+        ChatSession session = commitSession(ctx, null);
+        ChatMessage reply = ChatMessage.builder()
+                .user(ctx.user())
+                .sender("firefly")
+                .content(content)
+                .timestamp(Instant.now())
+                .build();
+        chatMessageWriter.append(userEntry != null ? List.of(userEntry, reply) : List.of(reply));
+        return new ChatResponse(
+                List.of(new com.samterminal.backend.dto.ChatMessageDto(
+                        String.valueOf(reply.getId()), reply.getSender(), reply.getNpcName(),
+                        reply.getContent(), reply.getNarration(), reply.getTimestamp().toString())),
+                null,
+                ctx.state().getRevision(),
+                ctx.state().getRevision(),
                 null,
                 session.getSessionId()
         );
     }
 
+    private AppUser preparePlayer(String username) {
+        PlayerInit init = ensurePlayer(username);
+        if (init.created()) {
+            // Unlock rows are written in their own transaction, so they have to wait until the new
+            // player is committed rather than holding a second pooled connection inside this one.
+            ensureDefaultUnlocks(init.user(), Set.of());
+        }
+        return init.user();
+    }
+
+    private GameState reloadState(GameState snapshot) {
+        return stateRepository.findById(snapshot.getId()).orElse(snapshot);
+    }
+
+    private record PlayerInit(AppUser user, boolean created) {}
+
+    private record TurnContext(PlayerContext player, ChatSession session, String requestedSessionId,
+                               boolean usePool, LlmSetting setting) {
+        AppUser user() {
+            return player.user();
+        }
+
+        GameState state() {
+            return player.state();
+        }
+    }
+
+    private record ChatCommit(ChatResponse response, List<Location> unlocks) {}
+
+    private record ChatTurn(TurnContext context, List<Memory> memories, String inventory,
+                            long estimatedInputTokens) {}
+
+    private record RecallTurn(TurnContext context, Memory memory, String prompt, long estimatedInputTokens) {}
+
     private void applyStatePatch(GameState state, Map<String, Object> patch) {
         if (patch.containsKey("location")) {
             state.setCurrentLocation((Location) patch.get("location"));
@@ -326,19 +519,24 @@ public class GameService {
     private record SimResult(List<TempMessage> messages, Map<String, Object> newState) {}
     private record TempMessage(String sender, String npcName, String content, String narration, Instant timestamp) {}
 
-    private LlmPoolService.LlmCallResult generateLlmReply(GameState state, AppUser user, String userMessage, ChatSession session) {
-        List<Memory> memories = memoryRepository.findByUser(user);
-        List<Memory> relevant = memoryRagService.queryRelevantMemories(memories, userMessage, 3);
+    private LlmPoolService.LlmCallResult generateLlmReply(ChatTurn turn, String userMessage, ChatStreamListener listener) {
+        List<Memory> relevant = memoryRagService.queryRelevantMemories(
+                turn.context().user().getId(), turn.memories(), userMessage, 3);
         String systemPrompt = buildSystemPrompt();
-        String userPrompt = buildUserPrompt(state, user, userMessage, relevant);
-        if (llmApiConfigRepository.count() > 0) {
-            return llmPoolService.callWithSession(session, systemPrompt, userPrompt);
-        }
-        LlmService.LlmReply reply = llmService.callLlm(
-                llmSettingRepository.findAll().stream().findFirst().orElse(null),
-                systemPrompt,
-                userPrompt
-        );
+        String userPrompt = buildUserPrompt(turn.context().state(), turn.inventory(), userMessage, relevant);
+        return callModel(turn.context(), systemPrompt, userPrompt, listener);
+    }
+
+    private LlmPoolService.LlmCallResult callModel(TurnContext ctx, String systemPrompt, String userPrompt,
+                                                   ChatStreamListener listener) {
+        if (ctx.usePool()) {
+            return listener != null
+                    ? llmPoolService.streamWithSession(ctx.session(), systemPrompt, userPrompt, listener)
+                    : llmPoolService.callWithSession(ctx.session(), systemPrompt, userPrompt);
+        }
+        LlmService.LlmReply reply = listener != null
+                ? llmService.streamLlm(ctx.setting(), systemPrompt, userPrompt, listener)
+                : llmService.callLlm(ctx.setting(), systemPrompt, userPrompt);
         return reply != null ? new LlmPoolService.LlmCallResult(reply, null) : null;
     }
 
@@ -366,14 +564,11 @@ public class GameService {
 """;
     }
 
-    private String buildUserPrompt(GameState state, AppUser user, String userMessage, List<Memory> memories) {
+    private String buildUserPrompt(GameState state, String inventoryList, String userMessage, List<Memory> memories) {
         String locationName = state.getCurrentLocation() != null ? state.getCurrentLocation().getName() : "未知地点";
         String aiDesc = state.getCurrentLocation() != null && state.getCurrentLocation().getAiDescription() != null
                 ? state.getCurrentLocation().getAiDescription()
                 : state.getLocationDynamicState();
-        String inventoryList = itemRepository.findByUser(user).stream()
-                .map(Item::getName)
-                .collect(Collectors.joining(", "));
         StringBuilder memorySection = new StringBuilder();
         for (Memory mem : memories) {
             memorySection.append("- [")
@@ -403,14 +598,14 @@ public class GameService {
                 userMessage);
     }
 
-    private SimResult simulateReply(String lowerContent, GameState currentState, AppUser user) {
+    private SimResult simulateReply(String lowerContent, GameState currentState, PlayerContext player, List<Location> unlocks) {
         List<TempMessage> messages = new ArrayList<>();
         Map<String, Object> patch = new HashMap<>();
 
         if (lowerContent.contains("travel_to:")) {
             String targetCode = lowerContent.split(":")[1];
             locationRepository.findByCode(targetCode).ifPresent(target -> {
-                if (!isLocationUnlocked(user, target)) {
+                if (!isLocationUnlocked(player, target)) {
                     messages.add(new TempMessage("firefly", null, "那里现在好像还去不了呢...", null, Instant.now()));
                     patch.put("fireflyEmotion", Emotion.thinking);
                 } else {
@@ -431,13 +626,13 @@ public class GameService {
                     patch.put("fireflyStatus", status);
                     patch.put("fireflyMoodDetails", mood);
                     patch.put("fireflyEmotion", target.getCode().equals("firefly-secret") ? Emotion.shy : Emotion.smile);
-                    ensureUnlocked(user, target);
+                    unlocks.add(target);
                     messages.add(new TempMessage("firefly", null, "好呀，我们去" + target.getName() + "吧！", "*流萤拉起你的手，向" + target.getName() + "跑去*", Instant.now()));
                 }
             });
         } else if (lowerContent.contains("筑梦边境")) {
             locationRepository.findByCode("dream-edge").ifPresent(target -> {
-                ensureUnlocked(user, target);
+                unlocks.add(target);
                 patch.put("location", target);
                 patch.put("fireflyEmotion", Emotion.thinking);
                 patch.put("locationDynamicState", "远处的建筑还在不断重组，空气中弥漫着不稳定的气息。");
@@ -461,9 +656,10 @@ public class GameService {
         return new SimResult(messages, patch);
     }
 
-    private IntentResult applyIntent(GameState state, AppUser user, LlmService.LlmReply reply) {
+    private IntentResult applyIntent(GameState state, PlayerContext player, LlmService.LlmReply reply, List<Location> unlocks) {
         Map<String, Object> patch = new HashMap<>();
         com.samterminal.backend.dto.StateUpdateDto stateUpdate = null;
+        Item changedItem = null;
         String intent = reply.intent() != null ? reply.intent().toLowerCase() : "chat";
         String overrideContent = null;
         String overrideNarration = null;
@@ -474,7 +670,7 @@ public class GameService {
         if ("travel".equals(intent) && reply.targetId() != null) {
             Location target = locationRepository.findByCode(reply.targetId()).orElse(null);
             if (target != null) {
-                if (!isLocationUnlocked(user, target)) {
+                if (!isLocationUnlocked(player, target)) {
                     overrideContent = "那里现在好像还去不了呢...";
                     patch.put("fireflyEmotion", Emotion.thinking);
                 } else {
@@ -482,14 +678,15 @@ public class GameService {
                     patch.put("locationDynamicState", target.getAiDescription() != null ? target.getAiDescription() : target.getDescription());
                     patch.put("fireflyStatus", "正在探索");
                     patch.put("fireflyMoodDetails", "对新的景色充满好奇。");
-                    ensureUnlocked(user, target);
+                    unlocks.add(target);
                 }
             }
         } else if ("gift".equals(intent) && reply.targetId() != null) {
-            Item item = findItemByTarget(user, reply.targetId());
+            Item item = findItemByTarget(player, reply.targetId());
             if (item != null && item.getQuantity() > 0) {
                 item.setQuantity(item.getQuantity() - 1);
                 itemRepository.save(item);
+                changedItem = item;
                 stateUpdate = new com.samterminal.backend.dto.StateUpdateDto(
                         null,
                         new com.samterminal.backend.dto.StateUpdateDto.FireflyUpdate(emotion.name(), state.getFireflyStatus()),
@@ -508,7 +705,7 @@ public class GameService {
             );
         }
 
-        return new IntentResult(patch, stateUpdate, overrideContent, overrideNarration);
+        return new IntentResult(patch, stateUpdate, changedItem, overrideContent, overrideNarration);
     }
 
     private Emotion parseEmotion(String emotion) {
@@ -522,28 +719,25 @@ public class GameService {
         }
     }
 
-    private Item findItemByTarget(AppUser user, String targetId) {
-        for (Item item : itemRepository.findByUser(user)) {
-            if (String.valueOf(item.getId()).equals(targetId)) {
-                return item;
-            }
-            if (item.getName() != null && item.getName().equalsIgnoreCase(targetId)) {
-                return item;
+    private Item findItemByTarget(PlayerContext player, String targetId) {
+        for (Item item : player.items()) {
+            if (String.valueOf(item.getId()).equals(targetId)
+                    || (item.getName() != null && item.getName().equalsIgnoreCase(targetId))) {
+                // The cached item is shared and read-only; modify a managed copy.
+                return itemRepository.findById(item.getId()).orElse(null);
             }
         }
         return null;
     }
 
-    private boolean isLocationUnlocked(AppUser user, Location location) {
-        if (location.isUnlocked()) {
-            return true;
-        }
-        return unlockRepository.findFirstByUserAndLocation(user, location).isPresent();
+    private boolean isLocationUnlocked(PlayerContext player, Location location) {
+        return location.isUnlocked() || player.unlockedLocationIds().contains(location.getId());
     }
 
-    private void ensureDefaultUnlocks(AppUser user) {
+    private void ensureDefaultUnlocks(AppUser user, Set<Long> alreadyUnlocked) {
         List<Location> unlockedLocations = locationRepository.findAll().stream()
                 .filter(Location::isUnlocked)
+                .filter(location -> !alreadyUnlocked.contains(location.getId()))
                 .toList();
         for (Location location : unlockedLocations) {
             ensureUnlocked(user, location);
@@ -555,14 +749,25 @@ public class GameService {
     }
 
     private long estimateMessagesTokens(List<TempMessage> messages) {
+        TokenCounter counter = tokenCounters.defaultCounter();
         long sum = 0;
         for (TempMessage msg : messages) {
-            sum += TokenEstimator.estimateTokens(msg.content());
+            sum += counter.countTokens(msg.content());
         }
         return sum;
     }
 
-    private GameStateDto toDto(GameState state, AppUser user) {
+    private TokenCounter counterFor(LlmPoolService.LlmCallResult result) {
+        return result != null && result.apiConfig() != null
+                ? tokenCounters.forModel(result.apiConfig().getModelName())
+                : tokenCounters.defaultCounter();
+    }
+
+    private GameStateDto toDto(GameState state, PlayerContext player) {
+        return toDto(state, player.user(), player.items(), player.memories());
+    }
+
+    private GameStateDto toDto(GameState state, AppUser user, List<Item> items, List<Memory> memories) {
         return new GameStateDto(
                 state.getCurrentLocation() != null ? state.getCurrentLocation().getCode() : null,
                 state.getCurrentLocation() != null ? state.getCurrentLocation().getName() : null,
@@ -571,14 +776,60 @@ public class GameService {
                 state.getFireflyStatus(),
                 state.getFireflyMoodDetails(),
                 state.getGameTime(),
-                itemRepository.findByUser(user).stream().map(i -> new ItemDto(i.getId(), i.getName(), i.getDescription(), i.getIcon(), i.getQuantity())).toList(),
-                memoryRepository.findByUser(user).stream().map(m -> new MemoryDto(m.getId(), m.getTitle(), m.getContent(), m.getDate() != null ? m.getDate().toString() : null, m.getTags() != null ? List.of(m.getTags().split(",")) : List.of())).toList(),
-                user.getUsername()
+                items.stream().map(GameService::toItemDto).toList(),
+                memories.stream().map(GameService::toMemoryDto).toList(),
+                user.getUsername(),
+                state.getRevision()
         );
     }
 
+    private static ItemDto toItemDto(Item i) {
+        return new ItemDto(i.getId(), i.getName(), i.getDescription(), i.getIcon(), i.getQuantity());
+    }
+
+    private static MemoryDto toMemoryDto(Memory m) {
+        return new MemoryDto(m.getId(), m.getTitle(), m.getContent(), m.getDate() != null ? m.getDate().toString() : null, m.getTags() != null ? List.of(m.getTags().split(",")) : List.of());
+    }
+
+    /** Fields of {@code after} that differ from {@code before}, plus its items; null when nothing changed. */
+    private StateDeltaDto diff(GameStateDto before, GameStateDto after) {
+        StateDeltaDto delta = new StateDeltaDto();
+        boolean changed = false;
+        if (!Objects.equals(before.getCurrentLocation(), after.getCurrentLocation())) {
+            delta.setCurrentLocation(after.getCurrentLocation());
+            delta.setCurrentLocationName(after.getCurrentLocationName());
+            changed = true;
+        }
+        if (!Objects.equals(before.getLocationDynamicState(), after.getLocationDynamicState())) {
+            delta.setLocationDynamicState(after.getLocationDynamicState());
+            changed = true;
+        }
+        if (!Objects.equals(before.getFireflyEmotion(), after.getFireflyEmotion())) {
+            delta.setFireflyEmotion(after.getFireflyEmotion());
+            changed = true;
+        }
+        if (!Objects.equals(before.getFireflyStatus(), after.getFireflyStatus())) {
+            delta.setFireflyStatus(after.getFireflyStatus());
+            changed = true;
+        }
+        if (!Objects.equals(before.getFireflyMoodDetails(), after.getFireflyMoodDetails())) {
+            delta.setFireflyMoodDetails(after.getFireflyMoodDetails());
+            changed = true;
+        }
+        if (!Objects.equals(before.getGameTime(), after.getGameTime())) {
+            delta.setGameTime(after.getGameTime());
+            changed = true;
+        }
+        if (!after.getItems().isEmpty()) {
+            delta.setItems(after.getItems());
+            changed = true;
+        }
+        return changed ? delta : null;
+    }
+
     private record IntentResult(Map<String, Object> statePatch,
                                 com.samterminal.backend.dto.StateUpdateDto stateUpdate,
+                                Item changedItem,
                                 String overrideContent,
                                 String overrideNarration) {}
 
@@ -0,0 +1,41 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.LlmApiConfig;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Invalidates {@link LlmApiRegistry} whenever an API config row is written through JPA,
+ * so admin edits, migrations and probes are visible to routing after commit.
+ */
+public class LlmApiConfigChangeListener {
+    private final ObjectProvider<LlmApiRegistry> registry;
+
+    public LlmApiConfigChangeListener(ObjectProvider<LlmApiRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(LlmApiConfig config) {
+        LlmApiRegistry target = registry.getIfAvailable();
+        if (target == null) {
+            return;
+        }
+        target.invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // A reload between flush and commit would still see the old row.
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    target.invalidate();
+                }
+            });
+        }
+    }
+}
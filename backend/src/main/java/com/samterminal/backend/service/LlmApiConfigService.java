@@ -18,13 +18,22 @@ import java.util.List;
 public class LlmApiConfigService {
     private final LlmApiConfigRepository apiRepository;
     private final ApiLoadTracker loadTracker;
+    private final ApiLatencyTracker latencyTracker;
+    private final ApiConcurrencyLimiter concurrencyLimiter;
+    private final LlmApiRegistry apiRegistry;
     private final LlmService llmService;
 
     public LlmApiConfigService(LlmApiConfigRepository apiRepository,
                                ApiLoadTracker loadTracker,
+                               ApiLatencyTracker latencyTracker,
+                               ApiConcurrencyLimiter concurrencyLimiter,
+                               LlmApiRegistry apiRegistry,
                                LlmService llmService) {
         this.apiRepository = apiRepository;
         this.loadTracker = loadTracker;
+        this.latencyTracker = latencyTracker;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.apiRegistry = apiRegistry;
         this.llmService = llmService;
     }
 
@@ -63,6 +72,7 @@ public class LlmApiConfigService {
                 .orElseThrow(() -> new IllegalArgumentException("API config not found"));
         config.setTokenUsed(0L);
         config.setFailureCount(0);
+        apiRegistry.discardPendingUsage(id);
         return toResponse(apiRepository.save(config));
     }
 
@@ -115,7 +125,7 @@ public class LlmApiConfigService {
                 config.getTemperature(),
                 config.getRole(),
                 config.getTokenLimit(),
-                config.getTokenUsed(),
+                (config.getTokenUsed() != null ? config.getTokenUsed() : 0L) + apiRegistry.pendingTokens(config.getId()),
                 config.getStatus(),
                 config.getFailureCount(),
                 config.getLastFailureAt(),
@@ -123,11 +133,20 @@ public class LlmApiConfigService {
                 config.getCircuitOpenedAt(),
                 config.getMaxLoad(),
                 loadTracker.currentLoad(config.getId()),
+                latencyTracker.inFlight(config.getId()),
+                latencyOrNull(config.getId()),
+                latencyTracker.errorRate(config.getId()),
+                concurrencyLimiter.currentLimit(config.getId()),
                 config.getCreatedAt(),
                 config.getUpdatedAt()
         );
     }
 
+    private Double latencyOrNull(Long apiId) {
+        double latency = latencyTracker.latencyMillis(apiId);
+        return Double.isNaN(latency) ? null : latency;
+    }
+
     private String maskApiKey(String apiKey) {
         if (!StringUtils.hasText(apiKey)) {
             return null;
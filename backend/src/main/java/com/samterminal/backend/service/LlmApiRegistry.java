@@ -0,0 +1,232 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.LlmApiConfig;
+import com.samterminal.backend.entity.LlmApiStatus;
+import com.samterminal.backend.repository.LlmApiConfigRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 内存中的 API 池路由状态。配置快照只在失效后重新加载；token 用量累加在内存计数器里，
+ * 由定时任务批量写回 llm_api_config，写回的量先计入快照中的已落库用量再从待写量中扣除，不需要重新加载快照。
+ * 状态变化（失败、熔断、恢复）仍然同步落库。
+ */
+@Component
+public class LlmApiRegistry implements DisposableBean {
+    private final LlmApiConfigRepository apiRepository;
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<Long, LongAdder> pendingTokens = new ConcurrentHashMap<>();
+    private final Map<Long, Instant> pendingSuccessAt = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(-1, Map.of());
+
+    public LlmApiRegistry(LlmApiConfigRepository apiRepository) {
+        this.apiRepository = apiRepository;
+    }
+
+    public List<LlmApiConfig> findAll() {
+        return current().states().values().stream()
+                .map(this::view)
+                .toList();
+    }
+
+    public LlmApiConfig find(Long id) {
+        if (id == null) {
+            return null;
+        }
+        ApiState state = current().states().get(id);
+        return state != null ? view(state) : null;
+    }
+
+    public boolean isEmpty() {
+        return current().states().isEmpty();
+    }
+
+    public long pendingTokens(Long id) {
+        LongAdder adder = id != null ? pendingTokens.get(id) : null;
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    public void discardPendingUsage(Long id) {
+        if (id == null) {
+            return;
+        }
+        pendingTokens.remove(id);
+        pendingSuccessAt.remove(id);
+    }
+
+    public void recordSuccess(Long id, long tokens) {
+        if (id == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        pendingTokens.computeIfAbsent(id, key -> new LongAdder()).add(tokens);
+        pendingSuccessAt.put(id, now);
+        ApiState state = current().states().get(id);
+        if (state == null || (state.failures.get() == 0 && state.status != LlmApiStatus.CIRCUIT_OPEN)) {
+            return;
+        }
+        // Only a success that closes a circuit or clears a failure streak needs to reach the database now.
+        state.failures.set(0);
+        if (state.status == LlmApiStatus.CIRCUIT_OPEN) {
+            state.status = LlmApiStatus.ACTIVE;
+            state.circuitOpenedAt = null;
+        }
+        apiRepository.recordSuccess(id, 0L, now, LlmApiStatus.CIRCUIT_OPEN, LlmApiStatus.ACTIVE);
+    }
+
+    public void recordFailure(Long id, int failureThreshold) {
+        ApiState state = id != null ? current().states().get(id) : null;
+        if (state == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        int failures = state.failures.incrementAndGet();
+        state.lastFailureAt = now;
+        if (failures >= failureThreshold && state.status != LlmApiStatus.CIRCUIT_OPEN) {
+            state.circuitOpenedAt = now;
+            state.status = LlmApiStatus.CIRCUIT_OPEN;
+        }
+        apiRepository.recordFailure(id, failures, now, state.status, state.circuitOpenedAt);
+    }
+
+    @Scheduled(fixedDelayString = "${app.llm.usage-flush-interval-millis:5000}")
+    public void flushUsage() {
+        // The shutdown flush must not overlap a scheduled one; both would add the same pending tokens.
+        flushLock.lock();
+        try {
+            for (Map.Entry<Long, LongAdder> entry : pendingTokens.entrySet()) {
+                flush(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            flushUsage();
+        } catch (RuntimeException ignored) {
+            // Shutdown flush is best effort; the datasource may already be gone.
+        }
+    }
+
+    private void flush(Long id, LongAdder pending) {
+        long delta = pending.sum();
+        Instant successAt = pendingSuccessAt.remove(id);
+        if (delta == 0 && successAt == null) {
+            return;
+        }
+        Instant written = successAt != null ? successAt : Instant.now();
+        // Held so a reload cannot read the row between the UPDATE and moving the delta into the snapshot.
+        reloadLock.lock();
+        try {
+            int updated = apiRepository.addTokenUsage(id, delta, written);
+            if (updated == 0) {
+                pendingTokens.remove(id);
+                return;
+            }
+            ApiState state = current().states().get(id);
+            if (state != null) {
+                // Added before the subtraction, so a concurrent view may briefly over-count but never under-counts.
+                state.tokenUsed.addAndGet(delta);
+                state.lastSuccessAt = written;
+            }
+            // Subtract instead of reset so increments that raced with the UPDATE stay pending.
+            pending.add(-delta);
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot loaded = snapshot;
+        if (loaded.generation() == generation.get()) {
+            return loaded;
+        }
+        // ReentrantLock rather than synchronized so a virtual thread reloading over JDBC does not pin its carrier.
+        reloadLock.lock();
+        try {
+            long target = generation.get();
+            loaded = snapshot;
+            if (loaded.generation() == target) {
+                return loaded;
+            }
+            Map<Long, ApiState> states = new LinkedHashMap<>();
+            for (LlmApiConfig config : apiRepository.findAll()) {
+                states.put(config.getId(), new ApiState(config));
+            }
+            loaded = new Snapshot(target, states);
+            snapshot = loaded;
+            return loaded;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private LlmApiConfig view(ApiState state) {
+        LlmApiConfig base = state.base;
+        Long id = base.getId();
+        Instant successAt = pendingSuccessAt.get(id);
+        return LlmApiConfig.builder()
+                .id(id)
+                .name(base.getName())
+                .baseUrl(base.getBaseUrl())
+                .apiKey(base.getApiKey())
+                .modelName(base.getModelName())
+                .temperature(base.getTemperature())
+                .role(base.getRole())
+                .tokenLimit(base.getTokenLimit())
+                .tokenUsed(state.tokenUsed.get() + pendingTokens(id))
+                .status(state.status)
+                .failureCount(state.failures.get())
+                .lastFailureAt(state.lastFailureAt)
+                .lastSuccessAt(successAt != null ? successAt : state.lastSuccessAt)
+                .circuitOpenedAt(state.circuitOpenedAt)
+                .maxLoad(base.getMaxLoad())
+                .version(base.getVersion())
+                .createdAt(base.getCreatedAt())
+                .updatedAt(base.getUpdatedAt())
+                .build();
+    }
+
+    private record Snapshot(long generation, Map<Long, ApiState> states) {}
+
+    private static final class ApiState {
+        private final LlmApiConfig base;
+        private final AtomicInteger failures;
+        // Persisted usage: the row's value at load time plus everything flushed since.
+        private final AtomicLong tokenUsed;
+        private volatile LlmApiStatus status;
+        private volatile Instant circuitOpenedAt;
+        private volatile Instant lastFailureAt;
+        private volatile Instant lastSuccessAt;
+
+        private ApiState(LlmApiConfig base) {
+            this.base = base;
+            this.failures = new AtomicInteger(base.getFailureCount() != null ? base.getFailureCount() : 0);
+            this.tokenUsed = new AtomicLong(base.getTokenUsed() != null ? base.getTokenUsed() : 0L);
+            this.status = base.getStatus();
+            this.circuitOpenedAt = base.getCircuitOpenedAt();
+            this.lastFailureAt = base.getLastFailureAt();
+            this.lastSuccessAt = base.getLastSuccessAt();
+        }
+    }
+}
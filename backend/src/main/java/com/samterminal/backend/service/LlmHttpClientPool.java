@@ -0,0 +1,246 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 出站 HTTP 连接池：每个 origin（scheme://host:port）一个共享的 {@link HttpClient}，
+ * 复用 keep-alive 连接，https 上通过 ALPN 协商 HTTP/2，并按主机限制并发交换数。
+ */
+@Component
+public class LlmHttpClientPool implements ClientHttpRequestFactory, DisposableBean {
+    private final AppProperties.LlmSettings settings;
+    private final AppProperties.Http http;
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    public LlmHttpClientPool(AppProperties appProperties) {
+        this.settings = appProperties.getLlm();
+        this.http = settings.getHttp();
+        this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "llm-http-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        HostPool pool = pools.computeIfAbsent(originOf(uri), this::newPool);
+        return new PooledRequest(pool, pool.factory.createRequest(uri, httpMethod));
+    }
+
+    public List<HostStats> stats() {
+        return pools.values().stream()
+                .map(HostPool::snapshot)
+                .sorted(Comparator.comparing(HostStats::origin))
+                .toList();
+    }
+
+    @Override
+    public void destroy() {
+        pools.values().forEach(pool -> pool.client.close());
+        pools.clear();
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private HostPool newPool(String origin) {
+        boolean http2 = http.isHttp2Enabled() && origin.startsWith("https:");
+        HttpClient client = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(http.getConnectTimeoutSeconds()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client, executor);
+        // Only bounds the wait for response headers; body reads are bounded by the exchange watchdog.
+        factory.setReadTimeout(Duration.ofSeconds(settings.getRequestTimeoutSeconds()));
+        return new HostPool(origin, http2 ? "h2" : "http/1.1", client, factory, http.getMaxConnectionsPerHost());
+    }
+
+    private static String originOf(URI uri) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "http";
+        int port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80);
+        return scheme + "://" + uri.getHost() + ":" + port;
+    }
+
+    private static final class HostPool {
+        private final String origin;
+        private final String protocol;
+        private final HttpClient client;
+        private final JdkClientHttpRequestFactory factory;
+        private final int maxConnections;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicLong totalRequests = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        private HostPool(String origin, String protocol, HttpClient client, JdkClientHttpRequestFactory factory,
+                         int maxConnections) {
+            this.origin = origin;
+            this.protocol = protocol;
+            this.client = client;
+            this.factory = factory;
+            this.maxConnections = maxConnections;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+
+        private void acquire(long timeoutMillis) throws IOException {
+            waiting.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a connection to " + origin, ex);
+            } finally {
+                waiting.decrementAndGet();
+            }
+            if (!acquired) {
+                rejected.incrementAndGet();
+                throw new IOException("Connection pool for " + origin + " is saturated");
+            }
+            totalRequests.incrementAndGet();
+            peakInFlight.accumulateAndGet(inFlight(), Math::max);
+        }
+
+        private int inFlight() {
+            return maxConnections - permits.availablePermits();
+        }
+
+        private HostStats snapshot() {
+            return new HostStats(origin, protocol, maxConnections, inFlight(), waiting.get(), peakInFlight.get(),
+                    totalRequests.get(), rejected.get());
+        }
+    }
+
+    private final class PooledRequest implements ClientHttpRequest {
+        private final HostPool pool;
+        private final ClientHttpRequest delegate;
+
+        private PooledRequest(HostPool pool, ClientHttpRequest delegate) {
+            this.pool = pool;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            pool.acquire(http.getAcquireTimeoutMillis());
+            ClientHttpResponse response;
+            try {
+                response = delegate.execute();
+            } catch (IOException | RuntimeException ex) {
+                pool.permits.release();
+                throw ex;
+            }
+            return new PooledResponse(pool, response, settings.getStreamTimeoutSeconds());
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return delegate.getAttributes();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+    }
+
+    private final class PooledResponse implements ClientHttpResponse {
+        private final HostPool pool;
+        private final ClientHttpResponse delegate;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private final ScheduledFuture<?> deadline;
+
+        private PooledResponse(HostPool pool, ClientHttpResponse delegate, int maxExchangeSeconds) {
+            this.pool = pool;
+            this.delegate = delegate;
+            // A stalled body would otherwise pin the permit forever; closing the response unblocks the reader.
+            this.deadline = watchdog.schedule(this::close, maxExchangeSeconds, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return delegate.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            deadline.cancel(false);
+            try {
+                delegate.close();
+            } finally {
+                pool.permits.release();
+            }
+        }
+    }
+
+    public record HostStats(String origin, String protocol, int maxConnections, int inFlight, int waiting,
+                            int peakInFlight, long totalRequests, long rejected) {}
+}
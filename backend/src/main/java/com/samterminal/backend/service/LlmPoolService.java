@@ -2,40 +2,70 @@ package com.samterminal.backend.service;
 
 import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.entity.*;
-import com.samterminal.backend.repository.ChatSessionRepository;
 import com.samterminal.backend.repository.LlmApiConfigRepository;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 @Service
-public class LlmPoolService {
+public class LlmPoolService implements DisposableBean {
+    private static final long QUEUE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
     private final LlmApiConfigRepository apiRepository;
-    private final ChatSessionRepository sessionRepository;
     private final LlmService llmService;
     private final ApiLoadTracker loadTracker;
+    private final ApiLatencyTracker latencyTracker;
+    private final ApiConcurrencyLimiter concurrencyLimiter;
+    private final LlmApiRegistry apiRegistry;
     private final AppProperties appProperties;
+    private final TokenCounterRegistry tokenCounters;
+    private final HedgeBudget hedgeBudget = new HedgeBudget();
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     public LlmPoolService(LlmApiConfigRepository apiRepository,
-                          ChatSessionRepository sessionRepository,
                           LlmService llmService,
                           ApiLoadTracker loadTracker,
-                          AppProperties appProperties) {
+                          ApiLatencyTracker latencyTracker,
+                          ApiConcurrencyLimiter concurrencyLimiter,
+                          LlmApiRegistry apiRegistry,
+                          AppProperties appProperties,
+                          TokenCounterRegistry tokenCounters) {
         this.apiRepository = apiRepository;
-        this.sessionRepository = sessionRepository;
         this.llmService = llmService;
         this.loadTracker = loadTracker;
+        this.latencyTracker = latencyTracker;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.apiRegistry = apiRegistry;
         this.appProperties = appProperties;
+        this.tokenCounters = tokenCounters;
     }
 
     public record LlmCallResult(LlmService.LlmReply reply, LlmApiConfig apiConfig) {}
 
+    public boolean hasConfiguredApis() {
+        return !apiRegistry.isEmpty();
+    }
+
     public LlmApiConfig selectApiForNewSession() {
         return selectApi(null);
     }
@@ -44,7 +74,11 @@ public class LlmPoolService {
         if (session == null) {
             return selectApiForNewSession();
         }
-        LlmApiConfig bound = session.getActiveApi();
+        // The session is usually detached by the time the model is called, so look the bound API up
+        // by id instead of touching the lazy association.
+        LlmApiConfig bound = session.getActiveApi() != null
+                ? apiRegistry.find(session.getActiveApi().getId())
+                : null;
         if (bound != null && isApiAvailable(bound)) {
             return bound;
         }
@@ -52,82 +86,163 @@ public class LlmPoolService {
     }
 
     public LlmCallResult callWithSession(ChatSession session, String systemPrompt, String userPrompt) {
-        LlmApiConfig primary = resolveSessionApi(session);
-        if (primary == null) {
-            throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
+        Function<LlmApiConfig, LlmService.LlmReply> invoker = api -> llmService.callLlm(api, systemPrompt, userPrompt);
+        if (appProperties.getLlm().getHedging().isEnabled()) {
+            return hedgedCallWithSession(session, systemPrompt, userPrompt, invoker);
         }
-        LlmCallResult result = attemptCall(primary, systemPrompt, userPrompt);
+        return callWithSession(session, systemPrompt, userPrompt, invoker, () -> true);
+    }
+
+    public LlmCallResult streamWithSession(ChatSession session, String systemPrompt, String userPrompt,
+                                           ChatStreamListener listener) {
+        AtomicBoolean emitted = new AtomicBoolean(false);
+        ChatStreamListener tracking = (field, text) -> {
+            emitted.set(true);
+            listener.onDelta(field, text);
+        };
+        // Once text has reached the client, switching to another API would splice two different replies.
+        return callWithSession(session, systemPrompt, userPrompt,
+                api -> llmService.streamLlm(api, systemPrompt, userPrompt, tracking), () -> !emitted.get());
+    }
+
+    private LlmCallResult callWithSession(ChatSession session, String systemPrompt, String userPrompt,
+                                          Function<LlmApiConfig, LlmService.LlmReply> invoker,
+                                          BooleanSupplier fallbackAllowed) {
+        return callFrom(acquireSessionApi(session), systemPrompt, userPrompt, invoker, fallbackAllowed);
+    }
+
+    private LlmCallResult callFrom(LlmApiConfig primary, String systemPrompt, String userPrompt,
+                                   Function<LlmApiConfig, LlmService.LlmReply> invoker,
+                                   BooleanSupplier fallbackAllowed) {
+        LlmCallResult result = attemptCall(primary, systemPrompt, userPrompt, invoker);
         if (result != null) {
-            updateSession(session, primary);
             return result;
         }
         markFailure(primary);
-        LlmApiConfig fallback = selectApi(primary.getId());
+        if (!fallbackAllowed.getAsBoolean()) {
+            throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
+        }
+        return callFallback(primary, systemPrompt, userPrompt, invoker);
+    }
+
+    private LlmCallResult callFallback(LlmApiConfig primary, String systemPrompt, String userPrompt,
+                                       Function<LlmApiConfig, LlmService.LlmReply> invoker) {
+        LlmApiConfig fallback = acquireAlternative(primary.getId());
         if (fallback == null) {
             throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
         }
-        LlmCallResult retry = attemptCall(fallback, systemPrompt, userPrompt);
+        LlmCallResult retry = attemptCall(fallback, systemPrompt, userPrompt, invoker);
         if (retry != null) {
-            updateSession(session, fallback);
             return retry;
         }
         markFailure(fallback);
         throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
     }
 
-    @Transactional
-    public void markFailure(LlmApiConfig config) {
-        if (config == null) {
-            return;
-        }
-        LlmApiConfig managed = apiRepository.findById(config.getId()).orElse(null);
-        if (managed == null) {
-            return;
+    private LlmCallResult hedgedCallWithSession(ChatSession session, String systemPrompt, String userPrompt,
+                                                Function<LlmApiConfig, LlmService.LlmReply> invoker) {
+        LlmApiConfig primary = acquireSessionApi(session);
+        long hedgeDelay = hedgeDelayMillis(primary);
+        if (hedgeDelay < 0) {
+            // Not enough history to know what "late" means for this API yet.
+            return callFrom(primary, systemPrompt, userPrompt, invoker, () -> true);
+        }
+        hedgeBudget.deposit(appProperties.getLlm().getHedging().getMaxHedgeRatio());
+        CompletionService<Attempt> attempts = new ExecutorCompletionService<>(hedgeExecutor);
+        List<HedgeAttempt> running = new ArrayList<>();
+        running.add(new HedgeAttempt(primary, invoker).submitTo(attempts));
+        LlmApiConfig hedge = null;
+        try {
+            Future<Attempt> done = attempts.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                hedge = hedgeBudget.tryWithdraw() ? acquireAlternative(primary.getId()) : null;
+                if (hedge != null) {
+                    running.add(new HedgeAttempt(hedge, invoker).submitTo(attempts));
+                }
+                done = attempts.take();
+            }
+            for (int remaining = running.size(); remaining > 0; remaining--) {
+                Attempt attempt = done.get();
+                if (attempt.reply() != null) {
+                    return recordSuccess(attempt.api(), attempt.reply(), systemPrompt, userPrompt);
+                }
+                markFailure(attempt.api());
+                if (remaining > 1) {
+                    done = attempts.take();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
+        } catch (ExecutionException ex) {
+            throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
+        } finally {
+            // First good reply wins; interrupting the loser aborts its HTTP exchange.
+            running.forEach(HedgeAttempt::cancel);
         }
-        int failures = managed.getFailureCount() != null ? managed.getFailureCount() + 1 : 1;
-        managed.setFailureCount(failures);
-        managed.setLastFailureAt(Instant.now());
-        if (failures >= appProperties.getLlm().getCircuitBreaker().getFailureThreshold()) {
-            managed.setStatus(LlmApiStatus.CIRCUIT_OPEN);
-            managed.setCircuitOpenedAt(Instant.now());
+        if (hedge != null) {
+            throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
         }
-        apiRepository.save(managed);
+        return callFallback(primary, systemPrompt, userPrompt, invoker);
     }
 
-    @Transactional
-    public void markSuccess(LlmApiConfig config, long tokensUsed) {
-        if (config == null) {
-            return;
-        }
-        LlmApiConfig managed = apiRepository.findById(config.getId()).orElse(null);
-        if (managed == null) {
-            return;
+    private LlmApiConfig acquireSessionApi(ChatSession session) {
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(appProperties.getLlm().getLimiter().getQueueTimeoutMillis());
+        while (true) {
+            LlmApiConfig api = resolveSessionApi(session);
+            if (api != null && concurrencyLimiter.tryAcquire(api.getId())) {
+                return api;
+            }
+            if (api == null && !isHeldBackByLimiter()) {
+                throw new NoAvailableApiException("暂无可用模型，请稍后再试。");
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new ApiSaturatedException("当前对话人数较多，请稍后再试。");
+            }
+            try {
+                // Wait in short slices so a release that lands just before we park is not missed for long.
+                concurrencyLimiter.awaitRelease(Math.min(remaining, QUEUE_POLL_NANOS));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ApiSaturatedException("当前对话人数较多，请稍后再试。");
+            }
         }
-        long current = managed.getTokenUsed() != null ? managed.getTokenUsed() : 0L;
-        managed.setTokenUsed(current + tokensUsed);
-        managed.setFailureCount(0);
-        managed.setLastSuccessAt(Instant.now());
-        if (managed.getStatus() == LlmApiStatus.CIRCUIT_OPEN) {
-            managed.setStatus(LlmApiStatus.ACTIVE);
-            managed.setCircuitOpenedAt(null);
+    }
+
+    private LlmApiConfig acquireAlternative(Long excludeId) {
+        LlmApiConfig api = selectApi(excludeId);
+        return api != null && concurrencyLimiter.tryAcquire(api.getId()) ? api : null;
+    }
+
+    private boolean isHeldBackByLimiter() {
+        return concurrencyLimiter.isEnabled() && apiRegistry.findAll().stream()
+                .anyMatch(api -> api.getStatus() != LlmApiStatus.CIRCUIT_OPEN && api.getStatus() != LlmApiStatus.DISABLED
+                        && !isTokenExhausted(api) && !concurrencyLimiter.hasCapacity(api.getId()));
+    }
+
+    private long hedgeDelayMillis(LlmApiConfig api) {
+        AppProperties.Hedging hedging = appProperties.getLlm().getHedging();
+        double latency = latencyTracker.latencyPercentile(api.getId(), hedging.getPercentile(), hedging.getMinSamples());
+        if (Double.isNaN(latency)) {
+            return -1;
         }
-        apiRepository.save(managed);
+        return Math.max(hedging.getMinDelayMillis(), Math.round(latency));
     }
 
-    @Transactional
-    public void updateSession(ChatSession session, LlmApiConfig config) {
-        if (session == null) {
+    public void markFailure(LlmApiConfig config) {
+        if (config == null) {
             return;
         }
-        ChatSession managed = sessionRepository.findById(session.getId()).orElse(null);
-        if (managed == null) {
+        apiRegistry.recordFailure(config.getId(), appProperties.getLlm().getCircuitBreaker().getFailureThreshold());
+    }
+
+    public void markSuccess(LlmApiConfig config, long tokensUsed) {
+        if (config == null) {
             return;
         }
-        if (config != null && (managed.getActiveApi() == null || !Objects.equals(managed.getActiveApi().getId(), config.getId()))) {
-            managed.setActiveApi(config);
-        }
-        managed.setLastActiveAt(Instant.now());
-        sessionRepository.save(managed);
+        apiRegistry.recordSuccess(config.getId(), tokensUsed);
     }
 
     public int currentLoad(Long apiId) {
@@ -169,20 +284,51 @@ public class LlmPoolService {
         apiRepository.save(managed);
     }
 
-    private LlmCallResult attemptCall(LlmApiConfig api, String systemPrompt, String userPrompt) {
+    private LlmCallResult attemptCall(LlmApiConfig api, String systemPrompt, String userPrompt,
+                                      Function<LlmApiConfig, LlmService.LlmReply> invoker) {
+        LlmService.LlmReply reply = invokeTracked(api, invoker);
+        return reply != null ? recordSuccess(api, reply, systemPrompt, userPrompt) : null;
+    }
+
+    private LlmService.LlmReply invokeTracked(LlmApiConfig api, Function<LlmApiConfig, LlmService.LlmReply> invoker) {
         loadTracker.recordCall(api.getId());
-        LlmService.LlmReply reply = llmService.callLlm(api, systemPrompt, userPrompt);
-        if (reply == null) {
+        long startedAt = latencyTracker.begin(api.getId());
+        LlmService.LlmReply reply = null;
+        boolean completed = false;
+        try {
+            reply = invoker.apply(api);
+            completed = !Thread.currentThread().isInterrupted();
+        } finally {
+            if (completed) {
+                latencyTracker.end(api.getId(), startedAt, reply != null);
+                concurrencyLimiter.release(api.getId(), (System.nanoTime() - startedAt) / 1_000_000.0, reply != null);
+            } else {
+                latencyTracker.abandon(api.getId());
+                concurrencyLimiter.abandon(api.getId());
+            }
+        }
+        return reply;
+    }
+
+    private LlmService.LlmReply invokeQuietly(LlmApiConfig api, Function<LlmApiConfig, LlmService.LlmReply> invoker) {
+        try {
+            return invokeTracked(api, invoker);
+        } catch (RuntimeException ex) {
             return null;
         }
-        long inputTokens = reply.inputTokens() > 0 ? reply.inputTokens() : TokenEstimator.estimateTokens(systemPrompt) + TokenEstimator.estimateTokens(userPrompt);
-        long outputTokens = reply.outputTokens() > 0 ? reply.outputTokens() : TokenEstimator.estimateTokens(reply.content());
+    }
+
+    private LlmCallResult recordSuccess(LlmApiConfig api, LlmService.LlmReply reply, String systemPrompt,
+                                        String userPrompt) {
+        TokenCounter counter = tokenCounters.forModel(api.getModelName());
+        long inputTokens = reply.inputTokens() > 0 ? reply.inputTokens() : counter.countTokens(systemPrompt) + counter.countTokens(userPrompt);
+        long outputTokens = reply.outputTokens() > 0 ? reply.outputTokens() : counter.countTokens(reply.content());
         markSuccess(api, inputTokens + outputTokens);
         return new LlmCallResult(reply, api);
     }
 
     private LlmApiConfig selectApi(Long excludeId) {
-        List<LlmApiConfig> all = apiRepository.findAll();
+        List<LlmApiConfig> all = apiRegistry.findAll();
         if (all.isEmpty()) {
             return null;
         }
@@ -219,11 +365,109 @@ public class LlmPoolService {
         return pickBest(available);
     }
 
+    @Override
+    public void destroy() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    private record Attempt(LlmApiConfig api, LlmService.LlmReply reply) {}
+
+    /**
+     * One side of a hedged call. The caller already holds a limiter permit for {@code api}; whichever of the task and
+     * {@link #cancel} claims the attempt first owns that permit, so an attempt cancelled before it starts still returns it.
+     */
+    private final class HedgeAttempt implements Callable<Attempt> {
+        private final LlmApiConfig api;
+        private final Function<LlmApiConfig, LlmService.LlmReply> invoker;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Future<Attempt> future;
+
+        private HedgeAttempt(LlmApiConfig api, Function<LlmApiConfig, LlmService.LlmReply> invoker) {
+            this.api = api;
+            this.invoker = invoker;
+        }
+
+        private HedgeAttempt submitTo(CompletionService<Attempt> attempts) {
+            future = attempts.submit(this);
+            return this;
+        }
+
+        @Override
+        public Attempt call() {
+            return new Attempt(api, claimed.compareAndSet(false, true) ? invokeQuietly(api, invoker) : null);
+        }
+
+        private void cancel() {
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                concurrencyLimiter.abandon(api.getId());
+            }
+        }
+    }
+
+    private static final class HedgeBudget {
+        private static final double MAX_CREDITS = 10;
+        private double credits = MAX_CREDITS;
+
+        private synchronized void deposit(double ratio) {
+            credits = Math.min(MAX_CREDITS, credits + ratio);
+        }
+
+        private synchronized boolean tryWithdraw() {
+            if (credits < 1) {
+                return false;
+            }
+            credits -= 1;
+            return true;
+        }
+    }
+
     private LlmApiConfig pickBest(List<LlmApiConfig> candidates) {
+        return switch (appProperties.getLlm().getRouting().getStrategy()) {
+            case LEAST_OUTSTANDING -> candidates.stream()
+                    .min(Comparator.comparingInt((LlmApiConfig api) -> latencyTracker.inFlight(api.getId()))
+                            .thenComparingDouble(api -> expectedLatency(api, candidates)))
+                    .orElse(null);
+            case POWER_OF_TWO_CHOICES -> pickOfTwo(candidates);
+            default -> candidates.stream()
+                    .max(Comparator.comparingInt(this::availableCapacity)
+                            .thenComparingLong(this::remainingTokens))
+                    .orElse(null);
+        };
+    }
+
+    private LlmApiConfig pickOfTwo(List<LlmApiConfig> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.getFirst();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        LlmApiConfig a = candidates.get(first);
+        LlmApiConfig b = candidates.get(second);
+        return routingCost(a, candidates) <= routingCost(b, candidates) ? a : b;
+    }
+
+    private double routingCost(LlmApiConfig api, List<LlmApiConfig> candidates) {
+        // Expected wait if queued behind this API's outstanding requests, inflated by how often it fails.
+        double successRate = Math.max(0.05, 1.0 - latencyTracker.errorRate(api.getId()));
+        return (latencyTracker.inFlight(api.getId()) + 1) * expectedLatency(api, candidates) / successRate;
+    }
+
+    private double expectedLatency(LlmApiConfig api, List<LlmApiConfig> candidates) {
+        double latency = latencyTracker.latencyMillis(api.getId());
+        if (!Double.isNaN(latency)) {
+            return latency;
+        }
+        // No sample yet: assume the pool average so a new API gets a fair share rather than all or nothing.
         return candidates.stream()
-                .max(Comparator.comparingInt(this::availableCapacity)
-                        .thenComparingLong(this::remainingTokens))
-                .orElse(null);
+                .mapToDouble(candidate -> latencyTracker.latencyMillis(candidate.getId()))
+                .filter(value -> !Double.isNaN(value))
+                .average()
+                .orElse(1.0);
     }
 
     private boolean isApiAvailable(LlmApiConfig api) {
@@ -236,6 +480,9 @@ public class LlmPoolService {
         if (isTokenExhausted(api)) {
             return false;
         }
+        if (!concurrencyLimiter.hasCapacity(api.getId())) {
+            return false;
+        }
         Integer maxLoad = api.getMaxLoad();
         if (maxLoad != null && maxLoad > 0) {
             return loadTracker.currentLoad(api.getId()) < maxLoad;
@@ -6,10 +6,16 @@ import com.samterminal.backend.entity.LlmApiConfig;
 import com.samterminal.backend.entity.LlmSetting;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,13 +34,14 @@ public class LlmService {
         if (setting == null) {
             return null;
         }
-        LlmApiConfig config = LlmApiConfig.builder()
-                .baseUrl(setting.getBaseUrl())
-                .apiKey(setting.getApiKey())
-                .modelName(setting.getModelName())
-                .temperature(setting.getTemperature())
-                .build();
-        return callLlm(config, systemPrompt, userPrompt);
+        return callLlm(toApiConfig(setting), systemPrompt, userPrompt);
+    }
+
+    public LlmReply streamLlm(LlmSetting setting, String systemPrompt, String userPrompt, ChatStreamListener listener) {
+        if (setting == null) {
+            return null;
+        }
+        return streamLlm(toApiConfig(setting), systemPrompt, userPrompt, listener);
     }
 
     public LlmReply callLlm(LlmApiConfig config, String systemPrompt, String userPrompt) {
@@ -43,13 +50,7 @@ public class LlmService {
         }
         try {
             String url = buildCompletionUrl(config.getBaseUrl());
-            Map<String, Object> body = new HashMap<>();
-            body.put("model", config.getModelName());
-            body.put("temperature", config.getTemperature() != null ? config.getTemperature() : 0.7);
-            body.put("messages", List.of(
-                    Map.of("role", "system", "content", systemPrompt),
-                    Map.of("role", "user", "content", userPrompt)
-            ));
+            Map<String, Object> body = buildChatBody(config, systemPrompt, userPrompt);
             HttpHeaders headers = buildHeaders(config.getApiKey());
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
             String response = restTemplate.postForObject(url, entity, String.class);
@@ -62,6 +63,27 @@ public class LlmService {
         }
     }
 
+    public LlmReply streamLlm(LlmApiConfig config, String systemPrompt, String userPrompt, ChatStreamListener listener) {
+        if (config == null || config.getBaseUrl() == null || config.getModelName() == null) {
+            return null;
+        }
+        try {
+            String url = buildCompletionUrl(config.getBaseUrl());
+            Map<String, Object> body = buildChatBody(config, systemPrompt, userPrompt);
+            body.put("stream", true);
+            HttpHeaders headers = buildHeaders(config.getApiKey());
+            headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM, MediaType.APPLICATION_JSON));
+            return restTemplate.execute(url, HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().putAll(headers);
+                        objectMapper.writeValue(request.getBody(), body);
+                    },
+                    response -> readStream(response.getBody(), listener));
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
     public boolean testConnection(LlmApiConfig config) {
         if (config == null || config.getBaseUrl() == null || config.getModelName() == null) {
             return false;
@@ -84,14 +106,79 @@ public class LlmService {
         }
     }
 
-    private LlmReply parseReply(String response) throws Exception {
+    private LlmReply readStream(InputStream body, ChatStreamListener listener) throws IOException {
+        StreamingReplyParser parser = new StreamingReplyParser(listener);
+        StringBuilder content = new StringBuilder();
+        StringBuilder plainBody = new StringBuilder();
+        long inputTokens = 0;
+        long outputTokens = 0;
+        boolean sawEvents = false;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith("data:")) {
+                if (!sawEvents) {
+                    plainBody.append(line).append('\n');
+                }
+                continue;
+            }
+            sawEvents = true;
+            String payload = line.substring(5).trim();
+            if (payload.isEmpty()) {
+                continue;
+            }
+            if ("[DONE]".equals(payload)) {
+                break;
+            }
+            JsonNode chunk = objectMapper.readTree(payload);
+            JsonNode choices = chunk.path("choices");
+            if (choices.isArray() && choices.size() > 0) {
+                String delta = choices.get(0).path("delta").path("content").asText("");
+                if (!delta.isEmpty()) {
+                    content.append(delta);
+                    parser.accept(delta);
+                }
+            }
+            JsonNode usage = chunk.path("usage");
+            if (usage.isObject()) {
+                inputTokens = usage.path("prompt_tokens").asLong(inputTokens);
+                outputTokens = usage.path("completion_tokens").asLong(outputTokens);
+            }
+        }
+        try {
+            if (!sawEvents) {
+                // Provider ignored "stream": true and answered with a regular completion body.
+                JsonNode root = objectMapper.readTree(plainBody.toString());
+                String text = messageContent(root);
+                if (text != null) {
+                    parser.accept(text);
+                }
+                return buildReply(text,
+                        root.path("usage").path("prompt_tokens").asLong(0),
+                        root.path("usage").path("completion_tokens").asLong(0));
+            }
+            return buildReply(content.toString(), inputTokens, outputTokens);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    LlmReply parseReply(String response) throws Exception {
         JsonNode root = objectMapper.readTree(response);
+        String content = messageContent(root);
+        long inputTokens = root.path("usage").path("prompt_tokens").asLong(0);
+        long outputTokens = root.path("usage").path("completion_tokens").asLong(0);
+        return buildReply(content, inputTokens, outputTokens);
+    }
+
+    private String messageContent(JsonNode root) {
         JsonNode choice = root.path("choices").isArray() && root.path("choices").size() > 0
                 ? root.path("choices").get(0)
                 : null;
-        String content = choice != null ? choice.path("message").path("content").asText() : null;
-        long inputTokens = root.path("usage").path("prompt_tokens").asLong(0);
-        long outputTokens = root.path("usage").path("completion_tokens").asLong(0);
+        return choice != null ? choice.path("message").path("content").asText() : null;
+    }
+
+    private LlmReply buildReply(String content, long inputTokens, long outputTokens) throws Exception {
         if (content == null || content.isBlank()) {
             return null;
         }
@@ -108,7 +195,7 @@ public class LlmService {
         );
     }
 
-    private String extractJson(String content) {
+    String extractJson(String content) {
         if (content == null) {
             return "{}";
         }
@@ -131,6 +218,26 @@ public class LlmService {
         return "{}";
     }
 
+    private LlmApiConfig toApiConfig(LlmSetting setting) {
+        return LlmApiConfig.builder()
+                .baseUrl(setting.getBaseUrl())
+                .apiKey(setting.getApiKey())
+                .modelName(setting.getModelName())
+                .temperature(setting.getTemperature())
+                .build();
+    }
+
+    private Map<String, Object> buildChatBody(LlmApiConfig config, String systemPrompt, String userPrompt) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", config.getModelName());
+        body.put("temperature", config.getTemperature() != null ? config.getTemperature() : 0.7);
+        body.put("messages", List.of(
+                Map.of("role", "system", "content", systemPrompt),
+                Map.of("role", "user", "content", userPrompt)
+        ));
+        return body;
+    }
+
     private String normalizeBaseUrl(String baseUrl) {
         if (baseUrl.endsWith("/")) {
             return baseUrl.substring(0, baseUrl.length() - 1);
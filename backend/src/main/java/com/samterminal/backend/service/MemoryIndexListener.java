@@ -0,0 +1,67 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.Memory;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Queues a memory for (re)indexing or removal whenever its row is written through JPA, and applies the
+ * change to the in-memory keyword index directly.
+ * Both happen after commit so neither index ever sees a row that is about to be rolled back.
+ */
+public class MemoryIndexListener {
+    private final ObjectProvider<MemoryIndexService> indexService;
+    private final ObjectProvider<MemoryLexicalIndex> lexicalIndex;
+
+    public MemoryIndexListener(ObjectProvider<MemoryIndexService> indexService,
+                               ObjectProvider<MemoryLexicalIndex> lexicalIndex) {
+        this.indexService = indexService;
+        this.lexicalIndex = lexicalIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Memory memory) {
+        MemoryIndexService target = indexService.getIfAvailable();
+        MemoryLexicalIndex lexical = lexicalIndex.getIfAvailable();
+        afterCommit(() -> {
+            if (target != null) {
+                target.enqueue(memory.getId());
+            }
+            if (lexical != null) {
+                lexical.put(memory);
+            }
+        });
+    }
+
+    @PostRemove
+    public void onRemove(Memory memory) {
+        MemoryIndexService target = indexService.getIfAvailable();
+        MemoryLexicalIndex lexical = lexicalIndex.getIfAvailable();
+        afterCommit(() -> {
+            if (target != null) {
+                target.enqueueRemoval(memory.getId());
+            }
+            if (lexical != null) {
+                lexical.remove(memory);
+            }
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
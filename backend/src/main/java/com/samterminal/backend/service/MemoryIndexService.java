@@ -0,0 +1,197 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.Memory;
+import com.samterminal.backend.repository.MemoryRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 记忆向量索引的写入端：记忆新增/修改后由 {@link MemoryIndexListener} 入队，定时任务批量向量化并写入检索后端，
+ * 并把写入内容的哈希记在 memory.indexed_hash 上，内容未变的记忆不会重复写入。
+ * 启动后与清空哈希（索引重建）后按批补齐尚未建立索引的历史记忆，补齐完成的一轮之后不再扫描表。整轮只持久化一次检索后端（进程内索引即重写一次文件），
+ * 之后用一条批量 UPDATE 记下本轮写入的哈希；本轮失败时已写入的记忆重新入队。
+ */
+@Service
+public class MemoryIndexService {
+    private final MemoryRepository memoryRepository;
+    private final MemoryRagService memoryRagService;
+    private final JdbcTemplate jdbcTemplate;
+    private final AppProperties.MemorySettings settings;
+    private final Set<Long> pendingUpserts = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingRemovals = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private boolean rebuildChecked;
+    // New and changed rows arrive through the queue; the table is only scanned for unindexed rows at startup and after a rebuild.
+    private boolean backfillPending = true;
+    private boolean removed;
+
+    public MemoryIndexService(MemoryRepository memoryRepository, MemoryRagService memoryRagService,
+                              JdbcTemplate jdbcTemplate, AppProperties appProperties) {
+        this.memoryRepository = memoryRepository;
+        this.memoryRagService = memoryRagService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = appProperties.getMemory();
+    }
+
+    public void enqueue(Long memoryId) {
+        if (memoryId != null) {
+            pendingRemovals.remove(memoryId);
+            pendingUpserts.add(memoryId);
+        }
+    }
+
+    public void enqueueRemoval(Long memoryId) {
+        if (memoryId != null) {
+            pendingUpserts.remove(memoryId);
+            pendingRemovals.add(memoryId);
+        }
+    }
+
+    public int pendingCount() {
+        return pendingUpserts.size() + pendingRemovals.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.memory.index-interval-millis:2000}")
+    public void indexPending() {
+        // Runs are serialized so an overlapping trigger never indexes the same batch twice.
+        indexLock.lock();
+        // Memory id -> hash of the content written to the backend this run.
+        Map<Long, String> indexed = new LinkedHashMap<>();
+        try {
+            if (!rebuildChecked) {
+                // The backend lost its data (first start, deleted index file): let the backfill index everything again.
+                if (memoryRagService.needsRebuild()) {
+                    memoryRepository.clearIndexedHashes();
+                    backfillPending = true;
+                }
+                rebuildChecked = true;
+            }
+            removeQueued();
+            indexQueued(indexed);
+            if (backfillPending) {
+                backfill(indexed);
+            }
+            if (removed || !indexed.isEmpty()) {
+                // Durable before the hashes say so; otherwise a crash would leave rows marked indexed but missing.
+                memoryRagService.flushIndex();
+                removed = false;
+                markIndexed(indexed);
+            }
+            backfillPending = false;
+        } catch (Exception ignored) {
+            // The backend is unreachable; queued ids stay pending, this run's writes are queued again
+            // and unindexed rows are picked up next run.
+            pendingUpserts.addAll(indexed.keySet());
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    public static String contentHash(Memory memory) {
+        String source = Objects.toString(memory.getTitle(), "") + "\n"
+                + Objects.toString(memory.getContent(), "") + "\n"
+                + Objects.toString(memory.getDate(), "");
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void removeQueued() throws Exception {
+        List<Long> batch;
+        while (!(batch = take(pendingRemovals)).isEmpty()) {
+            try {
+                memoryRagService.removeMemories(batch);
+                removed = true;
+            } catch (Exception ex) {
+                pendingRemovals.addAll(batch);
+                throw ex;
+            }
+        }
+    }
+
+    private void indexQueued(Map<Long, String> indexed) throws Exception {
+        List<Long> batch;
+        while (!(batch = take(pendingUpserts)).isEmpty()) {
+            try {
+                index(memoryRepository.findAllById(batch), indexed);
+            } catch (Exception ex) {
+                pendingUpserts.addAll(batch);
+                throw ex;
+            }
+        }
+    }
+
+    private void backfill(Map<Long, String> indexed) throws Exception {
+        int batchSize = Math.max(1, settings.getIndexBatchSize());
+        long afterId = 0;
+        List<Memory> batch;
+        do {
+            // Hashes are only marked at the end of the run, so page by id instead of re-reading unmarked rows.
+            batch = memoryRepository.findByIndexedHashIsNullAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, batchSize));
+            index(batch, indexed);
+            if (!batch.isEmpty()) {
+                afterId = batch.getLast().getId();
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void index(List<Memory> memories, Map<Long, String> indexed) throws Exception {
+        List<Memory> stale = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (Memory memory : memories) {
+            String hash = contentHash(memory);
+            if (!hash.equals(memory.getIndexedHash()) && !hash.equals(indexed.get(memory.getId()))) {
+                stale.add(memory);
+                hashes.add(hash);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        memoryRagService.upsertMemories(stale);
+        for (int i = 0; i < stale.size(); i++) {
+            indexed.put(stale.get(i).getId(), hashes.get(i));
+        }
+    }
+
+    private void markIndexed(Map<Long, String> indexed) {
+        if (indexed.isEmpty()) {
+            return;
+        }
+        // One batched statement, not an UPDATE transaction per row; plain JDBC also keeps the entity listener from requeueing.
+        List<Object[]> rows = new ArrayList<>(indexed.size());
+        indexed.forEach((id, hash) -> rows.add(new Object[]{hash, id}));
+        jdbcTemplate.batchUpdate("update memory set indexed_hash = ? where id = ?", rows);
+    }
+
+    private List<Long> take(Set<Long> pending) {
+        int batchSize = Math.max(1, settings.getIndexBatchSize());
+        List<Long> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<Long> iterator = pending.iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,243 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.Memory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 记忆的关键字倒排索引（BM25）。按用户分区，对标题、内容和标签分词：中文取单字与相邻双字，英文/数字取小写整词。
+ * 分区在该用户第一次检索时由传入的记忆列表建立，之后由 {@link MemoryIndexListener} 在提交后增量更新；
+ * 传入列表与分区的指纹（每条记忆的 id、标题、内容、标签哈希之和）不一致时整体重建。
+ * 分区数与玩家上下文缓存共用上限（app.game.context-cache-max-entries），按最近检索淘汰，被淘汰的用户下次检索时重建。
+ */
+@Component
+public class MemoryLexicalIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final long UNOWNED = 0L;
+
+    private final Map<Long, Partition> partitions;
+
+    public MemoryLexicalIndex(AppProperties appProperties) {
+        int maxPartitions = Math.max(1, appProperties.getGame().getContextCacheMaxEntries());
+        this.partitions = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Partition> eldest) {
+                return size() > maxPartitions;
+            }
+        });
+    }
+
+    /** Ranks {@code memories} (one user's full list) against {@code query}; only memories sharing a term are returned. */
+    public List<Long> search(Long userId, List<Memory> memories, String query, int limit) {
+        if (limit <= 0 || query == null || query.isBlank()) {
+            return List.of();
+        }
+        Partition partition = partitions.computeIfAbsent(userId != null ? userId : UNOWNED, key -> new Partition());
+        partition.syncWith(memories);
+        return partition.top(termCounts(query).keySet(), limit);
+    }
+
+    public void put(Memory memory) {
+        if (memory.getId() == null) {
+            return;
+        }
+        // Only users that have searched since startup hold a partition; the rest are built on their first search.
+        Partition partition = partitions.get(ownerOf(memory));
+        if (partition != null) {
+            partition.put(memory);
+        }
+    }
+
+    public void remove(Memory memory) {
+        Partition partition = partitions.get(ownerOf(memory));
+        if (partition != null && memory.getId() != null) {
+            partition.remove(memory.getId());
+        }
+    }
+
+    public int size() {
+        return partitions.size();
+    }
+
+    static Map<String, Integer> termCounts(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (text == null) {
+            return counts;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                counts.merge(String.valueOf(c), 1, Integer::sum);
+                if (i + 1 < length && isCjk(text.charAt(i + 1))) {
+                    counts.merge(text.substring(i, i + 2), 1, Integer::sum);
+                }
+                i++;
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                counts.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+            } else {
+                i++;
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String, Integer> documentTerms(Memory memory) {
+        Map<String, Integer> counts = termCounts(memory.getTitle());
+        termCounts(memory.getContent()).forEach((term, count) -> counts.merge(term, count, Integer::sum));
+        termCounts(memory.getTags()).forEach((term, count) -> counts.merge(term, count, Integer::sum));
+        return counts;
+    }
+
+    /** Order-independent per-memory hash; a partition's fingerprint is the sum over its documents. */
+    private static long fingerprint(Memory memory) {
+        long hash = memory.getId() * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ Objects.hashCode(memory.getTitle())) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ Objects.hashCode(memory.getContent())) * 0x94D049BB133111EBL;
+        hash = (hash ^ Objects.hashCode(memory.getTags())) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static long ownerOf(Memory memory) {
+        return memory.getUser() != null && memory.getUser().getId() != null ? memory.getUser().getId() : UNOWNED;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF);
+    }
+
+    private record Document(Map<String, Integer> terms, int length, long fingerprint) {}
+
+    private static final class Partition {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+        private long totalLength;
+        private long fingerprint;
+
+        private void syncWith(List<Memory> memories) {
+            int count = 0;
+            long expected = 0;
+            for (Memory memory : memories) {
+                if (memory.getId() != null) {
+                    count++;
+                    expected += fingerprint(memory);
+                }
+            }
+            lock.readLock().lock();
+            try {
+                if (documents.size() == count && fingerprint == expected) {
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            lock.writeLock().lock();
+            try {
+                documents.clear();
+                postings.clear();
+                totalLength = 0;
+                fingerprint = 0;
+                for (Memory memory : memories) {
+                    if (memory.getId() != null) {
+                        add(memory.getId(), documentTerms(memory), fingerprint(memory));
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void put(Memory memory) {
+            Map<String, Integer> terms = documentTerms(memory);
+            long hash = fingerprint(memory);
+            lock.writeLock().lock();
+            try {
+                delete(memory.getId());
+                add(memory.getId(), terms, hash);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long memoryId) {
+            lock.writeLock().lock();
+            try {
+                delete(memoryId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private List<Long> top(Set<String> queryTerms, int limit) {
+            lock.readLock().lock();
+            try {
+                int count = documents.size();
+                if (count == 0) {
+                    return List.of();
+                }
+                double averageLength = Math.max(1.0, (double) totalLength / count);
+                Map<Long, Double> scores = new HashMap<>();
+                for (String term : queryTerms) {
+                    Map<Long, Integer> posting = postings.get(term);
+                    if (posting == null) {
+                        continue;
+                    }
+                    double idf = Math.log(1 + (count - posting.size() + 0.5) / (posting.size() + 0.5));
+                    for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                        int frequency = entry.getValue();
+                        int length = documents.get(entry.getKey()).length();
+                        double norm = frequency + K1 * (1 - B + B * length / averageLength);
+                        scores.merge(entry.getKey(), idf * frequency * (K1 + 1) / norm, Double::sum);
+                    }
+                }
+                return scores.entrySet().stream()
+                        .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .limit(limit)
+                        .map(Map.Entry::getKey)
+                        .toList();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void add(long memoryId, Map<String, Integer> terms, long hash) {
+            int length = 0;
+            for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put(memoryId, entry.getValue());
+                length += entry.getValue();
+            }
+            documents.put(memoryId, new Document(terms, length, hash));
+            totalLength += length;
+            fingerprint += hash;
+        }
+
+        private void delete(long memoryId) {
+            Document previous = documents.remove(memoryId);
+            if (previous == null) {
+                return;
+            }
+            totalLength -= previous.length();
+            fingerprint -= previous.fingerprint();
+            for (String term : previous.terms().keySet()) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(memoryId);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.Memory;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 记忆向量的存储与检索后端。向量由 {@link MemoryRagService} 统一计算，后端只负责保存与最近邻查询。
+ */
+public interface MemoryRetrievalBackend {
+
+    /** Stores or replaces the vectors of the given memories; {@code embeddings} is index-aligned with {@code memories}. */
+    void upsert(List<Memory> memories, List<float[]> embeddings) throws Exception;
+
+    void remove(Collection<Long> memoryIds) throws Exception;
+
+    /** Ids of the memories closest to {@code query}, best match first. */
+    List<Long> search(Long userId, float[] query, int limit) throws Exception;
+
+    /** True when the backend lost its data (e.g. no index file yet) and every memory has to be indexed again. */
+    default boolean needsRebuild() {
+        return false;
+    }
+
+    /** Makes writes since the last call durable. */
+    default void flush() throws Exception {
+    }
+}
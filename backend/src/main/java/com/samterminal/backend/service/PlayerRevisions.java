@@ -0,0 +1,89 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 每个玩家的状态、背包、记忆、地点解锁以及全局地图数据的修订号，用于 GET 接口的强 ETag，命中时无需读库即可返回 304。
+ * 修订号只保存在内存中，由 {@link GameContextListener} 在提交后推进；所有修订号都取自同一个递增序列，
+ * 且 ETag 带有进程启动时生成的前缀，玩家条目被淘汰后重建或进程重启都不会与旧 ETag 重合。
+ */
+@Component
+public class PlayerRevisions {
+    public enum Slice { STATE, INVENTORY, MEMORIES, UNLOCKS, WORLD }
+
+    private static final int USER_SLICES = Slice.WORLD.ordinal();
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong world = new AtomicLong(sequence.incrementAndGet());
+    private final Map<String, AtomicLongArray> users;
+
+    public PlayerRevisions(AppProperties appProperties) {
+        int maxEntries = Math.max(1, appProperties.getGame().getContextCacheMaxEntries());
+        this.users = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AtomicLongArray> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /** Strong ETag over the given slices; read it before building the response so the body is never older. */
+    public String etag(String username, Slice... slices) {
+        AtomicLongArray revisions = username != null ? revisionsOf(username) : null;
+        StringBuilder tag = new StringBuilder("\"").append(epoch);
+        for (Slice slice : slices) {
+            long revision = slice == Slice.WORLD ? world.get()
+                    : revisions != null ? revisions.get(slice.ordinal()) : 0L;
+            tag.append('-').append(Long.toString(revision, 36));
+        }
+        return tag.append('"').toString();
+    }
+
+    public void bump(String username, Slice... slices) {
+        if (username == null) {
+            return;
+        }
+        AtomicLongArray revisions = revisionsOf(username);
+        for (Slice slice : slices) {
+            if (slice == Slice.WORLD) {
+                bumpWorld();
+            } else {
+                revisions.set(slice.ordinal(), sequence.incrementAndGet());
+            }
+        }
+    }
+
+    public void bumpAll(String username) {
+        bump(username, Slice.STATE, Slice.INVENTORY, Slice.MEMORIES, Slice.UNLOCKS);
+    }
+
+    public void bumpWorld() {
+        world.set(sequence.incrementAndGet());
+    }
+
+    private AtomicLongArray revisionsOf(String username) {
+        AtomicLongArray revisions = users.get(username);
+        if (revisions != null) {
+            return revisions;
+        }
+        synchronized (users) {
+            return users.computeIfAbsent(username, key -> {
+                long start = sequence.incrementAndGet();
+                AtomicLongArray created = new AtomicLongArray(USER_SLICES);
+                for (int i = 0; i < USER_SLICES; i++) {
+                    created.set(i, start);
+                }
+                return created;
+            });
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.samterminal.backend.service;
+
+final class ScalarVectorMath implements VectorMath {
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredNorm(float[] v, int offset, int length) {
+        return dot(v, offset, v, offset, length);
+    }
+
+    @Override
+    public void scale(float[] v, int offset, int length, float factor) {
+        for (int i = 0; i < length; i++) {
+            v[offset + i] *= factor;
+        }
+    }
+}
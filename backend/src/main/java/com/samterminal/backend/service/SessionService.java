@@ -11,7 +11,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -28,37 +27,55 @@ public class SessionService {
         this.appProperties = appProperties;
     }
 
+    @Transactional(readOnly = true)
+    public ChatSession findActiveSession(AppUser user, String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return null;
+        }
+        return sessionRepository.findBySessionId(sessionId)
+                .filter(session -> session.getUser() != null && session.getUser().getId().equals(user.getId()))
+                .filter(session -> !isExpired(session))
+                .orElse(null);
+    }
+
     @Transactional
-    public ChatSession resolveSession(AppUser user, String sessionId) {
-        ChatSession session = null;
-        if (sessionId != null && !sessionId.isBlank()) {
-            Optional<ChatSession> existing = sessionRepository.findBySessionId(sessionId);
-            if (existing.isPresent() && existing.get().getUser() != null && existing.get().getUser().getId().equals(user.getId())) {
-                session = existing.get();
+    public ChatSession commitSession(AppUser user, String requestedSessionId, ChatSession active, LlmApiConfig usedApi) {
+        if (active != null) {
+            ChatSession managed = sessionRepository.findById(active.getId()).orElse(null);
+            if (managed != null) {
+                if (usedApi != null) {
+                    managed.setActiveApi(usedApi);
+                }
+                managed.setLastActiveAt(Instant.now());
+                return sessionRepository.save(managed);
             }
         }
-        if (session == null || isExpired(session)) {
-            if (session != null) {
-                session.setStatus(ChatSessionStatus.EXPIRED);
-                sessionRepository.save(session);
-            }
-            return createSession(user);
+        if (requestedSessionId != null && !requestedSessionId.isBlank()) {
+            sessionRepository.findBySessionId(requestedSessionId)
+                    .filter(session -> session.getUser() != null && session.getUser().getId().equals(user.getId()))
+                    .filter(session -> session.getStatus() != ChatSessionStatus.EXPIRED)
+                    .ifPresent(session -> {
+                        session.setStatus(ChatSessionStatus.EXPIRED);
+                        sessionRepository.save(session);
+                    });
         }
-        session.setLastActiveAt(Instant.now());
-        return sessionRepository.save(session);
+        return createSession(user, usedApi != null ? usedApi : llmPoolService.selectApiForNewSession());
     }
 
     @Transactional
     public ChatSession createSession(AppUser user) {
+        return createSession(user, llmPoolService.selectApiForNewSession());
+    }
+
+    private ChatSession createSession(AppUser user, LlmApiConfig api) {
         ChatSession session = ChatSession.builder()
                 .sessionId(UUID.randomUUID().toString())
                 .user(user)
                 .status(ChatSessionStatus.ACTIVE)
                 .createdAt(Instant.now())
                 .lastActiveAt(Instant.now())
+                .activeApi(api)
                 .build();
-        LlmApiConfig api = llmPoolService.selectApiForNewSession();
-        session.setActiveApi(api);
         return sessionRepository.save(session);
     }
 
@@ -0,0 +1,47 @@
+package com.samterminal.backend.service;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels. Only loaded reflectively by {@link EmbeddingEngine}, so a JVM started without
+ * {@code --add-modules jdk.incubator.vector} never links this class.
+ */
+final class SimdVectorMath implements VectorMath {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOffset + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float squaredNorm(float[] v, int offset, int length) {
+        return dot(v, offset, v, offset, length);
+    }
+
+    @Override
+    public void scale(float[] v, int offset, int length, float factor) {
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, v, offset + i).mul(factor).intoArray(v, offset + i);
+        }
+        for (; i < length; i++) {
+            v[offset + i] *= factor;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.samterminal.backend.service;
+
+import java.util.Set;
+
+/**
+ * Incremental reader for the reply JSON the model produces token by token.
+ * Only top-level string fields listed in {@link #STREAMED_FIELDS} are forwarded; everything else
+ * (emotion, intent, target_id) is left to the final parse once the stream ends.
+ */
+public class StreamingReplyParser {
+    static final Set<String> STREAMED_FIELDS = Set.of("content", "narration");
+
+    private final ChatStreamListener listener;
+    private final StringBuilder key = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder unicode = new StringBuilder();
+
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private boolean inString;
+    private boolean stringIsKey;
+    private boolean escape;
+    private boolean afterColon;
+    private String lastKey;
+    private String activeField;
+
+    public StreamingReplyParser(ChatStreamListener listener) {
+        this.listener = listener;
+    }
+
+    public void accept(String chunk) {
+        if (chunk == null || finished) {
+            return;
+        }
+        for (int i = 0; i < chunk.length() && !finished; i++) {
+            consume(chunk.charAt(i));
+        }
+        flush(false);
+    }
+
+    private void consume(char c) {
+        if (!started) {
+            // Skip markdown fences or chatter before the JSON object.
+            if (c == '{') {
+                started = true;
+                depth = 1;
+            }
+            return;
+        }
+        if (inString) {
+            consumeStringChar(c);
+            return;
+        }
+        switch (c) {
+            case '"' -> {
+                inString = true;
+                stringIsKey = depth == 1 && !afterColon;
+                if (stringIsKey) {
+                    key.setLength(0);
+                } else if (depth == 1 && STREAMED_FIELDS.contains(lastKey)) {
+                    activeField = lastKey;
+                }
+            }
+            case ':' -> {
+                if (depth == 1) {
+                    afterColon = true;
+                }
+            }
+            case ',' -> {
+                if (depth == 1) {
+                    afterColon = false;
+                }
+            }
+            case '{', '[' -> depth++;
+            case '}', ']' -> {
+                depth--;
+                if (depth == 0) {
+                    finished = true;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void consumeStringChar(char c) {
+        if (unicode.length() > 0) {
+            unicode.append(c);
+            if (unicode.length() == 5) {
+                try {
+                    append((char) Integer.parseInt(unicode.substring(1), 16));
+                } catch (NumberFormatException ignored) {
+                }
+                unicode.setLength(0);
+            }
+            return;
+        }
+        if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n' -> append('\n');
+                case 't' -> append('\t');
+                case 'r' -> append('\r');
+                case 'b' -> append('\b');
+                case 'f' -> append('\f');
+                case 'u' -> unicode.append('u');
+                default -> append(c);
+            }
+            return;
+        }
+        if (c == '\\') {
+            escape = true;
+            return;
+        }
+        if (c == '"') {
+            inString = false;
+            if (stringIsKey) {
+                lastKey = key.toString();
+            } else if (activeField != null) {
+                flush(true);
+                activeField = null;
+            }
+            return;
+        }
+        append(c);
+    }
+
+    private void append(char c) {
+        if (stringIsKey) {
+            key.append(c);
+        } else if (activeField != null) {
+            pending.append(c);
+        }
+    }
+
+    private void flush(boolean endOfValue) {
+        if (activeField == null || pending.isEmpty()) {
+            return;
+        }
+        int end = pending.length();
+        if (!endOfValue && Character.isHighSurrogate(pending.charAt(end - 1))) {
+            // Keep surrogate pairs together so clients never receive half a character.
+            end--;
+            if (end == 0) {
+                return;
+            }
+        }
+        listener.onDelta(activeField, pending.substring(0, end));
+        pending.delete(0, end);
+    }
+}
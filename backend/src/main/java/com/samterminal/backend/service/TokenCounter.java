@@ -0,0 +1,10 @@
+package com.samterminal.backend.service;
+
+/** Counts the tokens a model would bill for a piece of text. */
+@FunctionalInterface
+public interface TokenCounter {
+    /** One token per CJK character or ASCII word; used when no vocabulary is configured for the model. */
+    TokenCounter HEURISTIC = TokenEstimator::estimateTokens;
+
+    long countTokens(String text);
+}
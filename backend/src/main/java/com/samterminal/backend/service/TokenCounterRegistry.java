@@ -0,0 +1,78 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import jakarta.annotation.PostConstruct;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按模型选择 token 计数方式。app.llm.tokenizer.models 以 modelName 前缀（最长前缀优先）指定 bpe 或 heuristic，
+ * 其余模型使用 app.llm.tokenizer.default-type；BPE 词表（app.llm.tokenizer.vocabulary）启动时加载一次，
+ * 文件不存在或无法解析时所有模型退回 {@link TokenCounter#HEURISTIC}。
+ * 调用模型前还不知道会选中哪个 API，此时的估算（额度预占等）使用 {@link #defaultCounter()}。
+ */
+@Component
+public class TokenCounterRegistry {
+    private final AppProperties.Tokenizer settings;
+    private final ResourceLoader resourceLoader;
+    private volatile BpeTokenCounter bpe;
+
+    public TokenCounterRegistry(AppProperties appProperties, ResourceLoader resourceLoader) {
+        this.settings = appProperties.getLlm().getTokenizer();
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    public void loadVocabulary() {
+        String path = settings.getVocabulary();
+        if (path == null || path.isBlank()) {
+            return;
+        }
+        try {
+            Resource resource = resourceLoader.getResource(path);
+            if (!resource.exists()) {
+                return;
+            }
+            try (InputStream in = resource.getInputStream()) {
+                bpe = BpeTokenCounter.load(in, settings.getCacheMaxEntries());
+            }
+        } catch (Exception ex) {
+            // A broken vocabulary must not block startup; counting falls back to the heuristic.
+        }
+    }
+
+    public boolean isBpeAvailable() {
+        return bpe != null;
+    }
+
+    public TokenCounter defaultCounter() {
+        return counter(settings.getDefaultType());
+    }
+
+    public TokenCounter forModel(String modelName) {
+        if (modelName == null || settings.getModels().isEmpty()) {
+            return defaultCounter();
+        }
+        String name = modelName.toLowerCase(Locale.ROOT);
+        AppProperties.TokenizerType type = settings.getDefaultType();
+        int matched = -1;
+        for (Map.Entry<String, AppProperties.TokenizerType> entry : settings.getModels().entrySet()) {
+            String prefix = entry.getKey().toLowerCase(Locale.ROOT);
+            if (name.startsWith(prefix) && prefix.length() > matched) {
+                matched = prefix.length();
+                type = entry.getValue();
+            }
+        }
+        return counter(type);
+    }
+
+    private TokenCounter counter(AppProperties.TokenizerType type) {
+        BpeTokenCounter loaded = bpe;
+        return type == AppProperties.TokenizerType.BPE && loaded != null ? loaded : TokenCounter.HEURISTIC;
+    }
+}
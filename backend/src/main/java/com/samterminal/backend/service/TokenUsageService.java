@@ -1,38 +1,107 @@
 package com.samterminal.backend.service;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.entity.AppUser;
 import com.samterminal.backend.entity.SystemSetting;
 import com.samterminal.backend.entity.UserTokenLimit;
 import com.samterminal.backend.entity.UserTokenUsage;
+import com.samterminal.backend.entity.UserTokenUsageBucket;
+import com.samterminal.backend.repository.AppUserRepository;
 import com.samterminal.backend.repository.SystemSettingRepository;
 import com.samterminal.backend.repository.UserTokenLimitRepository;
+import com.samterminal.backend.repository.UserTokenUsageBucketRepository;
 import com.samterminal.backend.repository.UserTokenUsageRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Clock;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * 玩家 token 用量与额度。用量按小时分桶（自 epoch 起的 UTC 小时数），累加在每个玩家当前小时桶的 {@link LongAdder} 计数器里，
+ * 额度只统计当前窗口内的桶（app.quota.window：daily 为服务器时区的自然日，rolling 为最近 app.quota.rolling-hours 小时），检查只读内存。
+ * 窗口前移时旧桶自然落在窗口外，不需要定时清零；刷写时顺手丢掉窗口外的内存桶。
+ * 定时任务（app.llm.usage-flush-interval-millis）用 {@code input_tokens = input_tokens + ?} 的原子 UPDATE 把增量写回
+ * user_token_usage_bucket 与累计总量 user_token_usage，同一玩家的小时桶与总量在一个事务里写入，提交后才从内存待写量中扣除，
+ * 写入失败的玩家留待下一轮重试，不影响其他玩家。窗口内已落库的桶在玩家首次出现时读取一次；没有待写量、没有预占、
+ * 窗口内也没有桶的玩家在刷写时移出内存（连同其自定义额度缓存），下次出现时重新读取。
+ * 全局额度与玩家自定义额度同样缓存，修改提交后失效；读取在并发映射之外执行，按代数丢弃与修改交错的旧值。
+ * 调用模型前先用 {@link #reserve} 以比较并交换预占本轮成本的上限，回复后 {@link #settle} 按实际用量结算，
+ * 同一玩家的并发请求合计不会越过额度（实际用量超出预占上限的部分除外），也不需要经过数据库排队。
+ */
 @Service
-public class TokenUsageService {
+public class TokenUsageService implements DisposableBean {
     public static final String GLOBAL_LIMIT_KEY = "global_token_limit";
     private static final long DEFAULT_GLOBAL_LIMIT = 50000L;
+    private static final long SECONDS_PER_HOUR = 3600L;
 
     private final UserTokenUsageRepository usageRepository;
+    private final UserTokenUsageBucketRepository bucketRepository;
     private final UserTokenLimitRepository limitRepository;
     private final SystemSettingRepository settingRepository;
+    private final AppUserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final AppProperties.QuotaSettings settings;
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<Long, Optional<Long>> customLimits = new ConcurrentHashMap<>();
+    private final AtomicLong customLimitGeneration = new AtomicLong();
+    private final AtomicLong globalLimitGeneration = new AtomicLong();
+    private volatile CachedLimit globalLimit;
 
     public TokenUsageService(UserTokenUsageRepository usageRepository,
+                             UserTokenUsageBucketRepository bucketRepository,
                              UserTokenLimitRepository limitRepository,
-                             SystemSettingRepository settingRepository) {
+                             SystemSettingRepository settingRepository,
+                             AppUserRepository userRepository,
+                             PlatformTransactionManager transactionManager,
+                             Clock clock,
+                             AppProperties appProperties) {
         this.usageRepository = usageRepository;
+        this.bucketRepository = bucketRepository;
         this.limitRepository = limitRepository;
         this.settingRepository = settingRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = clock;
+        this.settings = appProperties.getQuota();
     }
 
     public long getGlobalLimit() {
-        return settingRepository.findBySettingKey(GLOBAL_LIMIT_KEY)
+        long generation = globalLimitGeneration.get();
+        CachedLimit cached = globalLimit;
+        if (cached != null && cached.generation() == generation) {
+            return cached.value();
+        }
+        long value = settingRepository.findBySettingKey(GLOBAL_LIMIT_KEY)
                 .map(setting -> parseLong(setting.getSettingValue(), DEFAULT_GLOBAL_LIMIT))
                 .orElse(DEFAULT_GLOBAL_LIMIT);
+        // Tagged with the generation it was read under, so a read racing setGlobalLimit is not kept.
+        globalLimit = new CachedLimit(generation, value);
+        return value;
     }
 
     @Transactional
@@ -41,10 +110,24 @@ public class TokenUsageService {
                 .orElseGet(() -> SystemSetting.builder().settingKey(GLOBAL_LIMIT_KEY).build());
         setting.setSettingValue(String.valueOf(value));
         settingRepository.save(setting);
+        afterCommit(globalLimitGeneration::incrementAndGet);
     }
 
     public Long getCustomLimit(AppUser user) {
-        return limitRepository.findByUser(user).map(UserTokenLimit::getCustomLimit).orElse(null);
+        Long userId = user.getId();
+        Optional<Long> cached = customLimits.get(userId);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        // Loaded outside the map so the query does not hold a bin lock shared with unrelated players.
+        long generation = customLimitGeneration.get();
+        Optional<Long> loaded = limitRepository.findByUserId(userId).map(UserTokenLimit::getCustomLimit);
+        customLimits.put(userId, loaded);
+        // setUserLimit bumps the generation before removing; if it committed during the load, this value may be stale.
+        if (customLimitGeneration.get() != generation) {
+            customLimits.remove(userId, loaded);
+        }
+        return loaded.orElse(null);
     }
 
     public long resolveLimit(AppUser user) {
@@ -52,24 +135,92 @@ public class TokenUsageService {
         return custom != null ? custom : getGlobalLimit();
     }
 
-    @Transactional
-    public UserTokenUsage getOrCreateUsage(AppUser user) {
-        return usageRepository.findByUser(user)
-                .orElseGet(() -> usageRepository.save(UserTokenUsage.builder()
-                        .user(user)
-                        .inputTokens(0L)
-                        .outputTokens(0L)
-                        .updatedAt(Instant.now())
-                        .build()));
-    }
-
     public long weightedTokens(long input, long output) {
         return input + output * 8L;
     }
 
+    /** Weighted usage inside the current quota window. */
     public long currentWeightedUsage(AppUser user) {
-        UserTokenUsage usage = getOrCreateUsage(user);
-        return weightedTokens(usage.getInputTokens(), usage.getOutputTokens());
+        return windowWeightedUsage(countersOf(user), windowStartHour());
+    }
+
+    /** First hour (hours since the epoch) counted by the current quota window. */
+    public long windowStartHour() {
+        Instant now = clock.instant();
+        if (settings.getWindow() == AppProperties.QuotaWindow.ROLLING) {
+            return hourOf(now) - Math.max(1, settings.getRollingHours()) + 1;
+        }
+        ZoneId zone = clock.getZone();
+        return hourOf(LocalDate.ofInstant(now, zone).atStartOfDay(zone).toInstant());
+    }
+
+    /** Players currently held in memory. */
+    public int trackedPlayers() {
+        return counters.size();
+    }
+
+    /** Weighted tokens held by reservations that are not settled or released yet. */
+    public long reservedWeightedTokens(AppUser user) {
+        return countersOf(user).reserved().get();
+    }
+
+    /** Recorded but not yet written to user_token_usage; the admin report adds it to the stored totals. */
+    public Usage pendingUsage(Long userId) {
+        Counters usage = userId != null ? counters.get(userId) : null;
+        Usage pending = new Usage(0L, 0L);
+        if (usage != null) {
+            for (Bucket bucket : usage.buckets().values()) {
+                pending = pending.plus(bucket.pending());
+            }
+        }
+        return pending;
+    }
+
+    /** Recorded but not yet written, restricted to the current quota window. */
+    public Usage pendingWindowUsage(Long userId) {
+        Counters usage = userId != null ? counters.get(userId) : null;
+        Usage pending = new Usage(0L, 0L);
+        if (usage != null) {
+            for (Bucket bucket : usage.buckets().tailMap(windowStartHour()).values()) {
+                pending = pending.plus(bucket.pending());
+            }
+        }
+        return pending;
+    }
+
+    /** Per-day totals, stored and pending, for the last {@code days} days of each player; one bucket query for all of them. */
+    public Map<Long, List<DailyUsage>> recentUsage(Collection<Long> userIds, int days) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        ZoneId zone = clock.getZone();
+        LocalDate today = LocalDate.now(clock);
+        LocalDate firstDay = today.minusDays(Math.max(1, days) - 1L);
+        long fromHour = hourOf(firstDay.atStartOfDay(zone).toInstant());
+
+        Map<Long, Map<LocalDate, Usage>> daily = new HashMap<>();
+        for (UserTokenUsageBucket row : bucketRepository.findByUserIdInAndBucketHourGreaterThanEqual(userIds, fromHour)) {
+            daily.computeIfAbsent(row.getUser().getId(), id -> new HashMap<>())
+                    .merge(dayOf(row.getBucketHour(), zone), new Usage(row.getInputTokens(), row.getOutputTokens()), Usage::plus);
+        }
+        for (Long userId : userIds) {
+            Counters usage = counters.get(userId);
+            if (usage != null) {
+                usage.buckets().tailMap(fromHour).forEach((hour, bucket) ->
+                        daily.computeIfAbsent(userId, id -> new HashMap<>()).merge(dayOf(hour, zone), bucket.pending(), Usage::plus));
+            }
+        }
+
+        Map<Long, List<DailyUsage>> result = new HashMap<>();
+        daily.forEach((userId, byDay) -> {
+            List<DailyUsage> series = new ArrayList<>();
+            for (LocalDate day = firstDay; !day.isAfter(today); day = day.plusDays(1)) {
+                Usage total = byDay.getOrDefault(day, new Usage(0L, 0L));
+                series.add(new DailyUsage(day, total.inputTokens(), total.outputTokens()));
+            }
+            result.put(userId, series);
+        });
+        return result;
     }
 
     public boolean wouldExceedLimit(AppUser user, long additionalInput, long additionalOutput) {
@@ -79,13 +230,45 @@ public class TokenUsageService {
         return next > limit;
     }
 
-    @Transactional
+    /**
+     * Holds the weighted cost of {@code inputTokens} and at most {@code maxOutputTokens} against the player's quota;
+     * null when recorded usage plus open reservations would pass the limit.
+     */
+    public Reservation reserve(AppUser user, long inputTokens, long maxOutputTokens) {
+        Counters usage = countersOf(user);
+        long limit = resolveLimit(user);
+        long cost = weightedTokens(inputTokens, maxOutputTokens);
+        long windowStart = windowStartHour();
+        while (true) {
+            long reserved = usage.reserved().get();
+            // Settling adds the real usage before it releases the reservation, so this sum never undercounts.
+            if (windowWeightedUsage(usage, windowStart) + reserved + cost > limit) {
+                return null;
+            }
+            if (usage.reserved().compareAndSet(reserved, reserved + cost)) {
+                if (!usage.evicted().get()) {
+                    return new Reservation(usage, cost);
+                }
+                // Evicted concurrently: undo and reserve against the entry that replaces it.
+                usage.reserved().addAndGet(-cost);
+                usage = countersOf(user);
+            }
+        }
+    }
+
+    /** Charges the real usage and frees the reservation once the surrounding transaction commits. */
+    public void settle(Reservation reservation, long inputTokens, long outputTokens) {
+        afterCommit(() -> {
+            add(reservation.usage.user(), inputTokens, outputTokens);
+            reservation.release();
+        });
+    }
+
+    /** Counted once the surrounding transaction commits, so a replayed chat turn is not charged twice. */
     public void recordUsage(AppUser user, long inputTokens, long outputTokens) {
-        UserTokenUsage usage = getOrCreateUsage(user);
-        usage.setInputTokens(usage.getInputTokens() + inputTokens);
-        usage.setOutputTokens(usage.getOutputTokens() + outputTokens);
-        usage.setUpdatedAt(Instant.now());
-        usageRepository.save(usage);
+        // Load the stored buckets now rather than in the after-commit callback.
+        countersOf(user);
+        afterCommit(() -> add(user, inputTokens, outputTokens));
     }
 
     @Transactional
@@ -94,6 +277,192 @@ public class TokenUsageService {
                 .orElseGet(() -> UserTokenLimit.builder().user(user).build());
         tokenLimit.setCustomLimit(limit);
         limitRepository.save(tokenLimit);
+        Long userId = user.getId();
+        afterCommit(() -> {
+            customLimitGeneration.incrementAndGet();
+            customLimits.remove(userId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.llm.usage-flush-interval-millis:5000}")
+    public void flushUsage() {
+        // Two overlapping flushes (the shutdown flush and a scheduled one still running) would both add the same pending amounts.
+        flushLock.lock();
+        try {
+            Instant now = clock.instant();
+            long windowStart = windowStartHour();
+            for (Map.Entry<Long, Counters> entry : counters.entrySet()) {
+                Counters usage = entry.getValue();
+                try {
+                    flushPlayer(usage, windowStart, now);
+                    evictIfIdle(entry.getKey(), usage, windowStart);
+                } catch (DataIntegrityViolationException ex) {
+                    // Another instance inserted the same row first (retried next tick), or the player no longer exists.
+                    if (!userRepository.existsById(entry.getKey())) {
+                        usage.evicted().set(true);
+                        counters.remove(entry.getKey(), usage);
+                    }
+                } catch (RuntimeException ex) {
+                    // Nothing was subtracted, so the increments stay pending for the next tick.
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            flushUsage();
+        } catch (RuntimeException ignored) {
+            // Shutdown flush is best effort; the datasource may already be gone.
+        }
+    }
+
+    private void flushPlayer(Counters usage, long windowStart, Instant now) {
+        Map<Long, Usage> written = new HashMap<>();
+        for (Map.Entry<Long, Bucket> hourEntry : usage.buckets().entrySet()) {
+            Usage pending = hourEntry.getValue().pending();
+            if (pending.inputTokens() != 0 || pending.outputTokens() != 0) {
+                written.put(hourEntry.getKey(), pending);
+            } else if (hourEntry.getKey() < windowStart) {
+                usage.buckets().remove(hourEntry.getKey(), hourEntry.getValue());
+            }
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+        Usage total = written.values().stream().reduce(new Usage(0L, 0L), Usage::plus);
+        transactionTemplate.executeWithoutResult(status -> {
+            written.forEach((hour, pending) -> writeBucket(usage.user(), hour, pending));
+            writeTotal(usage.user(), total, now);
+        });
+        written.forEach((hour, pending) -> {
+            Bucket bucket = usage.buckets().get(hour);
+            // Moved into the stored bucket; subtract instead of reset so increments that raced with the write stay pending.
+            bucket.storedInput().addAndGet(pending.inputTokens());
+            bucket.storedOutput().addAndGet(pending.outputTokens());
+            bucket.pendingInput().add(-pending.inputTokens());
+            bucket.pendingOutput().add(-pending.outputTokens());
+        });
+    }
+
+    /**
+     * Drops a player with nothing pending, reserved or inside the window. The flag is raised before the second check and
+     * writers check it after their update, so either the eviction sees the update or the writer retries on a fresh entry.
+     */
+    private void evictIfIdle(Long userId, Counters usage, long windowStart) {
+        if (!isIdle(usage, windowStart)) {
+            return;
+        }
+        usage.evicted().set(true);
+        if (isIdle(usage, windowStart)) {
+            counters.remove(userId, usage);
+            customLimits.remove(userId);
+        } else {
+            usage.evicted().set(false);
+        }
+    }
+
+    private static boolean isIdle(Counters usage, long windowStart) {
+        if (usage.reserved().get() != 0 || !usage.buckets().tailMap(windowStart).isEmpty()) {
+            return false;
+        }
+        for (Bucket bucket : usage.buckets().values()) {
+            if (bucket.pendingInput().sum() != 0 || bucket.pendingOutput().sum() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeBucket(AppUser user, long hour, Usage usage) {
+        if (bucketRepository.addUsage(user.getId(), hour, usage.inputTokens(), usage.outputTokens()) == 0) {
+            bucketRepository.saveAndFlush(UserTokenUsageBucket.builder()
+                    .user(user)
+                    .bucketHour(hour)
+                    .inputTokens(usage.inputTokens())
+                    .outputTokens(usage.outputTokens())
+                    .build());
+        }
+    }
+
+    private void writeTotal(AppUser user, Usage usage, Instant now) {
+        if (usageRepository.addUsage(user.getId(), usage.inputTokens(), usage.outputTokens(), now) == 0) {
+            usageRepository.saveAndFlush(UserTokenUsage.builder()
+                    .user(user)
+                    .inputTokens(usage.inputTokens())
+                    .outputTokens(usage.outputTokens())
+                    .updatedAt(now)
+                    .build());
+        }
+    }
+
+    private void add(AppUser user, long inputTokens, long outputTokens) {
+        while (true) {
+            Counters usage = countersOf(user);
+            Bucket bucket = usage.buckets().computeIfAbsent(hourOf(clock.instant()), hour -> Bucket.empty());
+            bucket.pendingInput().add(inputTokens);
+            bucket.pendingOutput().add(outputTokens);
+            if (!usage.evicted().get()) {
+                return;
+            }
+            // Evicted concurrently: take the increment back and apply it to the entry that replaces it.
+            bucket.pendingInput().add(-inputTokens);
+            bucket.pendingOutput().add(-outputTokens);
+        }
+    }
+
+    private long windowWeightedUsage(Counters usage, long windowStart) {
+        long input = 0;
+        long output = 0;
+        // At most one bucket per hour of the window, however long the player has been playing.
+        for (Bucket bucket : usage.buckets().tailMap(windowStart).values()) {
+            input += bucket.input();
+            output += bucket.output();
+        }
+        return weightedTokens(input, output);
+    }
+
+    private Counters countersOf(AppUser user) {
+        Counters existing = counters.get(user.getId());
+        if (existing != null) {
+            return existing;
+        }
+        // Loaded outside the map so the query does not block other players; a player is only evicted once
+        // everything is written, so the stored buckets are complete.
+        ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+        for (UserTokenUsageBucket stored : bucketRepository.findByUserIdAndBucketHourGreaterThanEqual(user.getId(), windowStartHour())) {
+            Bucket bucket = Bucket.empty();
+            bucket.storedInput().set(stored.getInputTokens());
+            bucket.storedOutput().set(stored.getOutputTokens());
+            buckets.put(stored.getBucketHour(), bucket);
+        }
+        Counters loaded = new Counters(user, buckets, new AtomicLong(), new AtomicBoolean());
+        Counters raced = counters.putIfAbsent(user.getId(), loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private static LocalDate dayOf(long hour, ZoneId zone) {
+        return LocalDate.ofInstant(Instant.ofEpochSecond(hour * SECONDS_PER_HOUR), zone);
+    }
+
+    private static long hourOf(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_HOUR);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     private long parseLong(String value, long fallback) {
@@ -106,4 +475,53 @@ public class TokenUsageService {
             return fallback;
         }
     }
+
+    public record Usage(long inputTokens, long outputTokens) {
+        Usage plus(Usage other) {
+            return new Usage(inputTokens + other.inputTokens, outputTokens + other.outputTokens);
+        }
+    }
+
+    public record DailyUsage(LocalDate date, long inputTokens, long outputTokens) {}
+
+    /** An open hold on a player's quota; releasing it more than once has no effect. */
+    public static final class Reservation {
+        private final Counters usage;
+        private final long weightedTokens;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(Counters usage, long weightedTokens) {
+            this.usage = usage;
+            this.weightedTokens = weightedTokens;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                usage.reserved().addAndGet(-weightedTokens);
+            }
+        }
+    }
+
+    private record CachedLimit(long generation, long value) {}
+
+    private record Counters(AppUser user, ConcurrentNavigableMap<Long, Bucket> buckets, AtomicLong reserved,
+                            AtomicBoolean evicted) {}
+
+    private record Bucket(AtomicLong storedInput, AtomicLong storedOutput, LongAdder pendingInput, LongAdder pendingOutput) {
+        static Bucket empty() {
+            return new Bucket(new AtomicLong(), new AtomicLong(), new LongAdder(), new LongAdder());
+        }
+
+        long input() {
+            return storedInput.get() + pendingInput.sum();
+        }
+
+        long output() {
+            return storedOutput.get() + pendingOutput.sum();
+        }
+
+        Usage pending() {
+            return new Usage(pendingInput.sum(), pendingOutput.sum());
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package com.samterminal.backend.service;
+
+/**
+ * Float kernels used by memory embeddings. {@link EmbeddingEngine} picks the SIMD implementation when the
+ * {@code jdk.incubator.vector} module is present and falls back to {@link ScalarVectorMath} otherwise.
+ */
+interface VectorMath {
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /** Sum of squares of {@code v[offset, offset + length)}. */
+    float squaredNorm(float[] v, int offset, int length);
+
+    /** Multiplies {@code v[offset, offset + length)} by {@code factor} in place. */
+    void scale(float[] v, int offset, int length, float factor);
+}
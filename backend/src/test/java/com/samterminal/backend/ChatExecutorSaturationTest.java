@@ -0,0 +1,65 @@
+package com.samterminal.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.config.ChatExecutorConfig;
+import com.samterminal.backend.controller.GameController;
+import com.samterminal.backend.controller.GameSocketHandler;
+import com.samterminal.backend.dto.ChatRequest;
+import com.samterminal.backend.exception.ApiException;
+import com.samterminal.backend.service.GamePushService;
+import com.samterminal.backend.service.GameService;
+import com.samterminal.backend.service.JwtService;
+import com.samterminal.backend.service.PlayerRevisions;
+import com.samterminal.backend.service.SessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatExecutorSaturationTest {
+
+    @Test
+    void repliesBusyInsteadOfWaitingWhenEveryChatSlotIsTaken() throws Exception {
+        AppProperties properties = new AppProperties();
+        properties.getLlm().setMaxConcurrentStreams(1);
+        AsyncTaskExecutor executor = new ChatExecutorConfig().chatExecutor(properties);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        try {
+            GameService gameService = mock(GameService.class);
+            GameController controller = new GameController(gameService, mock(JwtService.class),
+                    mock(SessionService.class), executor, properties, mock(PlayerRevisions.class));
+            assertThatThrownBy(() -> controller.chatStream(new ChatRequest("你好", null), mock(HttpServletRequest.class)))
+                    .isInstanceOfSatisfying(ApiException.class,
+                            ex -> assertThat(ex.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+            GamePushService pushService = mock(GamePushService.class);
+            WebSocketSession session = mock(WebSocketSession.class);
+            when(pushService.begin(session)).thenReturn(true);
+            GameSocketHandler handler = new GameSocketHandler(gameService, pushService, executor, new ObjectMapper());
+            handler.handleMessage(session, new TextMessage("{\"type\":\"chat\",\"requestId\":\"r1\",\"message\":\"你好\"}"));
+
+            verify(pushService).end(session);
+            verify(pushService).reply(session, "error", "r1", Map.of("error", "服务繁忙，请稍后再试。"));
+        } finally {
+            release.countDown();
+        }
+    }
+}
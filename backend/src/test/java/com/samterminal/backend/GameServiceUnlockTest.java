@@ -1,5 +1,6 @@
 package com.samterminal.backend;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.dto.GameStateDto;
 import com.samterminal.backend.entity.AppUser;
 import com.samterminal.backend.entity.GameState;
@@ -12,7 +13,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,12 +37,10 @@ class GameServiceUnlockTest {
     @Mock
     private MemoryRepository memoryRepository;
     @Mock
-    private ChatMessageRepository chatMessageRepository;
+    private ChatMessageWriter chatMessageWriter;
     @Mock
     private LlmSettingRepository llmSettingRepository;
     @Mock
-    private LlmApiConfigRepository llmApiConfigRepository;
-    @Mock
     private UserLocationUnlockRepository unlockRepository;
     @Mock
     private TokenUsageService tokenUsageService;
@@ -52,6 +54,10 @@ class GameServiceUnlockTest {
     private MemoryRagService memoryRagService;
     @Mock
     private UserLocationUnlockService unlockService;
+    @Mock
+    private GamePushService pushService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     private GameService gameService;
 
@@ -63,16 +69,20 @@ class GameServiceUnlockTest {
                 locationRepository,
                 itemRepository,
                 memoryRepository,
-                chatMessageRepository,
+                chatMessageWriter,
                 llmSettingRepository,
-                llmApiConfigRepository,
                 unlockRepository,
                 tokenUsageService,
                 llmService,
                 llmPoolService,
                 sessionService,
                 memoryRagService,
-                unlockService
+                unlockService,
+                new GameContextCache(Clock.systemUTC(), new AppProperties()),
+                pushService,
+                new TokenCounterRegistry(new AppProperties(), new DefaultResourceLoader()),
+                new AppProperties(),
+                transactionManager
         );
     }
 
@@ -1,5 +1,6 @@
 package com.samterminal.backend;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.entity.*;
 import com.samterminal.backend.repository.ChatSessionRepository;
 import com.samterminal.backend.repository.LlmApiConfigRepository;
@@ -12,6 +13,7 @@ import com.samterminal.backend.repository.UserTokenLimitRepository;
 import com.samterminal.backend.repository.UserTokenUsageRepository;
 import com.samterminal.backend.repository.UserLocationUnlockRepository;
 import com.samterminal.backend.service.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,6 +41,18 @@ class LlmPoolServiceTest {
     @Autowired
     private ApiLoadTracker loadTracker;
 
+    @Autowired
+    private ApiLatencyTracker latencyTracker;
+
+    @Autowired
+    private LlmApiRegistry apiRegistry;
+
+    @Autowired
+    private ApiConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private AppProperties appProperties;
+
     @Autowired
     private AppUserRepository userRepository;
 
@@ -83,6 +97,15 @@ class LlmPoolServiceTest {
         userRepository.deleteAll();
     }
 
+    @AfterEach
+    void resetStrategy() {
+        appProperties.getLlm().setRouting(new AppProperties.Routing());
+        appProperties.getLlm().setHedging(new AppProperties.Hedging());
+        appProperties.getLlm().getLimiter().setEnabled(false);
+        appProperties.getLlm().getLimiter().setInitialLimit(new AppProperties.Limiter().getInitialLimit());
+        appProperties.getLlm().getLimiter().setQueueTimeoutMillis(new AppProperties.Limiter().getQueueTimeoutMillis());
+    }
+
     @Test
     void selectsPrimaryByCapacity() {
         LlmApiConfig apiA = apiRepository.save(LlmApiConfig.builder()
@@ -145,4 +168,127 @@ class LlmPoolServiceTest {
         assertThat(updated.getStatus()).isEqualTo(LlmApiStatus.CIRCUIT_OPEN);
         assertThat(updated.getFailureCount()).isGreaterThanOrEqualTo(3);
     }
+
+    @Test
+    void powerOfTwoChoicesAvoidsSlowApi() {
+        LlmApiConfig slow = apiRepository.save(routable("slow"));
+        LlmApiConfig fast = apiRepository.save(routable("fast"));
+        recordLatency(slow, 2000);
+        recordLatency(fast, 100);
+        appProperties.getLlm().getRouting().setStrategy(AppProperties.RoutingStrategy.POWER_OF_TWO_CHOICES);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(llmPoolService.selectApiForNewSession().getId()).isEqualTo(fast.getId());
+        }
+
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("好。", "smile", null, "chat", null, 10, 5));
+        llmPoolService.callWithSession(null, "sys", "user");
+        assertThat(latencyTracker.inFlight(fast.getId())).isZero();
+        assertThat(latencyTracker.latencyMillis(fast.getId())).isLessThan(100);
+    }
+
+    @Test
+    void leastOutstandingPrefersIdleApi() {
+        LlmApiConfig busy = apiRepository.save(routable("busy"));
+        LlmApiConfig idle = apiRepository.save(routable("idle"));
+        recordLatency(busy, 100);
+        recordLatency(idle, 300);
+        appProperties.getLlm().getRouting().setStrategy(AppProperties.RoutingStrategy.LEAST_OUTSTANDING);
+        assertThat(llmPoolService.selectApiForNewSession().getId()).isEqualTo(busy.getId());
+
+        long started = latencyTracker.begin(busy.getId());
+        try {
+            assertThat(llmPoolService.selectApiForNewSession().getId()).isEqualTo(idle.getId());
+        } finally {
+            latencyTracker.end(busy.getId(), started, true);
+        }
+    }
+
+    @Test
+    void hedgedRequestLetsFasterApiWinWhenPrimaryStalls() throws Exception {
+        LlmApiConfig stalled = apiRepository.save(routable("stalled"));
+        LlmApiConfig healthy = apiRepository.save(routable("healthy"));
+        for (int i = 0; i < 20; i++) {
+            recordLatency(stalled, 50);
+        }
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("hedge-user")
+                .role(UserRole.USER)
+                .build());
+        ChatSession session = sessionService.createSession(user);
+        session.setActiveApi(stalled);
+        sessionRepository.save(session);
+
+        appProperties.getLlm().getHedging().setEnabled(true);
+        appProperties.getLlm().getHedging().setMinDelayMillis(100);
+        appProperties.getLlm().getLimiter().setEnabled(true);
+        appProperties.getLlm().getLimiter().setInitialLimit(1);
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString())).thenAnswer(invocation -> {
+            LlmApiConfig api = invocation.getArgument(0);
+            if (api.getId().equals(stalled.getId())) {
+                Thread.sleep(5000);
+                return new LlmService.LlmReply("慢。", "smile", null, "chat", null, 10, 5);
+            }
+            return new LlmService.LlmReply("快。", "smile", null, "chat", null, 10, 5);
+        });
+
+        long started = System.nanoTime();
+        LlmPoolService.LlmCallResult result = llmPoolService.callWithSession(session, "sys", "user");
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertThat(result.reply().content()).isEqualTo("快。");
+        assertThat(result.apiConfig().getId()).isEqualTo(healthy.getId());
+        assertThat(elapsedMillis).isLessThan(2000);
+        assertThat(apiRegistry.find(healthy.getId()).getTokenUsed()).isEqualTo(15L);
+        assertThat(apiRegistry.find(stalled.getId()).getTokenUsed()).isZero();
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (latencyTracker.inFlight(stalled.getId()) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(latencyTracker.inFlight(stalled.getId())).isZero();
+        // Both sides returned their limiter permit, the cancelled loser included.
+        assertThat(concurrencyLimiter.hasCapacity(stalled.getId())).isTrue();
+        assertThat(concurrencyLimiter.hasCapacity(healthy.getId())).isTrue();
+        assertThat(apiRepository.findById(stalled.getId()).orElseThrow().getFailureCount()).isZero();
+    }
+
+    @Test
+    void shedsChatsOnceAdaptiveLimitIsReachedAndQueueTimesOut() {
+        LlmApiConfig api = apiRepository.save(routable("limited"));
+        appProperties.getLlm().getLimiter().setEnabled(true);
+        appProperties.getLlm().getLimiter().setInitialLimit(1);
+        appProperties.getLlm().getLimiter().setQueueTimeoutMillis(200);
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("好。", "smile", null, "chat", null, 10, 5));
+
+        assertThat(concurrencyLimiter.tryAcquire(api.getId())).isTrue();
+        try {
+            assertThatThrownBy(() -> llmPoolService.callWithSession(null, "sys", "user"))
+                    .isInstanceOf(ApiSaturatedException.class);
+        } finally {
+            concurrencyLimiter.abandon(api.getId());
+        }
+
+        assertThat(llmPoolService.callWithSession(null, "sys", "user").apiConfig().getId()).isEqualTo(api.getId());
+        assertThat(concurrencyLimiter.hasCapacity(api.getId())).isTrue();
+    }
+
+    private LlmApiConfig routable(String name) {
+        return LlmApiConfig.builder()
+                .name(name)
+                .baseUrl("https://api.example.com")
+                .modelName("model-" + name)
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(100)
+                .tokenLimit(10000L)
+                .tokenUsed(0L)
+                .build();
+    }
+
+    private void recordLatency(LlmApiConfig api, long millis) {
+        long started = latencyTracker.begin(api.getId());
+        latencyTracker.end(api.getId(), started - millis * 1_000_000L, true);
+    }
 }
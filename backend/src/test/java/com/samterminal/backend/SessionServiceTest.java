@@ -102,7 +102,8 @@ class SessionServiceTest {
         session.setLastActiveAt(Instant.now().minus(40, ChronoUnit.MINUTES));
         sessionRepository.save(session);
 
-        ChatSession refreshed = sessionService.resolveSession(user, session.getSessionId());
+        assertThat(sessionService.findActiveSession(user, session.getSessionId())).isNull();
+        ChatSession refreshed = sessionService.commitSession(user, session.getSessionId(), null, null);
         assertThat(refreshed.getSessionId()).isNotEqualTo(session.getSessionId());
         ChatSession old = sessionRepository.findById(session.getId()).orElseThrow();
         assertThat(old.getStatus()).isEqualTo(ChatSessionStatus.EXPIRED);
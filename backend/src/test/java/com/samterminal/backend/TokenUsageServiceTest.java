@@ -1,14 +1,43 @@
 package com.samterminal.backend;
 
+import com.samterminal.backend.config.AppProperties;
 import com.samterminal.backend.entity.AppUser;
 import com.samterminal.backend.entity.UserRole;
+import com.samterminal.backend.entity.UserTokenLimit;
+import com.samterminal.backend.entity.UserTokenUsage;
 import com.samterminal.backend.repository.AppUserRepository;
+import com.samterminal.backend.repository.SystemSettingRepository;
+import com.samterminal.backend.repository.UserTokenLimitRepository;
+import com.samterminal.backend.repository.UserTokenUsageBucketRepository;
+import com.samterminal.backend.repository.UserTokenUsageRepository;
 import com.samterminal.backend.service.TokenUsageService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 @SpringBootTest
 class TokenUsageServiceTest {
@@ -19,6 +48,27 @@ class TokenUsageServiceTest {
     @Autowired
     private AppUserRepository userRepository;
 
+    @Autowired
+    private UserTokenUsageRepository usageRepository;
+
+    @Autowired
+    private UserTokenUsageBucketRepository bucketRepository;
+
+    @Autowired
+    private UserTokenLimitRepository limitRepository;
+
+    @Autowired
+    private SystemSettingRepository settingRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void restoreGlobalLimit() {
+        // Chat tests in other contexts reserve a full turn against the global limit.
+        tokenUsageService.setGlobalLimit(50000L);
+    }
+
     @Test
     void tracksUsageAndLimits() {
         AppUser user = userRepository.save(AppUser.builder()
@@ -37,4 +87,262 @@ class TokenUsageServiceTest {
         assertThat(tokenUsageService.wouldExceedLimit(user, 10L, 0L)).isFalse();
         assertThat(tokenUsageService.wouldExceedLimit(user, 30L, 0L)).isTrue();
     }
+
+    @Test
+    void concurrentUsageIsCountedInMemoryAndFlushedAsIncrements() throws Exception {
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("striped-user")
+                .role(UserRole.USER)
+                .build());
+        tokenUsageService.recordUsage(user, 5L, 1L);
+        tokenUsageService.flushUsage();
+        assertThat(usageRepository.findByUser(user)).map(UserTokenUsage::getInputTokens).contains(5L);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> tokenUsageService.recordUsage(user, 3L, 1L)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertThat(tokenUsageService.currentWeightedUsage(user)).isEqualTo(tokenUsageService.weightedTokens(605L, 201L));
+        assertThat(usageRepository.findByUser(user)).map(UserTokenUsage::getInputTokens).contains(5L);
+
+        tokenUsageService.flushUsage();
+
+        UserTokenUsage stored = usageRepository.findByUser(user).orElseThrow();
+        assertThat(stored.getInputTokens()).isEqualTo(605L);
+        assertThat(stored.getOutputTokens()).isEqualTo(201L);
+        assertThat(tokenUsageService.pendingUsage(user.getId())).isEqualTo(new TokenUsageService.Usage(0L, 0L));
+        assertThat(tokenUsageService.currentWeightedUsage(user)).isEqualTo(tokenUsageService.weightedTokens(605L, 201L));
+    }
+
+    @Test
+    void failedPlayerFlushKeepsBucketsAndTotalsTogether() {
+        AppUser gone = userRepository.save(AppUser.builder().username("flush-gone").role(UserRole.USER).build());
+        AppUser kept = userRepository.save(AppUser.builder().username("flush-kept").role(UserRole.USER).build());
+        TokenUsageService local = localService(new MutableClock(Instant.parse("2026-03-01T10:00:00Z")), new AppProperties());
+        local.recordUsage(gone, 7L, 1L);
+        local.recordUsage(kept, 9L, 2L);
+        userRepository.delete(gone);
+
+        local.flushUsage();
+
+        assertThat(bucketRepository.findByUserIdAndBucketHourGreaterThanEqual(kept.getId(), 0L)).hasSize(1);
+        assertThat(usageRepository.findByUser(kept)).map(UserTokenUsage::getInputTokens).contains(9L);
+        assertThat(local.pendingUsage(kept.getId())).isEqualTo(new TokenUsageService.Usage(0L, 0L));
+        // The deleted player's bucket insert rolled back with its total, and its counters were dropped.
+        assertThat(bucketRepository.findByUserIdAndBucketHourGreaterThanEqual(gone.getId(), 0L)).isEmpty();
+        assertThat(local.pendingUsage(gone.getId())).isEqualTo(new TokenUsageService.Usage(0L, 0L));
+    }
+
+    @Test
+    void shutdownFlushWaitsForARunningFlush() throws Exception {
+        AppUser user = userRepository.save(AppUser.builder().username("flush-overlap").role(UserRole.USER).build());
+        CountDownLatch scheduledWriting = new CountDownLatch(1);
+        CountDownLatch shutdownDone = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        UserTokenUsageBucketRepository buckets = mock(UserTokenUsageBucketRepository.class, delegatesTo(bucketRepository));
+        doAnswer(invocation -> {
+            if (first.compareAndSet(true, false)) {
+                // Park the scheduled flush before it writes anything; an unguarded shutdown flush would now add the same pending usage.
+                scheduledWriting.countDown();
+                shutdownDone.await(1, TimeUnit.SECONDS);
+            }
+            return bucketRepository.addUsage(invocation.getArgument(0), invocation.getArgument(1),
+                    invocation.getArgument(2), invocation.getArgument(3));
+        }).when(buckets).addUsage(anyLong(), anyLong(), anyLong(), anyLong());
+        TokenUsageService local = new TokenUsageService(usageRepository, buckets, limitRepository, settingRepository,
+                userRepository, transactionManager, new MutableClock(Instant.parse("2026-03-01T10:00:00Z")), new AppProperties());
+        local.recordUsage(user, 7L, 3L);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> scheduled = executor.submit(local::flushUsage);
+            scheduledWriting.await();
+            Future<?> shutdown = executor.submit(() -> {
+                local.destroy();
+                shutdownDone.countDown();
+            });
+            scheduled.get();
+            shutdown.get();
+        }
+
+        UserTokenUsage stored = usageRepository.findByUser(user).orElseThrow();
+        assertThat(stored.getInputTokens()).isEqualTo(7L);
+        assertThat(stored.getOutputTokens()).isEqualTo(3L);
+    }
+
+    @Test
+    void idlePlayersLeaveMemoryOnceTheWindowPasses() {
+        AppUser user = userRepository.save(AppUser.builder().username("idle-user").role(UserRole.USER).build());
+        MutableClock clock = new MutableClock(Instant.parse("2026-03-01T10:00:00Z"));
+        AppProperties properties = new AppProperties();
+        properties.getQuota().setWindow(AppProperties.QuotaWindow.ROLLING);
+        properties.getQuota().setRollingHours(1);
+        TokenUsageService local = localService(clock, properties);
+
+        local.recordUsage(user, 4L, 1L);
+        assertThat(local.getCustomLimit(user)).isNull();
+        local.flushUsage();
+        assertThat(local.trackedPlayers()).isEqualTo(1);
+
+        clock.advance(Duration.ofHours(2));
+        local.flushUsage();
+        assertThat(local.trackedPlayers()).isZero();
+        // Written behind the service's back: only a dropped cache entry picks it up.
+        limitRepository.save(UserTokenLimit.builder().user(user).customLimit(77L).build());
+        assertThat(local.getCustomLimit(user)).isEqualTo(77L);
+
+        local.recordUsage(user, 6L, 0L);
+        assertThat(local.currentWeightedUsage(user)).isEqualTo(6L);
+        local.flushUsage();
+        assertThat(usageRepository.findByUser(user)).map(UserTokenUsage::getInputTokens).contains(10L);
+    }
+
+    @Test
+    void cachedLimitsFollowUpdates() {
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("limit-user")
+                .role(UserRole.USER)
+                .build());
+        tokenUsageService.setGlobalLimit(300L);
+        assertThat(tokenUsageService.resolveLimit(user)).isEqualTo(300L);
+
+        tokenUsageService.setGlobalLimit(400L);
+        assertThat(tokenUsageService.resolveLimit(user)).isEqualTo(400L);
+
+        tokenUsageService.setUserLimit(user, 70L);
+        assertThat(tokenUsageService.resolveLimit(user)).isEqualTo(70L);
+
+        tokenUsageService.setUserLimit(user, null);
+        assertThat(tokenUsageService.resolveLimit(user)).isEqualTo(400L);
+    }
+
+    @Test
+    void concurrentReservationsNeverOvershootTheLimit() throws Exception {
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("reserving-user")
+                .role(UserRole.USER)
+                .build());
+        long cost = tokenUsageService.weightedTokens(100L, 50L);
+        tokenUsageService.setUserLimit(user, cost * 3 + cost / 2);
+
+        List<TokenUsageService.Reservation> granted = new ArrayList<>();
+        AtomicInteger rejected = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<TokenUsageService.Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(executor.submit(() -> tokenUsageService.reserve(user, 100L, 50L)));
+            }
+            for (Future<TokenUsageService.Reservation> future : futures) {
+                TokenUsageService.Reservation reservation = future.get();
+                if (reservation != null) {
+                    granted.add(reservation);
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+        }
+        assertThat(granted).hasSize(3);
+        assertThat(rejected).hasValue(47);
+        assertThat(tokenUsageService.reservedWeightedTokens(user)).isEqualTo(cost * 3);
+
+        tokenUsageService.settle(granted.get(0), 40L, 10L);
+        granted.get(0).release();
+        granted.get(1).release();
+
+        assertThat(tokenUsageService.reservedWeightedTokens(user)).isEqualTo(cost);
+        assertThat(tokenUsageService.currentWeightedUsage(user)).isEqualTo(tokenUsageService.weightedTokens(40L, 10L));
+        assertThat(tokenUsageService.reserve(user, 100L, 50L)).isNotNull();
+        assertThat(tokenUsageService.reserve(user, 100L, 50L)).isNotNull();
+        assertThat(tokenUsageService.reserve(user, 100L, 50L)).isNull();
+    }
+
+    @Test
+    void rollingWindowDropsOldHoursButKeepsThemInTheHistory() {
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("rolling-user")
+                .role(UserRole.USER)
+                .build());
+        AppProperties properties = new AppProperties();
+        properties.getQuota().setWindow(AppProperties.QuotaWindow.ROLLING);
+        properties.getQuota().setRollingHours(2);
+        MutableClock clock = new MutableClock(Instant.parse("2026-03-01T10:15:00Z"));
+        TokenUsageService local = localService(clock, properties);
+
+        local.recordUsage(user, 10L, 1L);
+        clock.advance(Duration.ofHours(1));
+        local.recordUsage(user, 20L, 2L);
+        assertThat(local.currentWeightedUsage(user)).isEqualTo(local.weightedTokens(30L, 3L));
+
+        local.flushUsage();
+        assertThat(bucketRepository.findByUserIdAndBucketHourGreaterThanEqual(user.getId(), 0L)).hasSize(2);
+        assertThat(usageRepository.findByUser(user)).map(UserTokenUsage::getInputTokens).contains(30L);
+
+        clock.advance(Duration.ofHours(1));
+        assertThat(local.currentWeightedUsage(user)).isEqualTo(local.weightedTokens(20L, 2L));
+        // A restarted instance reads back only the stored hours still inside the window.
+        assertThat(localService(clock, properties).currentWeightedUsage(user)).isEqualTo(local.weightedTokens(20L, 2L));
+
+        clock.advance(Duration.ofHours(1));
+        assertThat(local.currentWeightedUsage(user)).isZero();
+        assertThat(local.recentUsage(List.of(user.getId()), 1).get(user.getId())).containsExactly(
+                new TokenUsageService.DailyUsage(LocalDate.of(2026, 3, 1), 30L, 3L));
+    }
+
+    @Test
+    void dailyWindowStartsOverAtMidnight() {
+        AppUser user = userRepository.save(AppUser.builder()
+                .username("daily-user")
+                .role(UserRole.USER)
+                .build());
+        MutableClock clock = new MutableClock(Instant.parse("2026-03-01T23:30:00Z"));
+        TokenUsageService local = localService(clock, new AppProperties());
+        local.setUserLimit(user, local.weightedTokens(100L, 10L));
+
+        local.recordUsage(user, 100L, 10L);
+        assertThat(local.reserve(user, 1L, 0L)).isNull();
+
+        clock.advance(Duration.ofMinutes(45));
+        assertThat(local.currentWeightedUsage(user)).isZero();
+        assertThat(local.reserve(user, 1L, 0L)).isNotNull();
+        local.flushUsage();
+        assertThat(local.recentUsage(List.of(user.getId()), 2).get(user.getId())).containsExactly(
+                new TokenUsageService.DailyUsage(LocalDate.of(2026, 3, 1), 100L, 10L),
+                new TokenUsageService.DailyUsage(LocalDate.of(2026, 3, 2), 0L, 0L));
+    }
+
+    private TokenUsageService localService(Clock clock, AppProperties properties) {
+        return new TokenUsageService(usageRepository, bucketRepository, limitRepository, settingRepository,
+                userRepository, transactionManager, clock, properties);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.dto.UserUsageDto;
+import com.samterminal.backend.dto.UserUsageResponse;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.UserRole;
+import com.samterminal.backend.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class AdminUsageReportTest {
+
+    @Autowired
+    private AdminService adminService;
+
+    @Autowired
+    private TokenUsageService tokenUsageService;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        userRepository.deleteAll();
+        tokenUsageService.setGlobalLimit(1000L);
+    }
+
+    @AfterEach
+    void restoreGlobalLimit() {
+        tokenUsageService.setGlobalLimit(50000L);
+    }
+
+    @Test
+    void pagesAndSortsByWeightedUsageInTheDatabase() {
+        AppUser light = player("report-light");
+        AppUser heavy = player("report-heavy");
+        AppUser idle = player("report-idle");
+        player("someone-else");
+        tokenUsageService.recordUsage(light, 100L, 0L);
+        tokenUsageService.recordUsage(heavy, 10L, 20L);
+        tokenUsageService.flushUsage();
+        // Not written yet: the report adds it on top of the stored row.
+        tokenUsageService.recordUsage(light, 5L, 0L);
+        tokenUsageService.setUserLimit(heavy, 300L);
+
+        UserUsageResponse first = adminService.listUserUsage(0, 2, "usage", Sort.Direction.DESC, "Report");
+
+        assertThat(first.getTotal()).isEqualTo(3);
+        assertThat(first.getUsers()).extracting(UserUsageDto::getUsername).containsExactly("report-heavy", "report-light");
+        UserUsageDto top = first.getUsers().getFirst();
+        assertThat(top.getInputTokens()).isEqualTo(10L);
+        assertThat(top.getOutputTokens()).isEqualTo(20L);
+        assertThat(top.getCustomLimit()).isEqualTo(300L);
+        assertThat(top.getHistory()).isNotEmpty();
+        assertThat(first.getUsers().get(1).getTotalInputTokens()).isEqualTo(105L);
+
+        UserUsageResponse second = adminService.listUserUsage(1, 2, "usage", Sort.Direction.DESC, "report");
+        assertThat(second.getUsers()).extracting(UserUsageDto::getUsername).containsExactly(idle.getUsername());
+        assertThat(second.getUsers().getFirst().getInputTokens()).isZero();
+        assertThat(second.getUsers().getFirst().getHistory()).isEmpty();
+    }
+
+    @Test
+    void exportsTheWholeReportAsCsv() throws Exception {
+        AppUser quoted = player("csv,user");
+        player("csv-idle");
+        tokenUsageService.recordUsage(quoted, 3L, 1L);
+        tokenUsageService.flushUsage();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        adminService.exportUserUsageCsv(out, "username", Sort.Direction.ASC, "csv");
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).startsWith("﻿id,username,");
+        assertThat(lines.get(1)).isEqualTo(quoted.getId() + ",\"csv,user\",3,1,11,3,1,11,,1000");
+        assertThat(lines.get(2)).endsWith(",csv-idle,0,0,0,0,0,0,,1000");
+    }
+
+    @Test
+    void searchesLiterallyAndDefusesFormulasInTheCsv() throws Exception {
+        AppUser formula = player("=cmd_1");
+        player("xcmdx1");
+
+        assertThat(adminService.listUserUsage(0, 10, "username", Sort.Direction.ASC, "cmd_").getUsers())
+                .extracting(UserUsageDto::getUsername).containsExactly("=cmd_1");
+        assertThat(adminService.listUserUsage(0, 10, "username", Sort.Direction.ASC, "%").getUsers()).isEmpty();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        adminService.exportUserUsageCsv(out, "username", Sort.Direction.ASC, "cmd_");
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(1)).startsWith(formula.getId() + ",'=cmd_1,");
+    }
+
+    private AppUser player(String username) {
+        return userRepository.save(AppUser.builder().username(username).role(UserRole.USER).build());
+    }
+}
@@ -0,0 +1,73 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiConcurrencyLimiterTest {
+
+    private ApiConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setup() {
+        AppProperties properties = new AppProperties();
+        AppProperties.Limiter settings = properties.getLlm().getLimiter();
+        settings.setEnabled(true);
+        settings.setInitialLimit(4);
+        settings.setMinLimit(1);
+        settings.setMaxLimit(8);
+        settings.setBackoffRatio(0.5);
+        settings.setLatencyTolerance(2.0);
+        limiter = new ApiConcurrencyLimiter(properties);
+    }
+
+    @Test
+    void rejectsBeyondCurrentLimitUntilReleased() {
+        for (int i = 0; i < 4; i++) {
+            assertThat(limiter.tryAcquire(1L)).isTrue();
+        }
+        assertThat(limiter.tryAcquire(1L)).isFalse();
+        assertThat(limiter.hasCapacity(1L)).isFalse();
+        assertThat(limiter.tryAcquire(2L)).isTrue();
+
+        limiter.abandon(1L);
+
+        assertThat(limiter.currentLimit(1L)).isEqualTo(4);
+        assertThat(limiter.tryAcquire(1L)).isTrue();
+    }
+
+    @Test
+    void backsOffOnErrorsAndSlowRepliesThenGrowsBack() {
+        acquireAndRelease(100, true);
+        assertThat(limiter.currentLimit(1L)).isEqualTo(4);
+
+        acquireAndRelease(100, false);
+        assertThat(limiter.currentLimit(1L)).isEqualTo(2);
+
+        acquireAndRelease(1000, true);
+        assertThat(limiter.currentLimit(1L)).isEqualTo(1);
+
+        for (int i = 0; i < 20; i++) {
+            acquireAndRelease(100, true);
+        }
+        assertThat(limiter.currentLimit(1L)).isGreaterThan(1);
+    }
+
+    @Test
+    void disabledLimiterNeverRejects() {
+        AppProperties properties = new AppProperties();
+        ApiConcurrencyLimiter disabled = new ApiConcurrencyLimiter(properties);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(disabled.tryAcquire(1L)).isTrue();
+        }
+        assertThat(disabled.currentLimit(1L)).isNull();
+    }
+
+    private void acquireAndRelease(double elapsedMillis, boolean success) {
+        assertThat(limiter.tryAcquire(1L)).isTrue();
+        limiter.release(1L, elapsedMillis, success);
+    }
+}
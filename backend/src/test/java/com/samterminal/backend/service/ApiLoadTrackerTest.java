@@ -0,0 +1,101 @@
+package com.samterminal.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiLoadTrackerTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00.250Z"));
+    private final ApiLoadTracker tracker = new ApiLoadTracker(clock);
+
+    @Test
+    void countsCallsInsideThirtySecondWindow() {
+        tracker.recordCall(1L);
+        tracker.recordCall(1L);
+        clock.advance(Duration.ofSeconds(10));
+        tracker.recordCall(1L);
+        tracker.recordCall(2L);
+
+        assertThat(tracker.currentLoad(1L)).isEqualTo(3);
+        assertThat(tracker.currentLoad(2L)).isEqualTo(1);
+        assertThat(tracker.currentLoad(3L)).isZero();
+
+        clock.advance(Duration.ofSeconds(20));
+        assertThat(tracker.currentLoad(1L)).isEqualTo(1);
+
+        clock.advance(Duration.ofSeconds(10));
+        assertThat(tracker.currentLoad(1L)).isZero();
+    }
+
+    @Test
+    void reusesSlotsOnceTheRingWrapsAround() {
+        tracker.recordCall(1L);
+        clock.advance(Duration.ofSeconds(32));
+        tracker.recordCall(1L);
+        tracker.recordCall(1L);
+
+        assertThat(tracker.currentLoad(1L)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentRecordsAreNotLost() throws Exception {
+        int threads = 16;
+        int perThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        tracker.recordCall(7L);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(tracker.currentLoad(7L)).isEqualTo(threads * perThread);
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
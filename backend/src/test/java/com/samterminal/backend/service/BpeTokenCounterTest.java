@@ -0,0 +1,134 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BpeTokenCounterTest {
+
+    private static final String[] MERGES = {"he", "ll", "hell", "hello"};
+
+    @Test
+    void splitsTextLikeTheCl100kPattern() {
+        assertThat(pieces("Hello world's 12345 \n\n  foo!!\n"))
+                .containsExactly("Hello", " world", "'s", " ", "123", "45", " \n\n", " ", " foo", "!!\n");
+        assertThat(pieces("你好，世界。\n流萤")).containsExactly("你好", "，世界", "。\n", "流萤");
+        assertThat(pieces("I'LL go  ")).containsExactly("I", "'LL", " go", "  ");
+    }
+
+    @Test
+    void mergesLowestRankFirstAndFallsBackToBytes() {
+        BpeTokenCounter counter = new BpeTokenCounter(vocabulary(), ranks(), 16);
+
+        assertThat(counter.countTokens("hello")).isEqualTo(1);
+        assertThat(counter.countTokens("hellos")).isEqualTo(2);
+        assertThat(counter.countTokens("yellow")).isEqualTo(5);
+        assertThat(counter.countTokens("hello hello")).isEqualTo(3);
+        assertThat(counter.countTokens("你")).isEqualTo(3);
+        // Single pieces longer than the linear-merge limit.
+        assertThat(counter.countTokens("hello".repeat(10))).isEqualTo(10);
+        assertThat(counter.countTokens("yellow".repeat(5))).isEqualTo(25);
+        assertThat(counter.countTokens("")).isZero();
+    }
+
+    @Test
+    void cachedCountsMatchFreshCounts() {
+        BpeTokenCounter counter = new BpeTokenCounter(vocabulary(), ranks(), 1);
+        String prompt = "hello ".repeat(BpeTokenCounter.MIN_CACHED_LENGTH);
+
+        long first = counter.countTokens(prompt);
+        assertThat(counter.countTokens(prompt)).isEqualTo(first).isEqualTo(2L * BpeTokenCounter.MIN_CACHED_LENGTH);
+        counter.countTokens("yellow ".repeat(BpeTokenCounter.MIN_CACHED_LENGTH));
+        assertThat(counter.countTokens(prompt)).isEqualTo(first);
+    }
+
+    @Test
+    void loadsTiktokenRankFiles() throws Exception {
+        BpeTokenCounter counter = BpeTokenCounter.load(new ByteArrayInputStream(tiktoken()), 16);
+
+        assertThat(counter.vocabularySize()).isEqualTo(256 + MERGES.length);
+        assertThat(counter.countTokens("hellos")).isEqualTo(2);
+    }
+
+    @Test
+    void selectsCounterByLongestModelPrefix(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("test.tiktoken");
+        Files.write(file, tiktoken());
+        AppProperties properties = new AppProperties();
+        AppProperties.Tokenizer settings = properties.getLlm().getTokenizer();
+        settings.setVocabulary(file.toUri().toString());
+        settings.setDefaultType(AppProperties.TokenizerType.HEURISTIC);
+        settings.getModels().put("gpt-4", AppProperties.TokenizerType.BPE);
+        settings.getModels().put("gpt-4-vision", AppProperties.TokenizerType.HEURISTIC);
+        TokenCounterRegistry registry = new TokenCounterRegistry(properties, new DefaultResourceLoader());
+        registry.loadVocabulary();
+
+        assertThat(registry.isBpeAvailable()).isTrue();
+        assertThat(registry.forModel("GPT-4o-mini")).isInstanceOf(BpeTokenCounter.class);
+        assertThat(registry.forModel("gpt-4-vision-preview")).isSameAs(TokenCounter.HEURISTIC);
+        assertThat(registry.forModel("deepseek-chat")).isSameAs(TokenCounter.HEURISTIC);
+        assertThat(registry.forModel(null)).isSameAs(registry.defaultCounter());
+    }
+
+    @Test
+    void fallsBackToHeuristicWithoutVocabulary() {
+        AppProperties properties = new AppProperties();
+        properties.getLlm().getTokenizer().setVocabulary("classpath:tokenizer/missing.tiktoken");
+        TokenCounterRegistry registry = new TokenCounterRegistry(properties, new DefaultResourceLoader());
+        registry.loadVocabulary();
+
+        assertThat(registry.isBpeAvailable()).isFalse();
+        assertThat(registry.defaultCounter()).isSameAs(TokenCounter.HEURISTIC);
+        assertThat(registry.forModel("gpt-4o")).isSameAs(TokenCounter.HEURISTIC);
+    }
+
+    private static List<String> pieces(String text) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = BpeTokenCounter.nextPiece(text, start);
+            pieces.add(text.substring(start, end));
+            start = end;
+        }
+        return pieces;
+    }
+
+    private static List<byte[]> vocabulary() {
+        List<byte[]> tokens = new ArrayList<>();
+        for (int b = 0; b < 256; b++) {
+            tokens.add(new byte[]{(byte) b});
+        }
+        for (String merge : MERGES) {
+            tokens.add(merge.getBytes(StandardCharsets.UTF_8));
+        }
+        return tokens;
+    }
+
+    private static int[] ranks() {
+        int[] ranks = new int[256 + MERGES.length];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = i;
+        }
+        return ranks;
+    }
+
+    private static byte[] tiktoken() {
+        StringBuilder file = new StringBuilder();
+        List<byte[]> tokens = vocabulary();
+        for (int i = 0; i < tokens.size(); i++) {
+            file.append(Base64.getEncoder().encodeToString(tokens.get(i))).append(' ').append(i).append('\n');
+        }
+        return file.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,143 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.LlmApiConfig;
+import com.samterminal.backend.entity.LlmApiRole;
+import com.samterminal.backend.entity.LlmApiStatus;
+import com.samterminal.backend.repository.*;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChatConcurrencyLoadTest {
+
+    private static final int CONCURRENT_CHATS = 40;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("slow")
+                .baseUrl("https://api.example.com")
+                .modelName("slow-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(CONCURRENT_CHATS * 2)
+                .tokenUsed(0L)
+                .build());
+    }
+
+    @Test
+    void slowModelCallsDoNotQueueBehindConnectionPool() throws Exception {
+        int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        assertThat(CONCURRENT_CHATS).isGreaterThan(poolSize);
+
+        // Every model call parks until all chats are in flight at once; with a connection held across
+        // the call only poolSize of them could ever get here.
+        CountDownLatch allInFlight = new CountDownLatch(CONCURRENT_CHATS);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            allInFlight.countDown();
+            allInFlight.await(10, TimeUnit.SECONDS);
+            inFlight.decrementAndGet();
+            return new LlmService.LlmReply("嗯，我在。", "smile", null, "chat", null, 20, 10);
+        });
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_CHATS; i++) {
+            String token = jwtService.generateToken("load-user-" + i, Map.of("role", "USER"));
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/game/chat"))
+                    .header("Authorization", "Bearer " + token)
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"message\":\"你好\"}"))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> result = response.get(30, TimeUnit.SECONDS);
+            assertThat(result.statusCode()).isEqualTo(200);
+            assertThat(result.body()).contains("嗯，我在。");
+        }
+        assertThat(peak.get()).isEqualTo(CONCURRENT_CHATS);
+        assertThat(chatMessageRepository.count()).isEqualTo(CONCURRENT_CHATS * 2L);
+    }
+}
@@ -0,0 +1,151 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.dto.ChatResponse;
+import com.samterminal.backend.entity.*;
+import com.samterminal.backend.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "app.chat.message-persistence=write-behind",
+        "app.chat.message-batch-size=4",
+        "app.chat.message-flush-interval-millis=3600000"
+})
+class ChatMessageWriterTest {
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private ChatMessageWriter writer;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("writer")
+                .baseUrl("https://api.example.com")
+                .modelName("writer-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenUsed(0L)
+                .build());
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("我在听。", "smile", null, "chat", null, 20, 10));
+    }
+
+    @Test
+    void turnsAreBufferedAndWrittenOnceABatchFills() throws InterruptedException {
+        ChatResponse first = gameService.handleChat("buffered", "你好", null);
+
+        assertThat(writer.pendingCount()).isEqualTo(2);
+        assertThat(chatMessageRepository.count()).isZero();
+
+        ChatResponse second = gameService.handleChat("buffered", "还在吗", null);
+
+        waitFor(() -> chatMessageRepository.count() == 4);
+        assertThat(writer.pendingCount()).isZero();
+        List<ChatMessage> written = chatMessageRepository.findAll();
+        assertThat(written).hasSize(4);
+        assertThat(written).extracting(message -> String.valueOf(message.getId()))
+                .contains(first.getMessages().getFirst().getId(), second.getMessages().getFirst().getId());
+        assertThat(written).extracting(ChatMessage::getId).doesNotHaveDuplicates();
+        assertThat(Long.parseLong(second.getMessages().getFirst().getId()))
+                .isGreaterThan(Long.parseLong(first.getMessages().getFirst().getId()));
+    }
+
+    @Test
+    void rolledBackTurnNeverReachesTheBuffer() {
+        gameService.getState("rolled-back");
+        AppUser user = userRepository.findByUsername("rolled-back").orElseThrow();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            writer.append(List.of(ChatMessage.builder().user(user).sender("user").content("丢弃")
+                    .timestamp(Instant.now()).build()));
+            status.setRollbackOnly();
+        });
+        writer.flush();
+
+        assertThat(writer.pendingCount()).isZero();
+        assertThat(chatMessageRepository.count()).isZero();
+    }
+
+    @Test
+    void flushWritesWhatIsLeftInTheBuffer() {
+        ChatResponse response = gameService.handleChat("flushed", "你好", null);
+
+        writer.flush();
+
+        assertThat(writer.pendingCount()).isZero();
+        assertThat(chatMessageRepository.findAll()).extracting(ChatMessage::getContent)
+                .containsExactlyInAnyOrder("你好", response.getMessages().getFirst().getContent());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,246 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.dto.ChatResponse;
+import com.samterminal.backend.entity.GameState;
+import com.samterminal.backend.entity.LlmApiConfig;
+import com.samterminal.backend.entity.LlmApiRole;
+import com.samterminal.backend.entity.LlmApiStatus;
+import com.samterminal.backend.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class ChatTransactionPhaseTest {
+
+    private static final ConnectionHoldTracker TRACKER = new ConnectionHoldTracker();
+
+    @TestConfiguration
+    static class TrackingDataSourceConfig {
+        @Bean
+        static BeanPostProcessor connectionHoldTracking() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource && !(bean instanceof TrackingDataSource)
+                            ? new TrackingDataSource(dataSource)
+                            : bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("phase")
+                .baseUrl("https://api.example.com")
+                .modelName("phase-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenUsed(0L)
+                .build());
+    }
+
+    @Test
+    void noConnectionIsHeldWhileModelIsCalled() {
+        gameService.getState("phase-user");
+        AtomicInteger openDuringCall = new AtomicInteger(-1);
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString())).thenAnswer(invocation -> {
+            openDuringCall.set(TRACKER.open.get());
+            return new LlmService.LlmReply("我在听。", "smile", null, "chat", null, 20, 10);
+        });
+
+        ChatResponse response = gameService.handleChat("phase-user", "你好", null);
+
+        assertThat(response.getMessages()).extracting("content").containsExactly("我在听。");
+        assertThat(openDuringCall.get()).isZero();
+    }
+
+    @Test
+    void connectionHoldTimeDoesNotScaleWithModelLatency() throws Exception {
+        long fastHold = maxHoldForRound(50, "fast");
+        long slowHold = maxHoldForRound(1500, "slow");
+
+        assertThat(slowHold).isLessThan(TimeUnit.MILLISECONDS.toNanos(750));
+        assertThat(slowHold).isLessThan(fastHold + TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void concurrentTurnsForOnePlayerBothCommit() throws Exception {
+        gameService.getState("busy-user");
+        GameState before = stateRepository.findAll().getFirst();
+        CountDownLatch bothInFlight = new CountDownLatch(2);
+        AtomicInteger calls = new AtomicInteger();
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString())).thenAnswer(invocation -> {
+            String emotion = calls.getAndIncrement() == 0 ? "excited" : "shy";
+            bothInFlight.countDown();
+            bothInFlight.await(5, TimeUnit.SECONDS);
+            return new LlmService.LlmReply("一起走吧。", emotion, null, "chat", null, 20, 10);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<String> emotions = new ArrayList<>();
+        try {
+            Future<ChatResponse> first = executor.submit(() -> gameService.handleChat("busy-user", "第一句", null));
+            Future<ChatResponse> second = executor.submit(() -> gameService.handleChat("busy-user", "第二句", null));
+            emotions.add(first.get(20, TimeUnit.SECONDS).getDelta().getFireflyEmotion());
+            emotions.add(second.get(20, TimeUnit.SECONDS).getDelta().getFireflyEmotion());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(emotions).containsExactlyInAnyOrder("excited", "shy");
+        GameState after = stateRepository.findById(before.getId()).orElseThrow();
+        assertThat(after.getVersion()).isEqualTo(before.getVersion() + 2);
+        assertThat(after.getRevision()).isEqualTo(before.getRevision() + 2);
+        assertThat(chatMessageRepository.count()).isEqualTo(4);
+    }
+
+    private long maxHoldForRound(long latencyMillis, String prefix) throws Exception {
+        int players = 8;
+        for (int i = 0; i < players; i++) {
+            gameService.getState(prefix + "-" + i);
+        }
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString())).thenAnswer(invocation -> {
+            Thread.sleep(latencyMillis);
+            return new LlmService.LlmReply("嗯。", "smile", null, "chat", null, 20, 10);
+        });
+        TRACKER.reset();
+        ExecutorService executor = Executors.newFixedThreadPool(players);
+        try {
+            List<Future<ChatResponse>> results = new ArrayList<>();
+            for (int i = 0; i < players; i++) {
+                String username = prefix + "-" + i;
+                results.add(executor.submit(() -> gameService.handleChat(username, "在吗", null)));
+            }
+            for (Future<ChatResponse> result : results) {
+                assertThat(result.get(30, TimeUnit.SECONDS).getMessages()).isNotEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return TRACKER.maxHoldNanos.get();
+    }
+
+    static class ConnectionHoldTracker {
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicLong maxHoldNanos = new AtomicLong();
+
+        void reset() {
+            maxHoldNanos.set(0);
+        }
+
+        void released(long heldNanos) {
+            open.decrementAndGet();
+            maxHoldNanos.accumulateAndGet(heldNanos, Math::max);
+        }
+    }
+
+    static class TrackingDataSource extends DelegatingDataSource {
+        TrackingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return track(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return track(super.getConnection(username, password));
+        }
+
+        private Connection track(Connection target) {
+            long acquiredAt = System.nanoTime();
+            AtomicBoolean closed = new AtomicBoolean(false);
+            TRACKER.open.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                            TRACKER.released(System.nanoTime() - acquiredAt);
+                        }
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class ChromaMemoryBackendTest {
+    private static final String COLLECTIONS = "http://chroma/api/v1/collections";
+
+    private MockRestServiceServer server;
+    private ChromaMemoryBackend backend;
+
+    @BeforeEach
+    void setup() {
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+        backend = new ChromaMemoryBackend(new ObjectMapper(), restTemplate, "http://chroma");
+    }
+
+    @Test
+    void upsertTagsVectorsWithOwnerAndQueryFiltersOnIt() throws Exception {
+        server.expect(requestTo(COLLECTIONS))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[{\"name\":\"sam_memories_v3\",\"id\":\"c1\"}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(COLLECTIONS + "/c1/upsert"))
+                .andExpect(jsonPath("$.ids[0]").value("mem-5"))
+                .andExpect(jsonPath("$.metadatas[0].user_id").value(42))
+                .andRespond(withSuccess());
+        server.expect(requestTo(COLLECTIONS + "/c1/query"))
+                .andExpect(jsonPath("$.where.user_id").value(42))
+                .andExpect(jsonPath("$.n_results").value(3))
+                .andRespond(withSuccess("{\"ids\":[[\"mem-5\"]]}", MediaType.APPLICATION_JSON));
+
+        Memory memory = Memory.builder().id(5L).user(AppUser.builder().id(42L).build()).content("约定").build();
+        backend.upsert(List.of(memory), List.of(new float[]{1f, 0f}));
+        List<Long> ids = backend.search(42L, new float[]{1f, 0f}, 3);
+
+        server.verify();
+        assertThat(ids).containsExactly(5L);
+        assertThat(backend.needsRebuild()).isFalse();
+    }
+
+    @Test
+    void newCollectionRequestsRebuild() {
+        server.expect(requestTo(COLLECTIONS))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[{\"name\":\"sam_memories\",\"id\":\"old\"}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(COLLECTIONS))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(jsonPath("$.name").value("sam_memories_v3"))
+                .andRespond(withSuccess("{\"id\":\"c2\"}", MediaType.APPLICATION_JSON));
+
+        assertThat(backend.needsRebuild()).isTrue();
+        server.verify();
+    }
+}
@@ -0,0 +1,93 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedMemoryBackendTest {
+    private static final int DIM = 4;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void searchesWithinUserPartitionBestMatchFirst() {
+        EmbeddedMemoryBackend backend = new EmbeddedMemoryBackend(dir.resolve("index.bin"), DIM);
+        backend.upsert(List.of(memory(1L, 7L), memory(2L, 7L), memory(3L, 7L), memory(4L, 8L)), List.of(
+                new float[]{1, 0, 0, 0},
+                new float[]{1, 1, 0, 0},
+                new float[]{0, 0, 1, 0},
+                new float[]{1, 0, 0, 0}));
+
+        assertThat(backend.search(7L, new float[]{2, 0, 0, 0}, 5)).containsExactly(1L, 2L);
+        assertThat(backend.search(7L, new float[]{1, 0, 0, 0}, 1)).containsExactly(1L);
+        assertThat(backend.search(8L, new float[]{1, 0, 0, 0}, 5)).containsExactly(4L);
+        assertThat(backend.search(9L, new float[]{1, 0, 0, 0}, 5)).isEmpty();
+    }
+
+    @Test
+    void updatesAndRemovesKeepPartitionsConsistent() {
+        EmbeddedMemoryBackend backend = new EmbeddedMemoryBackend(dir.resolve("index.bin"), DIM);
+        backend.upsert(List.of(memory(1L, 7L), memory(2L, 7L), memory(3L, 7L)), List.of(
+                new float[]{1, 0, 0, 0},
+                new float[]{0, 1, 0, 0},
+                new float[]{0, 0, 1, 0}));
+
+        backend.remove(Set.of(1L));
+        backend.upsert(List.of(memory(3L, 8L)), List.of(new float[]{0, 0, 1, 0}));
+
+        assertThat(backend.size()).isEqualTo(2);
+        assertThat(backend.search(7L, new float[]{1, 1, 1, 0}, 5)).containsExactly(2L);
+        assertThat(backend.search(8L, new float[]{0, 0, 1, 0}, 5)).containsExactly(3L);
+    }
+
+    @Test
+    void reloadsFlushedIndexAndRequestsRebuildWithoutUsableFile() throws Exception {
+        Path file = dir.resolve("index.bin");
+        EmbeddedMemoryBackend backend = new EmbeddedMemoryBackend(file, DIM);
+        assertThat(backend.needsRebuild()).isTrue();
+        backend.upsert(List.of(memory(1L, 7L), memory(2L, 7L)), List.of(
+                new float[]{1, 0, 0, 0},
+                new float[]{0, 1, 0, 0}));
+        backend.flush();
+
+        EmbeddedMemoryBackend reloaded = new EmbeddedMemoryBackend(file, DIM);
+        assertThat(reloaded.needsRebuild()).isFalse();
+        assertThat(reloaded.search(7L, new float[]{0, 1, 0, 0}, 1)).containsExactly(2L);
+
+        assertThat(new EmbeddedMemoryBackend(file, DIM + 1).needsRebuild()).isTrue();
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThat(new EmbeddedMemoryBackend(file, DIM).needsRebuild()).isTrue();
+    }
+
+    @Test
+    void resultsStayScopedAndSizedPerUserAsUsersGrow() {
+        EmbeddedMemoryBackend backend = new EmbeddedMemoryBackend(dir.resolve("index.bin"), DIM);
+        long nextId = 1;
+        for (int users : new int[]{1, 10, 200}) {
+            while (backend.size() < users * 10) {
+                long userId = (nextId - 1) / 10 + 1;
+                backend.upsert(List.of(memory(nextId, userId)), List.of(new float[]{1, nextId % 3, 0, 1}));
+                nextId++;
+            }
+            for (long userId = 1; userId <= users; userId++) {
+                List<Long> ids = backend.search(userId, new float[]{1, 1, 0, 1}, 3);
+                assertThat(ids).hasSize(3);
+                long owner = userId;
+                assertThat(ids).allSatisfy(id -> assertThat((id - 1) / 10 + 1).isEqualTo(owner));
+            }
+        }
+    }
+
+    private Memory memory(Long id, Long userId) {
+        return Memory.builder().id(id).user(AppUser.builder().id(userId).build()).build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.samterminal.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EmbeddingEngineTest {
+
+    @Test
+    void chineseQueryPrefersMemorySharingBigrams() {
+        float[] query = EmbeddingEngine.embed("空间站的权限卡在哪里");
+        float[] related = EmbeddingEngine.embed("三月七把权限卡交给了开拓者，约定在空间站见面");
+        float[] unrelated = EmbeddingEngine.embed("今晚的晚饭是番茄炒蛋");
+
+        assertThat(cosine(query, related)).isGreaterThan(cosine(query, unrelated) + 0.2f);
+    }
+
+    @Test
+    void englishTrigramsTolerateInflections() {
+        float[] query = EmbeddingEngine.embed("signals");
+        float[] inflected = EmbeddingEngine.embed("The signal arrives at 22:00");
+        float[] unrelated = EmbeddingEngine.embed("Breakfast was eggs");
+
+        assertThat(cosine(query, inflected)).isGreaterThan(cosine(query, unrelated));
+        assertThat(cosine(query, inflected)).isGreaterThan(0.2f);
+    }
+
+    @Test
+    void embeddingsAreUnitLengthAndReuseOutputArray() {
+        float[] out = new float[EmbeddingEngine.DIMENSION];
+        EmbeddingEngine.embed("Stellaron 星核 signal", out);
+        assertThat(cosine(out, out)).isCloseTo(1f, within(1e-5f));
+
+        EmbeddingEngine.embed("", out);
+        assertThat(out).containsOnly(0f);
+        EmbeddingEngine.embed(null, out);
+        assertThat(out).containsOnly(0f);
+    }
+
+    @Test
+    void vectorApiMatchesScalarKernel() {
+        assertThat(EmbeddingEngine.simdEnabled()).isTrue();
+        VectorMath simd = new SimdVectorMath();
+        VectorMath scalar = new ScalarVectorMath();
+        Random random = new Random(42);
+        for (int length : new int[]{1, 7, 64, 256, 259}) {
+            float[] a = new float[length + 3];
+            float[] b = new float[length + 5];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = random.nextFloat() - 0.5f;
+            }
+            for (int i = 0; i < b.length; i++) {
+                b[i] = random.nextFloat() - 0.5f;
+            }
+            assertThat(simd.dot(a, 3, b, 5, length)).isCloseTo(scalar.dot(a, 3, b, 5, length), within(1e-4f));
+            assertThat(simd.squaredNorm(a, 3, length)).isCloseTo(scalar.squaredNorm(a, 3, length), within(1e-4f));
+
+            float[] scaledSimd = a.clone();
+            float[] scaledScalar = a.clone();
+            simd.scale(scaledSimd, 3, length, 0.5f);
+            scalar.scale(scaledScalar, 3, length, 0.5f);
+            assertThat(scaledSimd).containsExactly(scaledScalar);
+        }
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        return EmbeddingEngine.dot(a, 0, b, 0, EmbeddingEngine.DIMENSION);
+    }
+}
@@ -0,0 +1,224 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.dto.GameStateDto;
+import com.samterminal.backend.entity.*;
+import com.samterminal.backend.repository.*;
+import com.samterminal.backend.service.GameContextCache.PlayerContext;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class GameContextCacheTest {
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("cache")
+                .baseUrl("https://api.example.com")
+                .modelName("cache-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenUsed(0L)
+                .build());
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("我在听。", "smile", null, "chat", null, 20, 10));
+    }
+
+    @Test
+    void chatTurnDoesNotReloadPlayerContext() {
+        gameService.getState("cached-user");
+        gameService.handleChat("cached-user", "你好", null);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        gameService.handleChat("cached-user", "还在吗", null);
+
+        // User, items, memories and unlocks come from the cache; what is left is the session,
+        // the quota check, the state row the turn updates and the turn's own writes.
+        assertThat(statistics.getEntityStatistics(Item.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getEntityStatistics(Memory.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getEntityStatistics(UserLocationUnlock.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getQueries()).noneMatch(query -> query.contains(" from users ")
+                || query.contains(" from game_state ") || query.contains(" from item ") || query.contains(" from memory "));
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void committedWritesReachTheNextTurn() {
+        GameStateDto before = gameService.getState("writer");
+        AppUser user = userRepository.findByUsername("writer").orElseThrow();
+        memoryRepository.save(Memory.builder().title("流星").content("在天台看流星雨")
+                .date(LocalDate.now()).tags("约定").user(user).build());
+        Item item = itemRepository.findByUser(user).getFirst();
+        item.setQuantity(item.getQuantity() + 5);
+        itemRepository.save(item);
+
+        GameStateDto after = gameService.getState("writer");
+
+        assertThat(after.getMemories()).hasSize(before.getMemories().size() + 1);
+        assertThat(after.getItems()).filteredOn(dto -> dto.getId().equals(item.getId()))
+                .extracting(GameStateDto.ItemDto::getQuantity).containsExactly(item.getQuantity());
+
+        gameService.handleChat("writer", "你好", null);
+        assertThat(gameService.getState("writer").getFireflyEmotion()).isEqualTo("smile");
+    }
+
+    @Test
+    void expiresAndEvictsLeastRecentlyUsed() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        AppProperties properties = new AppProperties();
+        properties.getGame().setContextCacheMaxEntries(2);
+        properties.getGame().setContextCacheTtlMillis(1000);
+        GameContextCache cache = new GameContextCache(clock, properties);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("a", () -> context("a", 1L, loads));
+        cache.get("b", () -> context("b", 2L, loads));
+        cache.get("a", () -> context("a", 1L, loads));
+        cache.get("c", () -> context("c", 3L, loads));
+        assertThat(loads).hasValue(3);
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.get("b", () -> context("b", 2L, loads));
+        assertThat(loads).hasValue(4);
+
+        clock.advance(Duration.ofMillis(1001));
+        cache.get("b", () -> context("b", 2L, loads));
+        assertThat(loads).hasValue(5);
+    }
+
+    @Test
+    void loadRacingACommitIsNotCached() {
+        GameContextCache cache = new GameContextCache(Clock.systemUTC(), new AppProperties());
+        AtomicInteger loads = new AtomicInteger();
+        PlayerContext stale = context("racer", 1L, loads);
+
+        cache.get("racer", () -> {
+            cache.invalidate(stale.user());
+            return stale;
+        });
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void keepsTheNewestCommittedState() {
+        GameContextCache cache = new GameContextCache(Clock.systemUTC(), new AppProperties());
+        PlayerContext loaded = context("player", 1L, new AtomicInteger());
+        cache.get("player", () -> loaded);
+
+        cache.stateChanged(state(loaded.user(), 3L));
+        cache.stateChanged(state(loaded.user(), 2L));
+
+        assertThat(cache.get("player", () -> null).state().getVersion()).isEqualTo(3L);
+        assertThat(cache.get("player", () -> null).items()).isSameAs(loaded.items());
+    }
+
+    private static PlayerContext context(String username, Long id, AtomicInteger loads) {
+        loads.incrementAndGet();
+        AppUser user = AppUser.builder().id(id).username(username).build();
+        return new PlayerContext(user, state(user, 1L), List.of(), List.of(), Set.of());
+    }
+
+    private static GameState state(AppUser user, Long version) {
+        return GameState.builder().id(user.getId()).user(user).version(version).build();
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.LlmApiConfig;
+import com.samterminal.backend.entity.LlmApiRole;
+import com.samterminal.backend.entity.LlmApiStatus;
+import com.samterminal.backend.repository.ChatMessageRepository;
+import com.samterminal.backend.repository.ChatSessionRepository;
+import com.samterminal.backend.repository.LlmApiConfigRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class GamePushServiceTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private GamePushService pushService;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private LlmService llmService;
+
+    @Test
+    void rejectsHandshakeWithoutToken() {
+        assertThatThrownBy(() -> connect("", new LinkedBlockingQueue<>()))
+                .isInstanceOf(ExecutionException.class);
+    }
+
+    @Test
+    void repliesToSocketChatAndPushesStateToEveryConnection() throws Exception {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        apiRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("push")
+                .baseUrl("https://api.example.com")
+                .modelName("push-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenUsed(0L)
+                .build());
+        when(llmService.streamLlm(any(LlmApiConfig.class), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            ChatStreamListener listener = invocation.getArgument(3);
+            listener.onDelta("content", "我在");
+            listener.onDelta("content", "这里。");
+            return new LlmService.LlmReply("我在这里。", "excited", null, "chat", null, 20, 10);
+        });
+        gameService.getState("pusher");
+        String token = "?token=" + jwtService.generateToken("pusher", Map.of("role", "USER"));
+        BlockingQueue<JsonNode> chatFrames = new LinkedBlockingQueue<>();
+        BlockingQueue<JsonNode> otherTab = new LinkedBlockingQueue<>();
+        WebSocketSession chatting = connect(token, chatFrames);
+        WebSocketSession watching = connect(token, otherTab);
+        waitFor(() -> pushService.connectionCount("pusher") == 2);
+
+        chatting.sendMessage(new TextMessage("{\"type\":\"chat\",\"requestId\":\"r1\",\"message\":\"你好\"}"));
+
+        List<JsonNode> received = new ArrayList<>();
+        JsonNode frame;
+        while ((frame = chatFrames.poll(10, TimeUnit.SECONDS)) != null) {
+            received.add(frame);
+            if ("reply".equals(frame.path("type").asText())) {
+                break;
+            }
+        }
+        JsonNode reply = received.getLast();
+        assertThat(reply.path("type").asText()).isEqualTo("reply");
+        assertThat(reply.path("requestId").asText()).isEqualTo("r1");
+        assertThat(reply.path("data").path("messages").get(0).path("content").asText()).isEqualTo("我在这里。");
+        assertThat(received).anyMatch(f -> "state".equals(f.path("type").asText()));
+        assertThat(received).filteredOn(f -> "delta".equals(f.path("type").asText()))
+                .extracting(f -> f.path("data").path("text").asText()).containsExactly("我在", "这里。");
+
+        JsonNode pushed = otherTab.poll(10, TimeUnit.SECONDS);
+        assertThat(pushed.path("type").asText()).isEqualTo("state");
+        assertThat(pushed.path("data").path("delta").path("fireflyEmotion").asText()).isEqualTo("excited");
+        assertThat(pushed.path("data").path("revision").asLong())
+                .isEqualTo(reply.path("data").path("revision").asLong());
+
+        chatting.close();
+        watching.close();
+        waitFor(() -> pushService.connectionCount("pusher") == 0);
+    }
+
+    @Test
+    void capsConnectionsAndAnnouncesEachQuotaLevelOnce() throws Exception {
+        AppProperties properties = new AppProperties();
+        properties.getPush().setMaxSessionsPerUser(1);
+        GamePushService local = new GamePushService(objectMapper, Clock.systemUTC(), properties);
+        List<String> sent = new ArrayList<>();
+        WebSocketSession first = session("s1", sent);
+        assertThat(local.register("quota-user", first)).isTrue();
+        assertThat(local.register("quota-user", session("s2", new ArrayList<>()))).isFalse();
+
+        local.quota("quota-user", 50, 100);
+        local.quota("quota-user", 85, 100);
+        local.quota("quota-user", 90, 100);
+        local.quota("quota-user", 120, 100);
+        local.quota("quota-user", 130, 100);
+
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).contains("\"level\":\"warning\"");
+        assertThat(sent.get(1)).contains("\"level\":\"exhausted\"");
+    }
+
+    @Test
+    void heartbeatClosesConnectionsWhoseTokenHasExpired() throws Exception {
+        Clock clock = Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC);
+        GamePushService local = new GamePushService(objectMapper, clock, new AppProperties());
+        WebSocketSession expired = session("expired", new ArrayList<>());
+        List<String> pinged = new ArrayList<>();
+        WebSocketSession valid = session("valid", pinged);
+        local.register("token-user", expired, clock.millis());
+        local.register("token-user", valid, clock.millis() + 60000);
+
+        local.heartbeat();
+
+        verify(expired).close(argThat(status -> status.getCode() == CloseStatus.POLICY_VIOLATION.getCode()));
+        verify(valid, never()).close(any());
+        assertThat(pinged).hasSize(1);
+        assertThat(local.connectionCount("token-user")).isEqualTo(1);
+    }
+
+    private WebSocketSession connect(String query, BlockingQueue<JsonNode> frames) throws Exception {
+        return new StandardWebSocketClient().execute(new TextWebSocketHandler() {
+            @Override
+            protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+                frames.add(objectMapper.readTree(message.getPayload()));
+            }
+        }, "ws://localhost:" + port + "/ws/game" + query).get(10, TimeUnit.SECONDS);
+    }
+
+    private static WebSocketSession session(String id, List<String> sent) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sent.add(String.valueOf(((WebSocketMessage<?>) invocation.getArgument(0)).getPayload()));
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
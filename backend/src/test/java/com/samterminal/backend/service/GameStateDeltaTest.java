@@ -0,0 +1,97 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.dto.ChatResponse;
+import com.samterminal.backend.dto.GameStateDto;
+import com.samterminal.backend.entity.*;
+import com.samterminal.backend.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+class GameStateDeltaTest {
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRepository.save(LlmApiConfig.builder()
+                .name("delta")
+                .baseUrl("https://api.example.com")
+                .modelName("delta-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenUsed(0L)
+                .build());
+    }
+
+    @Test
+    void chatReturnsOnlyTheChangedFieldsAgainstTheBaseRevision() {
+        GameStateDto initial = gameService.getState("delta-user");
+        Item gift = itemRepository.findByUser(userRepository.findByUsername("delta-user").orElseThrow()).getFirst();
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("谢谢你！", "excited", null, "gift", String.valueOf(gift.getId()), 20, 10));
+
+        ChatResponse response = gameService.handleChat("delta-user", "送你一个礼物", null);
+
+        assertThat(response.getBaseRevision()).isEqualTo(initial.getRevision());
+        assertThat(response.getRevision()).isEqualTo(initial.getRevision() + 1);
+        assertThat(response.getDelta().getFireflyEmotion()).isEqualTo("excited");
+        assertThat(response.getDelta().getCurrentLocation()).isNull();
+        assertThat(response.getDelta().getItems()).extracting(GameStateDto.ItemDto::getId)
+                .containsExactly(gift.getId());
+        assertThat(gameService.getState("delta-user").getRevision()).isEqualTo(response.getRevision());
+    }
+}
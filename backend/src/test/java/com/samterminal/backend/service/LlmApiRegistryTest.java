@@ -0,0 +1,163 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.LlmApiConfig;
+import com.samterminal.backend.entity.LlmApiRole;
+import com.samterminal.backend.entity.LlmApiStatus;
+import com.samterminal.backend.repository.*;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.llm.usage-flush-interval-millis=3600000"
+})
+class LlmApiRegistryTest {
+
+    @Autowired
+    private LlmPoolService llmPoolService;
+
+    @Autowired
+    private LlmApiRegistry apiRegistry;
+
+    @Autowired
+    private LlmApiConfigService apiConfigService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LlmApiConfigRepository apiRepository;
+
+    @Autowired
+    private ChatSessionRepository sessionRepository;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private UserLocationUnlockRepository unlockRepository;
+
+    @Autowired
+    private GameStateRepository stateRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MemoryRepository memoryRepository;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private UserTokenLimitRepository tokenLimitRepository;
+
+    @Autowired
+    private UserTokenUsageRepository tokenUsageRepository;
+
+    @MockBean
+    private LlmService llmService;
+
+    private LlmApiConfig api;
+
+    @BeforeEach
+    void setup() {
+        chatMessageRepository.deleteAll();
+        sessionRepository.deleteAll();
+        unlockRepository.deleteAll();
+        stateRepository.deleteAll();
+        itemRepository.deleteAll();
+        memoryRepository.deleteAll();
+        tokenLimitRepository.deleteAll();
+        tokenUsageRepository.deleteAll();
+        apiRepository.deleteAll();
+        userRepository.deleteAll();
+        apiRegistry.flushUsage();
+        api = apiRepository.save(LlmApiConfig.builder()
+                .name("cached")
+                .baseUrl("https://api.example.com")
+                .modelName("cached-model")
+                .role(LlmApiRole.PRIMARY)
+                .status(LlmApiStatus.ACTIVE)
+                .maxLoad(1000)
+                .tokenLimit(100000L)
+                .tokenUsed(0L)
+                .build());
+        when(llmService.callLlm(any(LlmApiConfig.class), anyString(), anyString()))
+                .thenReturn(new LlmService.LlmReply("好。", "smile", null, "chat", null, 10, 5));
+    }
+
+    @Test
+    void steadyStateRoutingIssuesNoSql() {
+        llmPoolService.callWithSession(null, "sys", "user");
+        apiRegistry.flushUsage();
+        assertThat(llmPoolService.hasConfiguredApis()).isTrue();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        for (int i = 0; i < 50; i++) {
+            LlmPoolService.LlmCallResult result = llmPoolService.callWithSession(null, "sys", "user");
+            assertThat(result.apiConfig().getId()).isEqualTo(api.getId());
+        }
+        assertThat(llmPoolService.hasConfiguredApis()).isTrue();
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(apiRegistry.find(api.getId()).getTokenUsed()).isEqualTo(51 * 15L);
+        assertThat(apiRepository.findById(api.getId()).orElseThrow().getTokenUsed()).isEqualTo(15L);
+    }
+
+    @Test
+    void flushWritesPendingUsageInOneBatch() {
+        for (int i = 0; i < 10; i++) {
+            llmPoolService.callWithSession(null, "sys", "user");
+        }
+        assertThat(apiConfigService.listConfigs().getFirst().getTokenUsed()).isEqualTo(150L);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        apiRegistry.flushUsage();
+        // The flushed amount moves into the snapshot: one UPDATE, no reload, and the count never dips.
+        assertThat(apiRegistry.find(api.getId()).getTokenUsed()).isEqualTo(150L);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+
+        LlmApiConfig stored = apiRepository.findById(api.getId()).orElseThrow();
+        assertThat(stored.getTokenUsed()).isEqualTo(150L);
+        assertThat(stored.getLastSuccessAt()).isNotNull();
+        assertThat(apiRegistry.pendingTokens(api.getId())).isZero();
+        assertThat(apiRegistry.find(api.getId()).getTokenUsed()).isEqualTo(150L);
+    }
+
+    @Test
+    void configWritesInvalidateTheSnapshot() {
+        assertThat(llmPoolService.selectApiForNewSession()).isNotNull();
+
+        LlmApiConfig managed = apiRepository.findById(api.getId()).orElseThrow();
+        managed.setStatus(LlmApiStatus.DISABLED);
+        apiRepository.save(managed);
+
+        assertThat(llmPoolService.selectApiForNewSession()).isNull();
+    }
+
+    @Test
+    void resetTokensDropsUnflushedUsage() {
+        llmPoolService.callWithSession(null, "sys", "user");
+        assertThat(apiRegistry.pendingTokens(api.getId())).isEqualTo(15L);
+
+        apiConfigService.resetTokens(api.getId());
+        apiRegistry.flushUsage();
+
+        assertThat(apiRepository.findById(api.getId()).orElseThrow().getTokenUsed()).isZero();
+        assertThat(apiRegistry.find(api.getId()).getTokenUsed()).isZero();
+    }
+}
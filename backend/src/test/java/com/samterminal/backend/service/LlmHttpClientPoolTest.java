@@ -0,0 +1,134 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmHttpClientPoolTest {
+
+    private HttpServer server;
+    private LlmHttpClientPool pool;
+    private RestTemplate restTemplate;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private String baseUrl;
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/fast", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "slow".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        AppProperties properties = new AppProperties();
+        properties.getLlm().getHttp().setMaxConnectionsPerHost(2);
+        properties.getLlm().getHttp().setAcquireTimeoutMillis(200);
+        pool = new LlmHttpClientPool(properties);
+        restTemplate = new RestTemplate(pool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        pool.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    void sequentialCallsReuseOneKeepAliveConnection() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(restTemplate.getForObject(baseUrl + "/fast", String.class)).isEqualTo("ok");
+        }
+
+        assertThat(clientPorts).hasSize(1);
+        LlmHttpClientPool.HostStats stats = pool.stats().getFirst();
+        assertThat(stats.origin()).isEqualTo(baseUrl);
+        assertThat(stats.protocol()).isEqualTo("http/1.1");
+        assertThat(stats.totalRequests()).isEqualTo(5);
+        assertThat(stats.inFlight()).isZero();
+    }
+
+    @Test
+    void saturatedHostRejectsAfterAcquireTimeoutAndRecovers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> restTemplate.getForObject(baseUrl + "/slow", String.class));
+            Future<String> second = executor.submit(() -> restTemplate.getForObject(baseUrl + "/slow", String.class));
+            waitForInFlight(2);
+
+            assertThatThrownBy(() -> restTemplate.getForObject(baseUrl + "/fast", String.class))
+                    .isInstanceOf(ResourceAccessException.class)
+                    .hasMessageContaining("saturated");
+            LlmHttpClientPool.HostStats saturated = pool.stats().getFirst();
+            assertThat(saturated.inFlight()).isEqualTo(2);
+            assertThat(saturated.rejected()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(restTemplate.getForObject(baseUrl + "/fast", String.class)).isEqualTo("ok");
+        LlmHttpClientPool.HostStats stats = pool.stats().getFirst();
+        assertThat(stats.inFlight()).isZero();
+        assertThat(stats.peakInFlight()).isEqualTo(2);
+        assertThat(stats.totalRequests()).isEqualTo(3);
+    }
+
+    @Test
+    void eachOriginGetsItsOwnPool() {
+        restTemplate.getForObject(baseUrl + "/fast", String.class);
+        restTemplate.getForObject("http://localhost:" + server.getAddress().getPort() + "/fast", String.class);
+
+        assertThat(pool.stats()).extracting(LlmHttpClientPool.HostStats::origin)
+                .containsExactly(baseUrl, "http://localhost:" + server.getAddress().getPort());
+    }
+
+    private void waitForInFlight(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (!pool.stats().isEmpty() && pool.stats().getFirst().inFlight() == expected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("requests never reached the server");
+    }
+}
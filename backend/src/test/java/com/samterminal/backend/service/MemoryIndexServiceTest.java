@@ -0,0 +1,113 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.entity.Memory;
+import com.samterminal.backend.repository.MemoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = "app.memory.index-batch-size=2")
+class MemoryIndexServiceTest {
+
+    @Autowired
+    private MemoryIndexService indexService;
+
+    @SpyBean
+    private MemoryRepository memoryRepository;
+
+    @MockBean
+    private MemoryRagService memoryRagService;
+
+    @MockBean
+    private LlmService llmService;
+
+    @BeforeEach
+    void setup() throws Exception {
+        memoryRepository.deleteAll();
+        indexService.indexPending();
+        reset(memoryRagService);
+    }
+
+    @Test
+    void indexesNewMemoryOnceAndSkipsUnchangedContent() throws Exception {
+        Memory memory = memoryRepository.save(memory("星空", "在天台看星星"));
+
+        indexService.indexPending();
+        indexService.indexPending();
+
+        verify(memoryRagService, times(1)).upsertMemories(List.of(memory));
+        assertThat(memoryRepository.findById(memory.getId()).orElseThrow().getIndexedHash())
+                .isEqualTo(MemoryIndexService.contentHash(memory));
+        assertThat(indexService.pendingCount()).isZero();
+    }
+
+    @Test
+    void reindexesChangedMemoryAndRemovesDeletedOne() throws Exception {
+        Memory memory = memoryRepository.save(memory("星空", "在天台看星星"));
+        indexService.indexPending();
+
+        Memory stored = memoryRepository.findById(memory.getId()).orElseThrow();
+        stored.setContent("在天台看流星雨");
+        memoryRepository.save(stored);
+        indexService.indexPending();
+
+        ArgumentCaptor<List<Memory>> upserted = ArgumentCaptor.captor();
+        verify(memoryRagService, times(2)).upsertMemories(upserted.capture());
+        assertThat(upserted.getValue()).extracting(Memory::getContent).containsExactly("在天台看流星雨");
+
+        memoryRepository.deleteById(memory.getId());
+        indexService.indexPending();
+
+        ArgumentCaptor<Collection<Long>> removed = ArgumentCaptor.captor();
+        verify(memoryRagService).removeMemories(removed.capture());
+        assertThat(removed.getValue()).containsExactly(memory.getId());
+    }
+
+    @Test
+    void backfillsUnindexedMemoriesInBatchesAndRetriesAfterFailure() throws Exception {
+        doThrow(new IllegalStateException("chroma down")).when(memoryRagService).upsertMemories(anyList());
+        for (int i = 0; i < 5; i++) {
+            memoryRepository.save(memory("记忆" + i, "内容" + i));
+        }
+        indexService.indexPending();
+        assertThat(memoryRepository.findByIndexedHashIsNullAndIdGreaterThanOrderByIdAsc(
+                0L, Pageable.unpaged())).hasSize(5);
+
+        reset(memoryRagService);
+        indexService.indexPending();
+
+        ArgumentCaptor<List<Memory>> batches = ArgumentCaptor.captor();
+        verify(memoryRagService, atLeastOnce()).upsertMemories(batches.capture());
+        assertThat(batches.getAllValues()).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(2));
+        assertThat(batches.getAllValues().stream().mapToInt(List::size).sum()).isEqualTo(5);
+        verify(memoryRagService, times(1)).flushIndex();
+        assertThat(memoryRepository.findAll()).allSatisfy(m -> assertThat(m.getIndexedHash()).isNotNull());
+    }
+
+    @Test
+    void stopsScanningForUnindexedRowsOnceTheBackfillCompletes() throws Exception {
+        clearInvocations(memoryRepository);
+
+        indexService.indexPending();
+        indexService.indexPending();
+
+        verify(memoryRepository, never()).findByIndexedHashIsNullAndIdGreaterThanOrderByIdAsc(anyLong(), any());
+    }
+
+    private Memory memory(String title, String content) {
+        return Memory.builder().title(title).content(content).date(LocalDate.of(2025, 1, 1)).build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Memory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemoryLexicalIndexTest {
+    private static final AppUser ALICE = AppUser.builder().id(1L).build();
+    private static final AppUser BOB = AppUser.builder().id(2L).build();
+
+    @Test
+    void ranksByBm25OverTitleContentAndTags() {
+        MemoryLexicalIndex index = new MemoryLexicalIndex(new AppProperties());
+        List<Memory> memories = List.of(
+                memory(1L, ALICE, "天台", "约定一起看日落", "约定"),
+                memory(2L, ALICE, "权限卡", "三月七把权限卡交给了开拓者，权限卡能打开空间站的大门", "道具"),
+                memory(3L, ALICE, "晚饭", "空间站食堂的番茄炒蛋", "日常"),
+                memory(4L, ALICE, "Signal", "The Stellaron signal arrives at 22:00", "stellaron,signal"));
+
+        assertThat(index.search(1L, memories, "权限卡在哪里？", 3)).first().isEqualTo(2L);
+        assertThat(index.search(1L, memories, "空间站", 3)).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(index.search(1L, memories, "what about the SIGNAL", 3)).containsExactly(4L);
+        assertThat(index.search(1L, memories, "日常", 3)).first().isEqualTo(3L);
+        assertThat(index.search(1L, memories, "完全无关 xyz", 3)).isEmpty();
+    }
+
+    @Test
+    void appliesIncrementalChangesWithinTheUsersPartition() {
+        MemoryLexicalIndex index = new MemoryLexicalIndex(new AppProperties());
+        List<Memory> alice = new ArrayList<>(List.of(
+                memory(1L, ALICE, "流星", "在天台看流星雨", null),
+                memory(2L, ALICE, "日落", "约定一起看日落", null)));
+        List<Memory> bob = List.of(memory(3L, BOB, "流星", "流星雨流星雨", null));
+        assertThat(index.search(1L, alice, "流星", 5)).containsExactly(1L);
+        assertThat(index.search(2L, bob, "流星", 5)).containsExactly(3L);
+
+        Memory changed = memory(2L, ALICE, "流星", "日落后又看到了流星", null);
+        alice.set(1, changed);
+        index.put(changed);
+        assertThat(index.search(1L, alice, "流星", 5)).containsExactlyInAnyOrder(1L, 2L);
+
+        alice.removeFirst();
+        index.remove(memory(1L, ALICE, null, null, null));
+        assertThat(index.search(1L, alice, "流星", 5)).containsExactly(2L);
+        assertThat(index.search(2L, bob, "流星", 5)).containsExactly(3L);
+    }
+
+    @Test
+    void rebuildsWhenTheMemoryListNoLongerMatches() {
+        MemoryLexicalIndex index = new MemoryLexicalIndex(new AppProperties());
+        List<Memory> memories = new ArrayList<>(List.of(memory(1L, ALICE, "日落", "约定一起看日落", null)));
+        assertThat(index.search(1L, memories, "流星", 5)).isEmpty();
+
+        // Saved without going through the entity listener, e.g. before this index existed.
+        memories.add(memory(2L, ALICE, "流星", "在天台看流星雨", null));
+
+        assertThat(index.search(1L, memories, "流星", 5)).containsExactly(2L);
+
+        // Same count, different content.
+        memories.set(0, memory(1L, ALICE, "流星", "日落后又看到了流星", null));
+
+        assertThat(index.search(1L, memories, "日落", 5)).containsExactly(1L);
+        assertThat(index.search(1L, memories, "流星", 5)).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    @Test
+    void evictsLeastRecentlySearchedPartitions() {
+        AppProperties properties = new AppProperties();
+        properties.getGame().setContextCacheMaxEntries(2);
+        MemoryLexicalIndex index = new MemoryLexicalIndex(properties);
+        for (long userId = 1; userId <= 5; userId++) {
+            AppUser user = AppUser.builder().id(userId).build();
+            index.search(userId, List.of(memory(userId, user, "流星", "流星雨", null)), "流星", 5);
+        }
+
+        assertThat(index.size()).isEqualTo(2);
+        // An evicted user's partition is rebuilt from the list on the next search.
+        assertThat(index.search(1L, List.of(memory(1L, ALICE, "流星", "流星雨", null)), "流星", 5)).containsExactly(1L);
+    }
+
+    private static Memory memory(Long id, AppUser user, String title, String content, String tags) {
+        return Memory.builder().id(id).user(user).title(title).content(content).tags(tags).build();
+    }
+}
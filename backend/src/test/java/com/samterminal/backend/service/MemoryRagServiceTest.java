@@ -0,0 +1,89 @@
+package com.samterminal.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Memory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class MemoryRagServiceTest {
+
+    @Test
+    void queryOnlyEmbedsTheQueryAndSearches() {
+        RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        MemoryRagService service = new MemoryRagService(
+                new ChromaMemoryBackend(new ObjectMapper(), restTemplate, "http://chroma"), new MemoryLexicalIndex(new AppProperties()));
+        server.expect(requestTo("http://chroma/api/v1/collections"))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[{\"name\":\"sam_memories_v3\",\"id\":\"c1\"}]", MediaType.APPLICATION_JSON));
+        server.expect(requestTo("http://chroma/api/v1/collections/c1/query"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess("{\"ids\":[[\"mem-2\"]]}", MediaType.APPLICATION_JSON));
+
+        List<Memory> memories = List.of(
+                Memory.builder().id(1L).title("天台").content("约定").build(),
+                Memory.builder().id(2L).title("星空").content("流星雨").build());
+        List<Memory> result = service.queryRelevantMemories(1L, memories, "流星", 3);
+
+        server.verify();
+        assertThat(result).extracting(Memory::getId).containsExactly(2L);
+    }
+
+    @Test
+    void embeddedBackendRanksOnlyTheUsersOwnMemories(@TempDir Path dir) throws Exception {
+        MemoryRagService service = new MemoryRagService(
+                new EmbeddedMemoryBackend(dir.resolve("index.bin"), EmbeddingEngine.DIMENSION), new MemoryLexicalIndex(new AppProperties()));
+        AppUser alice = AppUser.builder().id(1L).build();
+        AppUser bob = AppUser.builder().id(2L).build();
+        List<Memory> aliceMemories = List.of(
+                Memory.builder().id(1L).user(alice).content("rooftop promise at sunset").build(),
+                Memory.builder().id(2L).user(alice).content("meteor shower over the station").build());
+        Memory bobMemory = Memory.builder().id(3L).user(bob).content("meteor shower meteor shower").build();
+        service.upsertMemories(aliceMemories);
+        service.upsertMemories(List.of(bobMemory));
+
+        List<Memory> result = service.queryRelevantMemories(1L, aliceMemories, "meteor shower", 3);
+
+        assertThat(result).extracting(Memory::getId).containsExactly(2L);
+    }
+
+    @Test
+    void fallsBackToKeywordRankingWhenBackendFails() throws Exception {
+        MemoryRetrievalBackend backend = mock(MemoryRetrievalBackend.class);
+        when(backend.search(anyLong(), any(), anyInt())).thenThrow(new IllegalStateException("down"));
+        MemoryRagService service = new MemoryRagService(backend, new MemoryLexicalIndex(new AppProperties()));
+        List<Memory> memories = List.of(
+                Memory.builder().id(1L).title("天台").content("约定一起看日落").build(),
+                Memory.builder().id(2L).title("权限卡").content("三月七把权限卡交给了开拓者").build(),
+                Memory.builder().id(3L).title("星空").content("流星雨").build());
+
+        List<Memory> result = service.queryRelevantMemories(1L, memories, "我的权限卡呢", 3);
+
+        assertThat(result).extracting(Memory::getId).containsExactly(2L);
+    }
+
+    @Test
+    void fusionRanksMemoriesFoundByBothListsFirst() {
+        assertThat(MemoryRagService.fuse(List.of(1L, 2L, 3L), List.of(3L, 4L), 3)).containsExactly(3L, 1L, 2L);
+        assertThat(MemoryRagService.fuse(List.of(), List.of(5L, 6L), 1)).containsExactly(5L);
+    }
+}
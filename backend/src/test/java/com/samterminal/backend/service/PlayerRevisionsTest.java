@@ -0,0 +1,72 @@
+package com.samterminal.backend.service;
+
+import com.samterminal.backend.config.AppProperties;
+import com.samterminal.backend.entity.AppUser;
+import com.samterminal.backend.entity.Item;
+import com.samterminal.backend.entity.Location;
+import com.samterminal.backend.repository.AppUserRepository;
+import com.samterminal.backend.repository.ItemRepository;
+import com.samterminal.backend.repository.LocationRepository;
+import com.samterminal.backend.service.PlayerRevisions.Slice;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PlayerRevisionsTest {
+
+    @Autowired
+    private PlayerRevisions revisions;
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private LocationRepository locationRepository;
+
+    @Test
+    void committedWritesMoveOnlyTheirSlice() {
+        gameService.getState("etag-user");
+        String inventory = revisions.etag("etag-user", Slice.INVENTORY);
+        String memories = revisions.etag("etag-user", Slice.MEMORIES);
+        String map = revisions.etag("etag-user", Slice.WORLD, Slice.UNLOCKS);
+        assertThat(revisions.etag("etag-user", Slice.INVENTORY)).isEqualTo(inventory);
+
+        AppUser user = userRepository.findByUsername("etag-user").orElseThrow();
+        Item item = itemRepository.findByUser(user).getFirst();
+        item.setQuantity(item.getQuantity() + 1);
+        itemRepository.save(item);
+
+        assertThat(revisions.etag("etag-user", Slice.INVENTORY)).isNotEqualTo(inventory);
+        assertThat(revisions.etag("etag-user", Slice.MEMORIES)).isEqualTo(memories);
+        assertThat(revisions.etag("etag-user", Slice.WORLD, Slice.UNLOCKS)).isEqualTo(map);
+        assertThat(gameService.getInventory("etag-user")).anyMatch(dto -> dto.getId().equals(item.getId())
+                && dto.getQuantity() == item.getQuantity());
+
+        Location location = locationRepository.findAll().getFirst();
+        location.setDescription(location.getDescription() + " ");
+        locationRepository.save(location);
+        assertThat(revisions.etag("etag-user", Slice.WORLD, Slice.UNLOCKS)).isNotEqualTo(map);
+    }
+
+    @Test
+    void evictedPlayersNeverReuseAnOldTag() {
+        AppProperties properties = new AppProperties();
+        properties.getGame().setContextCacheMaxEntries(1);
+        PlayerRevisions local = new PlayerRevisions(properties);
+        String first = local.etag("a", Slice.STATE);
+        local.etag("b", Slice.STATE);
+
+        assertThat(local.etag("a", Slice.STATE)).isNotEqualTo(first);
+        assertThat(new PlayerRevisions(properties).etag("a", Slice.STATE)).isNotEqualTo(first);
+        assertThat(first).startsWith("\"").endsWith("\"");
+    }
+}
@@ -0,0 +1,51 @@
+package com.samterminal.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingReplyParserTest {
+
+    @Test
+    void streamsContentAndNarrationAcrossChunkBoundaries() {
+        Map<String, StringBuilder> received = new LinkedHashMap<>();
+        List<String> deltas = new ArrayList<>();
+        StreamingReplyParser parser = new StreamingReplyParser((field, text) -> {
+            received.computeIfAbsent(field, k -> new StringBuilder()).append(text);
+            deltas.add(field + ":" + text);
+        });
+
+        String json = "```json\n{\"emotion\": \"shy\", \"content\": \"开拓者，\\\"你好\\\"\\n\\u4f60\", "
+                + "\"meta\": {\"content\": \"ignored\"}, \"narration\": \"*低下头*\", \"intent\": \"chat\"}\n```";
+        for (int i = 0; i < json.length(); i += 3) {
+            parser.accept(json.substring(i, Math.min(json.length(), i + 3)));
+        }
+
+        assertThat(received.get("content").toString()).isEqualTo("开拓者，\"你好\"\n你");
+        assertThat(received.get("narration").toString()).isEqualTo("*低下头*");
+        assertThat(received).doesNotContainKeys("emotion", "intent", "meta");
+        assertThat(deltas.size()).isGreaterThan(2);
+    }
+
+    @Test
+    void keepsSurrogatePairsTogether() {
+        StringBuilder content = new StringBuilder();
+        List<String> deltas = new ArrayList<>();
+        StreamingReplyParser parser = new StreamingReplyParser((field, text) -> {
+            content.append(text);
+            deltas.add(text);
+        });
+        String emoji = "🔥";
+
+        parser.accept("{\"content\": \"a" + emoji.charAt(0));
+        parser.accept(emoji.charAt(1) + "b\"}");
+
+        assertThat(content.toString()).isEqualTo("a" + emoji + "b");
+        assertThat(deltas).allSatisfy(text -> assertThat(Character.isHighSurrogate(text.charAt(text.length() - 1))).isFalse());
+    }
+}
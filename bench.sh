@@ -0,0 +1,67 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# 运行后端 JMH 基准并把结果写成 JSON，便于在版本之间对比。
+#   ./bench.sh [过滤正则] [结果名]     例：./bench.sh TextProcessing v1.4.0
+#   ./bench.sh compare 旧.json 新.json  对比两次结果，列出每项的变化百分比
+
+ROOT_DIR=$(cd "$(dirname "$0")" && pwd)
+cd "$ROOT_DIR"
+
+if [ "${1:-}" = "compare" ]; then
+  if [ $# -ne 3 ]; then
+    echo "用法：./bench.sh compare 旧.json 新.json" >&2
+    exit 1
+  fi
+  python3 - "$2" "$3" <<'PY'
+import json, sys
+
+def load(path):
+    with open(path) as f:
+        rows = json.load(f)
+    result = {}
+    for row in rows:
+        params = ",".join(f"{k}={v}" for k, v in sorted((row.get("params") or {}).items()))
+        name = row["benchmark"].rsplit(".", 2)[-2:]
+        key = ".".join(name) + (f" [{params}]" if params else "")
+        metric = row["primaryMetric"]
+        result[key] = (metric["score"], metric["scoreUnit"], row["mode"])
+    return result
+
+old, new = load(sys.argv[1]), load(sys.argv[2])
+print(f"{'benchmark':60} {'old':>12} {'new':>12} {'change':>9}  unit")
+for key in sorted(set(old) | set(new)):
+    if key not in old or key not in new:
+        print(f"{key:60} {'-' if key not in old else format(old[key][0], '.3f'):>12} "
+              f"{'-' if key not in new else format(new[key][0], '.3f'):>12}")
+        continue
+    (o, unit, mode), (n, _, _) = old[key], new[key]
+    change = (n - o) / o * 100 if o else 0.0
+    # Throughput: higher is better; time modes: lower is better.
+    worse = change < -5 if mode == "thrpt" else change > 5
+    print(f"{key:60} {o:12.3f} {n:12.3f} {change:+8.1f}%  {unit}{'  <-- regression' if worse else ''}")
+PY
+  exit 0
+fi
+
+INCLUDE=${1:-.*Benchmark.*}
+LABEL=${2:-$(git rev-parse --short HEAD 2>/dev/null || echo local)-$(date +%Y%m%d%H%M%S)}
+RESULT="target/jmh/${LABEL}.json"
+
+USE_LOCAL_MVN=false
+if command -v mvn >/dev/null 2>&1 && mvn -v 2>/dev/null | grep -E -q "Java version: 25\\."; then
+  USE_LOCAL_MVN=true
+fi
+
+mkdir -p backend/target/jmh
+MVN_ARGS=(-B -q -Pjmh -DskipTests test-compile exec:exec "-Djmh.include=${INCLUDE}" "-Djmh.result=${RESULT}")
+if [ "$USE_LOCAL_MVN" = true ]; then
+  (cd backend && mvn "${MVN_ARGS[@]}")
+elif command -v docker >/dev/null 2>&1; then
+  docker run --rm -v "$ROOT_DIR/backend:/app" -w /app maven:3.9.11-eclipse-temurin-25 mvn "${MVN_ARGS[@]}"
+else
+  echo "Neither Maven(Java 25) nor Docker found. Please install JDK 25+Maven or Docker." >&2
+  exit 1
+fi
+
+echo "结果已写入 backend/${RESULT}"
@@ -8,6 +8,14 @@ const jsonHeaders = (token?: string) => {
   return headers;
 };
 
+const usageQuery = (params: { sortField?: string; sortDir?: string; search?: string }) => {
+  const query = new URLSearchParams();
+  if (params.sortField) query.set('sortField', params.sortField);
+  if (params.sortDir) query.set('sortDir', params.sortDir);
+  if (params.search) query.set('search', params.search);
+  return query;
+};
+
 const normalizeUrl = (url?: string) => {
   if (!url) return url;
   if (url.startsWith('http://') || url.startsWith('https://')) return url;
@@ -92,7 +100,7 @@ export const api = {
     const data = await res.json();
     return mapState(data);
   },
-  async chat(content: string, token?: string, sessionId?: string): Promise<{ replies: Message[]; state: GameState; stateUpdate?: any; sessionId?: string }> {
+  async chat(content: string, token?: string, sessionId?: string): Promise<{ replies: Message[]; delta?: any; baseRevision: number; revision: number; stateUpdate?: any; sessionId?: string }> {
     const res = await fetch(`${API_BASE}/api/game/chat`, {
       method: 'POST',
       headers: jsonHeaders(token),
@@ -108,7 +116,14 @@ export const api = {
       narration: m.narration,
       timestamp: new Date(m.timestamp)
     }));
-    return { replies, state: mapState(data.state), stateUpdate: data.stateUpdate, sessionId: data.sessionId };
+    return {
+      replies,
+      delta: data.delta,
+      baseRevision: data.baseRevision,
+      revision: data.revision,
+      stateUpdate: data.stateUpdate,
+      sessionId: data.sessionId
+    };
   },
   async createSession(token?: string) {
     const res = await fetch(`${API_BASE}/api/game/session`, {
@@ -336,11 +351,20 @@ export const api = {
     if (!res.ok) throw new Error('测试失败');
     return res.json();
   },
-  async adminUsage(token?: string): Promise<any> {
-    const res = await fetch(`${API_BASE}/api/admin/users/usage`, { headers: jsonHeaders(token) });
+  async adminUsage(params: { page?: number; size?: number; sortField?: string; sortDir?: string; search?: string }, token?: string): Promise<any> {
+    const query = usageQuery(params);
+    if (params.page != null) query.set('page', String(params.page));
+    if (params.size != null) query.set('size', String(params.size));
+    const res = await fetch(`${API_BASE}/api/admin/users/usage?${query.toString()}`, { headers: jsonHeaders(token) });
     if (!res.ok) throw new Error('获取用量失败');
     return res.json();
   },
+  async adminUsageExport(params: { sortField?: string; sortDir?: string; search?: string }, token?: string): Promise<Blob> {
+    const query = usageQuery(params);
+    const res = await fetch(`${API_BASE}/api/admin/users/usage/export?${query.toString()}`, { headers: jsonHeaders(token) });
+    if (!res.ok) throw new Error('导出用量失败');
+    return res.blob();
+  },
   async adminEmailSmtpConfigs(token?: string) {
     const res = await fetch(`${API_BASE}/api/admin/email-verification/smtp`, { headers: jsonHeaders(token) });
     if (!res.ok) throw new Error('读取 SMTP 配置失败');
@@ -501,8 +525,35 @@ function mapState(data: any): GameState {
     gameTime: data.gameTime,
     items: data.items || [],
     memories: data.memories || [],
-    userName: data.userName || '开拓者'
+    userName: data.userName || '开拓者',
+    revision: data.revision ?? -1
   };
 }
 
+// 把对话回复里的增量合并进基准版本一致的本地状态；物品按 id 替换，只出现新值的字段才覆盖。
+export function applyStateDelta(state: GameState, delta: any, revision: number): GameState {
+  if (!delta) {
+    return { ...state, revision };
+  }
+  const next: GameState = { ...state, revision };
+  if (delta.currentLocation) {
+    next.currentLocation = {
+      ...state.currentLocation,
+      id: delta.currentLocation,
+      name: delta.currentLocationName || delta.currentLocation,
+      description: delta.locationDynamicState ?? state.locationDynamicState
+    };
+  }
+  if (delta.locationDynamicState !== undefined) next.locationDynamicState = delta.locationDynamicState;
+  if (delta.fireflyEmotion !== undefined) next.fireflyEmotion = delta.fireflyEmotion;
+  if (delta.fireflyStatus !== undefined) next.fireflyStatus = delta.fireflyStatus;
+  if (delta.fireflyMoodDetails !== undefined) next.fireflyMoodDetails = delta.fireflyMoodDetails;
+  if (delta.gameTime !== undefined) next.gameTime = delta.gameTime;
+  if (delta.items) {
+    const changed = new Map<string, any>(delta.items.map((item: any) => [String(item.id), item]));
+    next.items = state.items.map((item: any) => changed.get(String(item.id)) ?? item);
+  }
+  return next;
+}
+
 export { API_BASE };
@@ -0,0 +1,58 @@
+import { API_BASE } from './api';
+
+export interface PushEvent {
+  type: 'state' | 'unlock' | 'quota' | 'delta' | 'reply' | 'error' | 'pong';
+  requestId?: string;
+  data?: any;
+}
+
+export interface GameSocket {
+  send: (command: Record<string, unknown>) => boolean;
+  close: () => void;
+}
+
+// /ws/game 推送通道：断线后按 1s、2s、4s… 退避重连（最长 30 秒），每次连上都调用 onOpen，由调用方重新同步状态。
+export function connectGameSocket(
+  token: string,
+  handlers: { onEvent: (event: PushEvent) => void; onOpen?: () => void }
+): GameSocket {
+  let socket: WebSocket | null = null;
+  let closed = false;
+  let retry = 0;
+  let timer: ReturnType<typeof setTimeout> | undefined;
+
+  const open = () => {
+    const ws = new WebSocket(`${API_BASE.replace(/^http/, 'ws')}/ws/game?token=${encodeURIComponent(token)}`);
+    socket = ws;
+    ws.onopen = () => {
+      retry = 0;
+      handlers.onOpen?.();
+    };
+    ws.onmessage = (message) => {
+      try {
+        handlers.onEvent(JSON.parse(message.data));
+      } catch (error) {
+        console.error('Invalid push frame', error);
+      }
+    };
+    ws.onclose = () => {
+      if (socket === ws) socket = null;
+      if (closed) return;
+      timer = setTimeout(open, Math.min(30000, 1000 * 2 ** retry++));
+    };
+  };
+  open();
+
+  return {
+    send(command) {
+      if (!socket || socket.readyState !== WebSocket.OPEN) return false;
+      socket.send(JSON.stringify(command));
+      return true;
+    },
+    close() {
+      closed = true;
+      clearTimeout(timer);
+      socket?.close();
+    }
+  };
+}
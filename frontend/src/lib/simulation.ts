@@ -65,6 +65,7 @@ export interface GameState {
   items: Item[];
   memories: Memory[];
   userName: string;
+  revision: number; // 服务端状态版本号，对话回复里的增量以它为基准；-1 表示尚未从服务端同步
 }
 
 // --- 模拟数据 ---
@@ -172,6 +173,7 @@ export const INITIAL_STATE: GameState = {
   items: INITIAL_ITEMS,
   memories: INITIAL_MEMORIES,
   userName: '开拓者',
+  revision: -1,
 };
 
 // --- 模拟 Agent 逻辑 ---
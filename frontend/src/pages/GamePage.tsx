@@ -1,4 +1,4 @@
-import { useState, useEffect } from 'react';
+import { useState, useEffect, useRef } from 'react';
 import { v4 as uuidv4 } from 'uuid';
 import { StatusBar } from '@/components/game/StatusBar';
 import { CharacterLayer } from '@/components/game/CharacterLayer';
@@ -7,7 +7,8 @@ import { MapInterface } from '@/components/game/MapInterface';
 import { InventoryInterface } from '@/components/game/InventoryInterface';
 import { GameMenu } from '@/components/game/GameMenu';
 import { GameState, Message, Location, StarDomain, INITIAL_STATE } from '@/lib/simulation';
-import { api, API_BASE } from '@/lib/api';
+import { api, API_BASE, applyStateDelta } from '@/lib/api';
+import { connectGameSocket, GameSocket, PushEvent } from '@/lib/gameSocket';
 import { cn } from '@/lib/utils';
 import { preloadImage } from '@/lib/imageCache';
 
@@ -24,6 +25,14 @@ const GamePage = () => {
   const [showMap, setShowMap] = useState(false);
   const [showInventory, setShowInventory] = useState(false);
 
+  // 推送通道：gameStateRef 让推送与回复都以最新的本地版本号判断增量能否合并
+  const socketRef = useRef<GameSocket | null>(null);
+  const gameStateRef = useRef<GameState>(INITIAL_STATE);
+  const pushHandlerRef = useRef<(event: PushEvent) => void>(() => undefined);
+  useEffect(() => {
+    gameStateRef.current = gameState;
+  }, [gameState]);
+
   // 初始化欢迎语
   useEffect(() => {
     setMessages([
@@ -76,6 +85,25 @@ const GamePage = () => {
     }
   }, [sessionId]);
 
+  useEffect(() => {
+    const token = localStorage.getItem('sam_token');
+    if (!token) return;
+    const socket = connectGameSocket(token, {
+      onEvent: (event) => pushHandlerRef.current(event),
+      // 断线期间可能错过推送，每次连上都重新拉取一次状态（未变化时服务端返回 304）
+      onOpen: () => {
+        api.status(token)
+          .then((state) => setGameState(applyLocation(state)))
+          .catch(console.error);
+      }
+    });
+    socketRef.current = socket;
+    return () => {
+      socketRef.current = null;
+      socket.close();
+    };
+  }, []);
+
   useEffect(() => {
     setGameState(prev => applyLocation(prev));
   }, [locations]);
@@ -106,6 +134,100 @@ const GamePage = () => {
     return state;
   };
 
+  const syncState = async (baseRevision: number, revision: number, delta: any) => {
+    const current = gameStateRef.current;
+    if (current.revision === baseRevision) {
+      const next = applyLocation(applyStateDelta(current, delta, revision));
+      gameStateRef.current = next;
+      setGameState(next);
+    } else if (current.revision !== revision) {
+      // 本地状态落后（或被其它标签页改过），增量无法对齐，整体重新拉取。
+      const token = localStorage.getItem('sam_token') || undefined;
+      const fresh = await api.status(token);
+      setGameState(applyLocation(fresh));
+    }
+  };
+
+  const applyStateUpdate = (stateUpdate: any) => {
+    if (stateUpdate?.location?.id && stateUpdate.location.backgroundUrl) {
+      const normalized = stateUpdate.location.backgroundUrl.startsWith('http')
+        ? stateUpdate.location.backgroundUrl
+        : `${API_BASE}${stateUpdate.location.backgroundUrl}`;
+      setLocations(prev => ({
+        ...prev,
+        [stateUpdate.location.id]: {
+          ...(prev[stateUpdate.location.id] || gameStateRef.current.currentLocation),
+          backgroundUrl: normalized
+        }
+      }));
+    }
+  };
+
+  const toMessages = (data: any): Message[] => (data?.messages || []).map((m: any) => ({
+    id: m.id,
+    sender: m.sender,
+    npcName: m.npcName,
+    content: m.content,
+    narration: m.narration,
+    timestamp: new Date(m.timestamp)
+  }));
+
+  const rememberSession = (newSessionId?: string) => {
+    if (newSessionId && newSessionId !== sessionId) {
+      localStorage.setItem('sam_session_id', newSessionId);
+      setSessionId(newSessionId);
+    }
+  };
+
+  const systemMessage = (content: string) => {
+    setMessages(prev => [...prev, { id: uuidv4(), sender: 'system', content, timestamp: new Date() }]);
+  };
+
+  pushHandlerRef.current = (event: PushEvent) => {
+    const data = event.data;
+    switch (event.type) {
+      case 'delta':
+        // 流式输出：先把正文增量拼到一条临时消息里，reply 到达后替换
+        if (data?.field !== 'content') return;
+        setMessages(prev => {
+          const streamId = `stream-${event.requestId}`;
+          const existing = prev.find(m => m.id === streamId);
+          if (existing) {
+            return prev.map(m => m.id === streamId ? { ...m, content: m.content + data.text } : m);
+          }
+          return [...prev, { id: streamId, sender: 'firefly', content: data.text, timestamp: new Date() }];
+        });
+        break;
+      case 'reply':
+        rememberSession(data?.sessionId);
+        applyStateUpdate(data?.stateUpdate);
+        setMessages(prev => [...prev.filter(m => m.id !== `stream-${event.requestId}`), ...toMessages(data)]);
+        syncState(data.baseRevision, data.revision, data.delta).catch(console.error);
+        setIsTyping(false);
+        break;
+      case 'state':
+        applyStateUpdate(data?.stateUpdate);
+        syncState(data.baseRevision, data.revision, data.delta).catch(console.error);
+        break;
+      case 'unlock':
+        setLocations(prev => prev[data.location]
+          ? { ...prev, [data.location]: { ...prev[data.location], isUnlocked: true } }
+          : prev);
+        systemMessage(`已解锁新地点：${data.name}`);
+        break;
+      case 'quota':
+        systemMessage(data.level === 'exhausted'
+          ? '终端的通讯配额已用尽。'
+          : `终端的通讯配额已使用 ${data.percent}%。`);
+        break;
+      case 'error':
+        console.error('Push channel error', data?.error);
+        setMessages(prev => prev.filter(m => m.id !== `stream-${event.requestId}`));
+        setIsTyping(false);
+        break;
+    }
+  };
+
   const handleSendMessage = async (content: string) => {
     const userMsg: Message = {
       id: uuidv4(),
@@ -116,26 +238,17 @@ const GamePage = () => {
     setMessages(prev => [...prev, userMsg]);
     setIsTyping(true);
 
+    // 推送通道可用时经由它发送，回复以 delta/reply 帧返回，不占用 HTTP 请求
+    if (socketRef.current?.send({ type: 'chat', requestId: userMsg.id, message: content, sessionId: sessionId || undefined })) {
+      return;
+    }
+
     try {
       const token = localStorage.getItem('sam_token') || undefined;
-      const { replies, state, stateUpdate, sessionId: newSessionId } = await api.chat(content, token, sessionId || undefined);
-      if (newSessionId && newSessionId !== sessionId) {
-        localStorage.setItem('sam_session_id', newSessionId);
-        setSessionId(newSessionId);
-      }
-      if (stateUpdate?.location?.id && stateUpdate.location.backgroundUrl) {
-        const normalized = stateUpdate.location.backgroundUrl.startsWith('http')
-          ? stateUpdate.location.backgroundUrl
-          : `${API_BASE}${stateUpdate.location.backgroundUrl}`;
-        setLocations(prev => ({
-          ...prev,
-          [stateUpdate.location.id]: {
-            ...(prev[stateUpdate.location.id] || state.currentLocation),
-            backgroundUrl: normalized
-          }
-        }));
-      }
-      setGameState(applyLocation(state));
+      const { replies, delta, baseRevision, revision, stateUpdate, sessionId: newSessionId } = await api.chat(content, token, sessionId || undefined);
+      rememberSession(newSessionId);
+      applyStateUpdate(stateUpdate);
+      await syncState(baseRevision, revision, delta);
       setMessages(prev => [...prev, ...replies]);
     } catch (error) {
       console.error('Failed to get response', error);
@@ -146,25 +259,15 @@ const GamePage = () => {
 
   const handleRecall = async (memoryId: string) => {
     setIsTyping(true);
+    if (socketRef.current?.send({ type: 'recall', requestId: uuidv4(), memoryId: Number(memoryId), sessionId: sessionId || undefined })) {
+      return;
+    }
     try {
       const token = localStorage.getItem('sam_token') || undefined;
       const data = await api.recallMemory(memoryId, token, sessionId || undefined);
-      if (data?.sessionId && data.sessionId !== sessionId) {
-        localStorage.setItem('sam_session_id', data.sessionId);
-        setSessionId(data.sessionId);
-      }
-      const replies: Message[] = (data.messages || []).map((m: any) => ({
-        id: m.id,
-        sender: m.sender,
-        npcName: m.npcName,
-        content: m.content,
-        narration: m.narration,
-        timestamp: new Date(m.timestamp)
-      }));
-      setMessages(prev => [...prev, ...replies]);
-      if (data.state) {
-        setGameState(applyLocation(data.state));
-      }
+      rememberSession(data?.sessionId);
+      setMessages(prev => [...prev, ...toMessages(data)]);
+      await syncState(data.baseRevision, data.revision, data.delta);
     } catch (error) {
       console.error('Failed to recall memory', error);
     } finally {
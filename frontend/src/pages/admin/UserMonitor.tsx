@@ -6,51 +6,80 @@ import { Table, TableBody, TableCell, TableHead, TableHeader, TableRow } from '@
 import { Badge } from '@/components/ui/badge';
 import { Dialog, DialogContent, DialogHeader, DialogTitle, DialogTrigger, DialogFooter } from '@/components/ui/dialog';
 import { Label } from '@/components/ui/label';
-import { Activity, Save, Search, ArrowUpDown, Settings2 } from 'lucide-react';
+import { Activity, Save, Search, ArrowUpDown, Settings2, Download } from 'lucide-react';
 import { toast } from 'sonner';
 import { api } from '@/lib/api';
 
+interface DailyUsage {
+  date: string;
+  inputTokens: number;
+  outputTokens: number;
+}
+
 interface UserUsage {
   id: number;
   username: string;
   inputTokens: number;
   outputTokens: number;
   customLimit: number | null;
+  totalInputTokens?: number;
+  totalOutputTokens?: number;
+  history?: DailyUsage[];
 }
 
+const PAGE_SIZE = 50;
+
 const UserMonitor = () => {
   const token = localStorage.getItem('sam_token') || undefined;
   const [globalLimit, setGlobalLimit] = useState(50000);
   const [users, setUsers] = useState<UserUsage[]>([]);
+  const [quotaWindow, setQuotaWindow] = useState<{ type: string; rollingHours: number }>({ type: 'daily', rollingHours: 24 });
   const [sortOrder, setSortOrder] = useState<'asc' | 'desc'>('desc');
   const [searchTerm, setSearchTerm] = useState('');
+  const [page, setPage] = useState(0);
+  const [total, setTotal] = useState(0);
   const [editingUser, setEditingUser] = useState<{id: number; name: string; limit: number | string} | null>(null);
 
-  const loadUsage = async () => {
+  const loadUsage = async (targetPage = page) => {
     try {
-      const data = await api.adminUsage(token);
+      const data = await api.adminUsage({ page: targetPage, size: PAGE_SIZE, sortField: 'usage', sortDir: sortOrder, search: searchTerm }, token);
       setGlobalLimit(data.globalLimit ?? 50000);
       setUsers(data.users || []);
+      setTotal(data.total ?? 0);
+      setPage(data.page ?? 0);
+      setQuotaWindow({ type: data.quotaWindow ?? 'daily', rollingHours: data.rollingHours ?? 24 });
     } catch {
       toast.error('加载用量失败');
     }
   };
 
   useEffect(() => {
-    loadUsage();
-  }, []);
+    // Search and sorting run on the server; wait for typing to pause before asking.
+    const timer = setTimeout(() => loadUsage(0), 300);
+    return () => clearTimeout(timer);
+  }, [sortOrder, searchTerm]);
+
+  const handleExport = async () => {
+    try {
+      const blob = await api.adminUsageExport({ sortField: 'usage', sortDir: sortOrder, search: searchTerm }, token);
+      const url = URL.createObjectURL(blob);
+      const link = document.createElement('a');
+      link.href = url;
+      link.download = 'user-usage.csv';
+      link.click();
+      URL.revokeObjectURL(url);
+    } catch {
+      toast.error('导出失败');
+    }
+  };
 
   const calculateWeightedTokens = (input: number, output: number) => {
     return input * 1 + output * 8;
   };
 
-  const sortedUsers = [...users]
-    .filter(u => u.username.toLowerCase().includes(searchTerm.toLowerCase()))
-    .sort((a, b) => {
-      const totalA = calculateWeightedTokens(a.inputTokens, a.outputTokens);
-      const totalB = calculateWeightedTokens(b.inputTokens, b.outputTokens);
-      return sortOrder === 'desc' ? totalB - totalA : totalA - totalB;
-    });
+  const windowLabel = quotaWindow.type === 'rolling' ? `近 ${quotaWindow.rollingHours} 小时` : '今日';
+
+  const pageCount = Math.max(1, Math.ceil(total / PAGE_SIZE));
 
   const handleSaveGlobalLimit = async () => {
     try {
@@ -90,7 +119,7 @@ const UserMonitor = () => {
             <Settings2 className="w-5 h-5 text-teal-400" />
             全局限制设置
           </CardTitle>
-          <CardDescription>设置所有用户的默认 Token 消耗上限 (加权后)。</CardDescription>
+          <CardDescription>设置所有用户的默认 Token 消耗上限 (加权后，按{windowLabel}计算)。</CardDescription>
         </CardHeader>
         <CardContent className="flex items-end gap-4">
           <div className="space-y-2 flex-1 max-w-xs">
@@ -132,6 +161,15 @@ const UserMonitor = () => {
             >
               <ArrowUpDown className="w-4 h-4" />
             </Button>
+            <Button
+              variant="outline"
+              size="icon"
+              onClick={handleExport}
+              title="导出 CSV"
+              className="border-white/10 text-slate-400 hover:text-white hover:bg-white/5"
+            >
+              <Download className="w-4 h-4" />
+            </Button>
           </div>
         </CardHeader>
         <CardContent>
@@ -141,16 +179,21 @@ const UserMonitor = () => {
                 <TableHead className="text-slate-400">用户</TableHead>
                 <TableHead className="text-slate-400">Input (1x)</TableHead>
                 <TableHead className="text-slate-400">Output (8x)</TableHead>
-                <TableHead className="text-teal-400 font-bold">加权总消耗</TableHead>
+                <TableHead className="text-teal-400 font-bold">加权消耗 ({windowLabel})</TableHead>
+                <TableHead className="text-slate-400">按日趋势</TableHead>
                 <TableHead className="text-slate-400">当前上限</TableHead>
                 <TableHead className="text-slate-400 text-right">操作</TableHead>
               </TableRow>
             </TableHeader>
             <TableBody>
-              {sortedUsers.map((user) => {
+              {users.map((user) => {
                 const total = calculateWeightedTokens(user.inputTokens, user.outputTokens);
                 const currentLimit = user.customLimit ?? globalLimit;
                 const usagePercent = currentLimit > 0 ? (total / currentLimit) * 100 : 0;
+                const history = user.history ?? [];
+                const dailyTotals = history.map(day => calculateWeightedTokens(day.inputTokens, day.outputTokens));
+                const dailyPeak = Math.max(1, ...dailyTotals);
+                const lifetime = calculateWeightedTokens(user.totalInputTokens ?? 0, user.totalOutputTokens ?? 0);
                 
                 return (
                   <TableRow key={user.id} className="border-white/10 hover:bg-white/5">
@@ -166,8 +209,25 @@ const UserMonitor = () => {
                             style={{ width: `${Math.min(usagePercent, 100)}%` }}
                           />
                         </div>
+                        <span className="text-slate-500 text-xs">累计: {lifetime}</span>
                       </div>
                     </TableCell>
+                    <TableCell>
+                      {history.length > 0 ? (
+                        <div className="flex items-end gap-0.5 h-8">
+                          {history.map((day, index) => (
+                            <div
+                              key={day.date}
+                              title={`${day.date}: ${dailyTotals[index]}`}
+                              className="w-2 bg-teal-500/70 rounded-sm"
+                              style={{ height: `${Math.max((dailyTotals[index] / dailyPeak) * 100, 4)}%` }}
+                            />
+                          ))}
+                        </div>
+                      ) : (
+                        <span className="text-slate-500 text-sm">-</span>
+                      )}
+                    </TableCell>
                     <TableCell>
                       {user.customLimit ? (
                         <Badge variant="outline" className="border-yellow-500/50 text-yellow-400">
@@ -220,6 +280,13 @@ const UserMonitor = () => {
               })}
             </TableBody>
           </Table>
+          <div className="flex items-center justify-between text-xs text-slate-400 mt-4">
+            <span>共 {total} 名用户，第 {page + 1} / {pageCount} 页</span>
+            <div className="flex gap-2">
+              <Button size="sm" variant="secondary" className="bg-slate-800" disabled={page <= 0} onClick={() => loadUsage(page - 1)}>上一页</Button>
+              <Button size="sm" variant="secondary" className="bg-slate-800" disabled={page + 1 >= pageCount} onClick={() => loadUsage(page + 1)}>下一页</Button>
+            </div>
+          </div>
         </CardContent>
       </Card>
     </div>
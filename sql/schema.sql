@@ -42,6 +42,8 @@ CREATE TABLE IF NOT EXISTS game_state (
   firefly_status VARCHAR(255),
   firefly_mood_details TEXT,
   game_time VARCHAR(20),
+  version BIGINT DEFAULT 0,
+  revision BIGINT NOT NULL DEFAULT 0,
   CONSTRAINT fk_state_user FOREIGN KEY (user_id) REFERENCES users(id),
   CONSTRAINT fk_state_location FOREIGN KEY (current_location_id) REFERENCES location(id)
 );
@@ -62,6 +64,7 @@ CREATE TABLE IF NOT EXISTS memory (
   content TEXT,
   date DATE,
   tags VARCHAR(255),
+  indexed_hash VARCHAR(64),
   user_id BIGINT,
   CONSTRAINT fk_memory_user FOREIGN KEY (user_id) REFERENCES users(id)
 );
@@ -123,7 +126,8 @@ CREATE TABLE IF NOT EXISTS chat_session (
 );
 
 CREATE TABLE IF NOT EXISTS chat_message (
-  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  -- id 由应用生成（时间戳 + 节点号 + 序号），见 ChatMessageWriter
+  id BIGINT PRIMARY KEY,
   sender VARCHAR(50),
   npc_name VARCHAR(100),
   content TEXT,
@@ -142,6 +146,18 @@ CREATE TABLE IF NOT EXISTS user_token_usage (
   CONSTRAINT fk_token_usage_user FOREIGN KEY (user_id) REFERENCES users(id)
 );
 
+-- 按小时分桶的 token 用量（bucket_hour 为自 epoch 起的 UTC 小时数），额度窗口与后台历史都从这里汇总
+CREATE TABLE IF NOT EXISTS user_token_usage_bucket (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  user_id BIGINT NOT NULL,
+  bucket_hour BIGINT NOT NULL,
+  input_tokens BIGINT DEFAULT 0,
+  output_tokens BIGINT DEFAULT 0,
+  CONSTRAINT uk_token_usage_bucket UNIQUE (user_id, bucket_hour),
+  CONSTRAINT fk_token_usage_bucket_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+  INDEX idx_token_usage_bucket_hour (bucket_hour)
+);
+
 CREATE TABLE IF NOT EXISTS user_token_limit (
   id BIGINT PRIMARY KEY AUTO_INCREMENT,
   user_id BIGINT UNIQUE,